@@ -0,0 +1,73 @@
+package org.gbif.jetty.benchmarks;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.results.format.ResultFormatFactory;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openjdk.jmh.runner.options.TimeValue;
+
+/**
+ * Runs the benchmarks at several concurrency levels and writes all the results to a single JSON file, so runs of
+ * different versions or settings can be compared.
+ * Each benchmark is measured twice per concurrency level: the throughput in operations per second and the latency
+ * distribution, sampled in microseconds with its percentiles.
+ * Arguments: an optional regular expression of the benchmarks to run, by default all of them.
+ * System properties:
+ * - bench.threads: comma separated concurrency levels, default 1,8,32.
+ * - bench.result: path of the JSON results file, default benchmark-results.json.
+ * - bench.iterations: measurement iterations of 1 second, default 5.
+ * - bench.forks: JVM forks of each benchmark, default 1.
+ */
+public class BenchmarkRunner {
+
+  /**
+   * Private constructor.
+   */
+  private BenchmarkRunner() {
+    //No instances of this class should be created
+  }
+
+  public static void main(String[] args) throws Exception {
+    final String include = args.length > 0 ? args[0] : ".*Benchmark.*";
+    final String resultFile = System.getProperty("bench.result", "benchmark-results.json");
+    final int iterations = Integer.getInteger("bench.iterations", 5);
+    final int forks = Integer.getInteger("bench.forks", 1);
+    final Collection<RunResult> results = new ArrayList<RunResult>();
+    for (String threads : System.getProperty("bench.threads", "1,8,32").split(",")) {
+      results.addAll(run(include, Integer.parseInt(threads.trim()), Mode.Throughput, TimeUnit.SECONDS, iterations,
+                         forks));
+      results.addAll(run(include, Integer.parseInt(threads.trim()), Mode.SampleTime, TimeUnit.MICROSECONDS, iterations,
+                         forks));
+    }
+    ResultFormatFactory.getInstance(ResultFormatType.JSON, resultFile).writeOut(results);
+    System.out.println("Results written to " + new File(resultFile).getAbsolutePath());
+  }
+
+  /**
+   * Runs the included benchmarks with a number of threads and a mode.
+   */
+  private static Collection<RunResult> run(
+    String include, int threads, Mode mode, TimeUnit timeUnit, int iterations, int forks
+  ) throws Exception {
+    final Options options = new OptionsBuilder()
+      .include(include)
+      .threads(threads)
+      .mode(mode)
+      .timeUnit(timeUnit)
+      .warmupIterations(3)
+      .warmupTime(TimeValue.seconds(1L))
+      .measurementIterations(iterations)
+      .measurementTime(TimeValue.seconds(1L))
+      .forks(forks)
+      .build();
+    return new Runner(options).run();
+  }
+}
@@ -0,0 +1,77 @@
+package org.gbif.jetty.benchmarks;
+
+import org.gbif.discovery.conf.ServiceConfiguration;
+import org.gbif.jetty.HttpConnectorFactory;
+import org.gbif.jetty.JettyConfiguration;
+import org.gbif.jetty.ServerFactory;
+
+import com.beust.jcommander.JCommander;
+import org.eclipse.jetty.server.Connector;
+import org.eclipse.jetty.server.LocalConnector;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+
+/**
+ * Server built by the ServerFactory that serves the benchmarks webapp on ephemeral localhost ports.
+ * Optionally it also has a LocalConnector attached to the application context, so the handler chain can be measured
+ * without the network stack.
+ */
+public class BenchmarkServer {
+
+  private static final String[] SERVICE_ARGS = {"-conf", "benchmark.properties", "-host", "localhost",
+    "-httpPort", "0", "-httpAdminPort", "0", "-stopSecret", "benchmark", "-timestamp", "0"};
+
+  private final Server server;
+  private final LocalConnector localConnector;
+
+  private BenchmarkServer(Server server, LocalConnector localConnector) {
+    this.server = server;
+    this.localConnector = localConnector;
+  }
+
+  /**
+   * Builds and starts a server using the jettyConfiguration.
+   */
+  public static BenchmarkServer start(JettyConfiguration jettyConfiguration, boolean withLocalConnector)
+    throws Exception {
+    final ServiceConfiguration configuration = new ServiceConfiguration();
+    new JCommander(configuration, SERVICE_ARGS);
+    final ServerFactory serverFactory = new ServerFactory();
+    serverFactory.setJettyConfiguration(jettyConfiguration);
+    serverFactory.setStopAtShutdown(false);
+    final Server server = serverFactory.build(configuration);
+    LocalConnector localConnector = null;
+    if (withLocalConnector) {
+      //named as the application connector, so it reaches the application context
+      localConnector = new LocalConnector(server);
+      localConnector.setName(HttpConnectorFactory.APP_CONNECTOR_NAME);
+      server.addConnector(localConnector);
+    }
+    server.start();
+    return new BenchmarkServer(server, localConnector);
+  }
+
+  /**
+   * Port of the application connector.
+   */
+  public int getPort() {
+    for (Connector connector : server.getConnectors()) {
+      if (connector instanceof ServerConnector && HttpConnectorFactory.APP_CONNECTOR_NAME.equals(connector.getName())) {
+        return ((ServerConnector) connector).getLocalPort();
+      }
+    }
+    throw new IllegalStateException("The server doesn't have an application connector");
+  }
+
+  public LocalConnector getLocalConnector() {
+    return localConnector;
+  }
+
+  public Server getServer() {
+    return server;
+  }
+
+  public void stop() throws Exception {
+    server.stop();
+  }
+}
@@ -0,0 +1,294 @@
+package org.gbif.jetty.benchmarks;
+
+import org.gbif.discovery.conf.ServiceConfiguration;
+import org.gbif.discovery.conf.ServiceDetails;
+import org.gbif.discovery.conf.ServiceStatus;
+import org.gbif.ws.discovery.client.SelectionStrategy;
+import org.gbif.ws.discovery.client.ServiceLocator;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+import com.beust.jcommander.JCommander;
+import org.apache.curator.framework.CuratorFramework;
+import org.apache.curator.framework.CuratorFrameworkFactory;
+import org.apache.curator.retry.RetryOneTime;
+import org.apache.curator.test.InstanceSpec;
+import org.apache.curator.test.TestingServer;
+import org.apache.curator.x.discovery.ServiceDiscovery;
+import org.apache.curator.x.discovery.ServiceDiscoveryBuilder;
+import org.apache.curator.x.discovery.ServiceInstance;
+import org.apache.curator.x.discovery.UriSpec;
+import org.apache.curator.x.discovery.details.JsonInstanceSerializer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.infra.ThreadParams;
+
+/**
+ * Discovery service at scale against an in-process Zookeeper server, no external Zookeeper is needed.
+ * services x instances service instances are registered, as the DiscoveryLifeCycle does, under a single namespace;
+ * each instance has its own Zookeeper session and ServiceDiscovery, as the instances of a cluster do. A ServiceLocator
+ * of a separate client watches all the services, so every write also triggers the cache refreshes the clients would do.
+ * - flapStatus: publishes a new status of an instance, alternating RUNNING and STOPPING, as updateServiceStatus does;
+ *   its throughput is the Zookeeper write rate.
+ * - unregister: removes the registration of an instance, as a stopping instance does.
+ * - register: registers again an unregistered instance, as a starting instance does; its sample time is the
+ *   registration latency. Run with several threads unregister and register are a mass restart.
+ * - locate: chooses a RUNNING instance of a service with the ServiceLocator, from its local snapshot.
+ * - queryInstances: reads all the instances of a service from Zookeeper with a ServiceDiscovery.
+ * Each benchmark thread changes its own share of the instances, so there must be at least as many instances as
+ * threads.
+ */
+@State(Scope.Benchmark)
+public class DiscoveryBenchmark {
+
+  private static final String NAMESPACE = "benchmark";
+  private static final String SERVICE_NAME = "benchmark-service-";
+  private static final String[] SERVICE_ARGS = {"-conf", "benchmark.properties", "-host", "localhost",
+    "-httpPort", "8080", "-httpAdminPort", "8081", "-stopSecret", "benchmark", "-timestamp", "0"};
+  //no limit of connections per host, all the simulated instances connect from localhost
+  private static final int MAX_CLIENT_CONNECTIONS = 0;
+
+  @Param({"10", "100"})
+  public int services;
+
+  @Param({"10", "30"})
+  public int instances;
+
+  private TestingServer zookeeper;
+  private CuratorFramework curator;
+  private ServiceDiscovery<ServiceDetails> discovery;
+  private ServiceLocator locator;
+  private String[] serviceNames;
+  //Simulated instances, indexed by service * instances + instance
+  private final List<SimulatedInstance> simulatedInstances = new ArrayList<SimulatedInstance>();
+
+  @Setup
+  public void startDiscovery() throws Exception {
+    zookeeper = new TestingServer(new InstanceSpec(null, -1, -1, -1, true, -1, -1, MAX_CLIENT_CONNECTIONS), true);
+    final ServiceConfiguration configuration = new ServiceConfiguration();
+    new JCommander(configuration, SERVICE_ARGS);
+    serviceNames = new String[services];
+    for (int service = 0; service < services; service++) {
+      serviceNames[service] = SERVICE_NAME + service;
+      for (int instance = 0; instance < instances; instance++) {
+        final SimulatedInstance simulatedInstance = new SimulatedInstance(zookeeper.getConnectString(), configuration,
+                                                                          serviceNames[service],
+                                                                          serviceNames[service] + '-' + instance);
+        simulatedInstances.add(simulatedInstance);
+        simulatedInstance.discovery.registerService(simulatedInstance.instance(true));
+      }
+    }
+    curator = newCurator(zookeeper.getConnectString());
+    discovery = newServiceDiscovery(curator);
+    locator = new ServiceLocator(curator, SelectionStrategy.ROUND_ROBIN);
+    locator.start();
+    for (String serviceName : serviceNames) {
+      //the first lookup starts watching the service
+      locator.getInstances(serviceName);
+    }
+  }
+
+  @TearDown
+  public void stopDiscovery() throws Exception {
+    locator.close();
+    discovery.close();
+    curator.close();
+    for (SimulatedInstance simulatedInstance : simulatedInstances) {
+      simulatedInstance.close();
+    }
+    zookeeper.close();
+  }
+
+  /**
+   * Started client of the benchmark namespace, with a session of its own.
+   */
+  private static CuratorFramework newCurator(String connectString) throws InterruptedException {
+    final CuratorFramework curator = CuratorFrameworkFactory.builder()
+      .connectString(connectString)
+      .namespace(NAMESPACE)
+      .retryPolicy(new RetryOneTime(100))
+      .build();
+    curator.start();
+    curator.blockUntilConnected();
+    return curator;
+  }
+
+  /**
+   * Started ServiceDiscovery, configured as the DiscoveryLifeCycle does.
+   */
+  private static ServiceDiscovery<ServiceDetails> newServiceDiscovery(CuratorFramework curator) throws Exception {
+    final ServiceDiscovery<ServiceDetails> discovery = ServiceDiscoveryBuilder.builder(ServiceDetails.class)
+      .client(curator)
+      .basePath("/")
+      .serializer(new JsonInstanceSerializer<ServiceDetails>(ServiceDetails.class))
+      .build();
+    discovery.start();
+    return discovery;
+  }
+
+  /**
+   * Instance of a service with the payload the DiscoveryLifeCycle publishes.
+   */
+  private static ServiceInstance<ServiceDetails> serviceInstance(
+    ServiceConfiguration configuration, String name, String id, ServiceStatus status
+  ) throws Exception {
+    final ServiceDetails serviceDetails = new ServiceDetails();
+    serviceDetails.setServiceConfiguration(configuration);
+    serviceDetails.setGroupId("org.gbif");
+    serviceDetails.setArtifactId(name);
+    serviceDetails.setVersion("1.0");
+    serviceDetails.setStatus(status);
+    return ServiceInstance.<ServiceDetails>builder()
+      .name(name)
+      .id(id)
+      .payload(serviceDetails)
+      .port(configuration.getHttpPort())
+      .uriSpec(new UriSpec("http://localhost:{port}"))
+      .build();
+  }
+
+  /**
+   * Service instance with its own Zookeeper session and ServiceDiscovery, as a running service has.
+   */
+  private static class SimulatedInstance implements Closeable {
+
+    private final CuratorFramework curator;
+    private final ServiceDiscovery<ServiceDetails> discovery;
+    private final ServiceInstance<ServiceDetails> runningInstance;
+    private final ServiceInstance<ServiceDetails> stoppingInstance;
+
+    private SimulatedInstance(String connectString, ServiceConfiguration configuration, String name, String id)
+      throws Exception {
+      curator = newCurator(connectString);
+      discovery = newServiceDiscovery(curator);
+      runningInstance = serviceInstance(configuration, name, id, ServiceStatus.RUNNING);
+      stoppingInstance = serviceInstance(configuration, name, id, ServiceStatus.STOPPING);
+    }
+
+    /**
+     * Registration of this instance in a status.
+     */
+    private ServiceInstance<ServiceDetails> instance(boolean running) {
+      return running ? runningInstance : stoppingInstance;
+    }
+
+    @Override
+    public void close() throws IOException {
+      discovery.close();
+      curator.close();
+    }
+  }
+
+  /**
+   * Instances changed by a benchmark thread and their current status.
+   */
+  @State(Scope.Thread)
+  public static class Worker {
+
+    private SimulatedInstance[] slots;
+    private boolean[] running;
+    private int next;
+
+    @Setup
+    public void assignSlots(DiscoveryBenchmark benchmark, ThreadParams threadParams) {
+      final int total = benchmark.services * benchmark.instances;
+      if (total < threadParams.getThreadCount()) {
+        throw new IllegalStateException("There are less instances than benchmark threads");
+      }
+      //the instances are dealt to the threads in turns
+      slots = new SimulatedInstance[(total - threadParams.getThreadIndex() + threadParams.getThreadCount() - 1)
+                                    / threadParams.getThreadCount()];
+      running = new boolean[slots.length];
+      for (int i = 0; i < slots.length; i++) {
+        slots[i] = benchmark.simulatedInstances.get(threadParams.getThreadIndex() + i * threadParams.getThreadCount());
+        running[i] = true;
+      }
+    }
+
+    /**
+     * Next instance of this thread, in round robin.
+     */
+    private int nextSlot() {
+      next = (next + 1) % slots.length;
+      return next;
+    }
+
+    /**
+     * Current registration of an instance of this thread.
+     */
+    private ServiceInstance<ServiceDetails> instance(int slot) {
+      return slots[slot].instance(running[slot]);
+    }
+  }
+
+  /**
+   * Registered instance of the thread, registered again after the invocation that unregisters it.
+   */
+  @State(Scope.Thread)
+  public static class RegisteredSlot {
+
+    private int slot;
+
+    @Setup(Level.Invocation)
+    public void nextSlot(Worker worker) {
+      slot = worker.nextSlot();
+    }
+
+    @TearDown(Level.Invocation)
+    public void register(Worker worker) throws Exception {
+      worker.slots[slot].discovery.registerService(worker.instance(slot));
+    }
+  }
+
+  /**
+   * Instance of the thread unregistered before the invocation that registers it again.
+   */
+  @State(Scope.Thread)
+  public static class UnregisteredSlot {
+
+    private int slot;
+
+    @Setup(Level.Invocation)
+    public void unregister(Worker worker) throws Exception {
+      slot = worker.nextSlot();
+      worker.slots[slot].discovery.unregisterService(worker.instance(slot));
+    }
+  }
+
+  @Benchmark
+  public void flapStatus(Worker worker) throws Exception {
+    final int slot = worker.nextSlot();
+    worker.running[slot] = !worker.running[slot];
+    worker.slots[slot].discovery.updateService(worker.instance(slot));
+  }
+
+  @Benchmark
+  public void unregister(Worker worker, RegisteredSlot registeredSlot) throws Exception {
+    worker.slots[registeredSlot.slot].discovery.unregisterService(worker.instance(registeredSlot.slot));
+  }
+
+  @Benchmark
+  public void register(Worker worker, UnregisteredSlot unregisteredSlot) throws Exception {
+    worker.slots[unregisteredSlot.slot].discovery.registerService(worker.instance(unregisteredSlot.slot));
+  }
+
+  @Benchmark
+  public ServiceInstance<ServiceDetails> locate() {
+    return locator.select(serviceNames[ThreadLocalRandom.current().nextInt(services)]);
+  }
+
+  @Benchmark
+  public Collection<ServiceInstance<ServiceDetails>> queryInstances() throws Exception {
+    return discovery.queryForInstances(serviceNames[ThreadLocalRandom.current().nextInt(services)]);
+  }
+}
@@ -0,0 +1,91 @@
+package org.gbif.jetty.benchmarks;
+
+import org.gbif.jetty.JettyConfiguration;
+
+import java.io.File;
+
+import org.eclipse.jetty.server.LocalConnector;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Cost of the handler chain built by the ServerFactory, without the network: the requests are sent through a
+ * LocalConnector attached to the application context.
+ * The chain parameter selects the optional handlers that are enabled:
+ * - DEFAULT: request metrics and the web application only.
+ * - GZIP: compression of the responses, requested by the client.
+ * - LIMITS: per-client limits and load shedding, with limits high enough to never reject a request.
+ * - ACCESS_LOG: asynchronous access log written to a temporary file.
+ */
+@State(Scope.Benchmark)
+public class HandlerChainBenchmark {
+
+  private static final String SMALL_REQUEST = "GET /small HTTP/1.1\r\nHost: localhost\r\n\r\n";
+  private static final String GZIP_REQUEST =
+    "GET /small HTTP/1.1\r\nHost: localhost\r\nAccept-Encoding: gzip\r\n\r\n";
+  private static final String NOT_FOUND_REQUEST = "GET /missing HTTP/1.1\r\nHost: localhost\r\n\r\n";
+
+  /**
+   * Optional handlers of the chain.
+   */
+  public enum Chain {
+    DEFAULT, GZIP, LIMITS, ACCESS_LOG
+  }
+
+  @Param({"DEFAULT", "GZIP", "LIMITS", "ACCESS_LOG"})
+  public Chain chain;
+
+  private BenchmarkServer server;
+  private LocalConnector connector;
+  private String smallRequest;
+  private File accessLog;
+
+  @Setup
+  public void startServer() throws Exception {
+    final JettyConfiguration jettyConfiguration = new JettyConfiguration();
+    smallRequest = SMALL_REQUEST;
+    switch (chain) {
+      case GZIP:
+        jettyConfiguration.setGzip(true);
+        //the small response is compressed too
+        jettyConfiguration.setGzipMinSize(0);
+        smallRequest = GZIP_REQUEST;
+        break;
+      case LIMITS:
+        jettyConfiguration.setMaxClientConcurrency(Integer.MAX_VALUE);
+        jettyConfiguration.setMaxClientRate(1e9);
+        jettyConfiguration.setLoadShedding(true);
+        break;
+      case ACCESS_LOG:
+        accessLog = File.createTempFile("benchmark-access", ".log");
+        jettyConfiguration.setAccessLog(accessLog.getAbsolutePath());
+        break;
+      default:
+        break;
+    }
+    server = BenchmarkServer.start(jettyConfiguration, true);
+    connector = server.getLocalConnector();
+  }
+
+  @TearDown
+  public void stopServer() throws Exception {
+    server.stop();
+    if (accessLog != null) {
+      accessLog.delete();
+    }
+  }
+
+  @Benchmark
+  public String smallJson() throws Exception {
+    return connector.getResponse(smallRequest);
+  }
+
+  @Benchmark
+  public String notFound() throws Exception {
+    return connector.getResponse(NOT_FOUND_REQUEST);
+  }
+}
@@ -0,0 +1,80 @@
+package org.gbif.jetty.benchmarks;
+
+import org.gbif.jetty.JettyConfiguration;
+
+import java.io.IOException;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * End to end benchmarks over localhost TCP: a ServerFactory server with the default settings serving the benchmarks
+ * webapp. Each benchmark thread is a client, so the concurrency level is the number of JMH threads.
+ * - smallJson: small JSON responses over a keep-alive connection.
+ * - smallJsonNewConnection: small JSON responses, opening a connection per request.
+ * - largeStream: streamed responses of streamSize bytes over a keep-alive connection.
+ */
+@State(Scope.Benchmark)
+public class HttpBenchmark {
+
+  @Param({"1048576"})
+  public int streamSize;
+
+  private BenchmarkServer server;
+  private byte[] smallRequest;
+  private byte[] smallCloseRequest;
+  private byte[] streamRequest;
+
+  @Setup
+  public void startServer() throws Exception {
+    server = BenchmarkServer.start(new JettyConfiguration(), false);
+    smallRequest = HttpClientConnection.request("/small", false);
+    smallCloseRequest = HttpClientConnection.request("/small", true);
+    streamRequest = HttpClientConnection.request("/stream?size=" + streamSize, false);
+  }
+
+  @TearDown
+  public void stopServer() throws Exception {
+    server.stop();
+  }
+
+  /**
+   * Keep-alive connection of a benchmark thread.
+   */
+  @State(Scope.Thread)
+  public static class Client {
+
+    private HttpClientConnection connection;
+
+    @Setup
+    public void connect(HttpBenchmark benchmark) throws IOException {
+      connection = new HttpClientConnection(benchmark.server.getPort());
+    }
+
+    @TearDown
+    public void disconnect() throws IOException {
+      connection.close();
+    }
+  }
+
+  @Benchmark
+  public long smallJson(Client client) throws IOException {
+    return client.connection.exchange(smallRequest);
+  }
+
+  @Benchmark
+  public long smallJsonNewConnection() throws IOException {
+    try (HttpClientConnection connection = new HttpClientConnection(server.getPort())) {
+      return connection.exchange(smallCloseRequest);
+    }
+  }
+
+  @Benchmark
+  public long largeStream(Client client) throws IOException {
+    return client.connection.exchange(streamRequest);
+  }
+}
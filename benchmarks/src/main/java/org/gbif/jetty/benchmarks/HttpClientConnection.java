@@ -0,0 +1,117 @@
+package org.gbif.jetty.benchmarks;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Minimal blocking HTTP/1.1 client connection, so the benchmarks measure the server rather than a client library.
+ * Requests are preencoded with request(); responses are read fully and discarded, with Content-Length or chunked
+ * bodies. Instances aren't thread safe, each benchmark thread has its own connection.
+ */
+public class HttpClientConnection implements Closeable {
+
+  private static final int BUFFER_SIZE = 65536;
+
+  private final Socket socket;
+  private final InputStream in;
+  private final OutputStream out;
+  private final byte[] discard = new byte[BUFFER_SIZE];
+  private final StringBuilder line = new StringBuilder();
+
+  /**
+   * Opens a connection to a localhost port.
+   */
+  public HttpClientConnection(int port) throws IOException {
+    socket = new Socket("localhost", port);
+    socket.setTcpNoDelay(true);
+    in = new BufferedInputStream(socket.getInputStream(), BUFFER_SIZE);
+    out = socket.getOutputStream();
+  }
+
+  /**
+   * Encodes a GET request of the path, if close is true the server closes the connection after the response.
+   */
+  public static byte[] request(String path, boolean close) {
+    return ("GET " + path + " HTTP/1.1\r\nHost: localhost\r\n" + (close ? "Connection: close\r\n" : "") + "\r\n")
+      .getBytes(StandardCharsets.US_ASCII);
+  }
+
+  /**
+   * Sends a request and reads its response, returns the number of body bytes read.
+   * Fails if the status isn't 200.
+   */
+  public long exchange(byte[] request) throws IOException {
+    out.write(request);
+    out.flush();
+    final String statusLine = readLine();
+    if (!statusLine.startsWith("HTTP/1.1 200")) {
+      throw new IOException("Unexpected response: " + statusLine);
+    }
+    long contentLength = -1L;
+    boolean chunked = false;
+    for (String header = readLine(); !header.isEmpty(); header = readLine()) {
+      final int separator = header.indexOf(':');
+      final String name = header.substring(0, separator).trim();
+      if ("Content-Length".equalsIgnoreCase(name)) {
+        contentLength = Long.parseLong(header.substring(separator + 1).trim());
+      } else if ("Transfer-Encoding".equalsIgnoreCase(name)) {
+        chunked = header.substring(separator + 1).trim().equalsIgnoreCase("chunked");
+      }
+    }
+    if (chunked) {
+      long total = 0L;
+      for (long chunk = Long.parseLong(readLine().trim(), 16); chunk > 0; chunk = Long.parseLong(readLine().trim(), 16)) {
+        skip(chunk);
+        readLine();
+        total += chunk;
+      }
+      readLine();
+      return total;
+    }
+    skip(contentLength);
+    return contentLength;
+  }
+
+  /**
+   * Reads and discards length bytes.
+   */
+  private void skip(long length) throws IOException {
+    long remaining = length;
+    while (remaining > 0) {
+      final int read = in.read(discard, 0, (int) Math.min(discard.length, remaining));
+      if (read < 0) {
+        throw new EOFException();
+      }
+      remaining -= read;
+    }
+  }
+
+  /**
+   * Reads an ISO-8859-1 line terminated by CRLF, without the terminator.
+   */
+  private String readLine() throws IOException {
+    line.setLength(0);
+    int c = in.read();
+    while (c != '\n') {
+      if (c < 0) {
+        throw new EOFException();
+      }
+      if (c != '\r') {
+        line.append((char) c);
+      }
+      c = in.read();
+    }
+    return line.toString();
+  }
+
+  @Override
+  public void close() throws IOException {
+    socket.close();
+  }
+}
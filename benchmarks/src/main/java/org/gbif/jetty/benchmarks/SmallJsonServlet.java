@@ -0,0 +1,25 @@
+package org.gbif.jetty.benchmarks;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Responds with a small, constant JSON document, the typical response of an API lookup.
+ */
+public class SmallJsonServlet extends HttpServlet {
+
+  private static final byte[] BODY =
+    ("{\"key\":2435099,\"scientificName\":\"Puma concolor (Linnaeus, 1771)\",\"rank\":\"SPECIES\","
+     + "\"taxonomicStatus\":\"ACCEPTED\",\"kingdom\":\"Animalia\",\"numOccurrences\":123456}")
+      .getBytes(StandardCharsets.UTF_8);
+
+  @Override
+  protected void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
+    response.setContentType("application/json");
+    response.setContentLength(BODY.length);
+    response.getOutputStream().write(BODY);
+  }
+}
@@ -0,0 +1,37 @@
+package org.gbif.jetty.benchmarks;
+
+import java.io.IOException;
+import java.util.Arrays;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Streams a large response in chunks, like a download or an export.
+ * The size in bytes is taken from the 'size' parameter, by default DEFAULT_SIZE.
+ */
+public class StreamServlet extends HttpServlet {
+
+  public static final int DEFAULT_SIZE = 1024 * 1024;
+
+  private static final int CHUNK_SIZE = 8192;
+
+  private static final byte[] CHUNK = new byte[CHUNK_SIZE];
+
+  static {
+    Arrays.fill(CHUNK, (byte) 'x');
+  }
+
+  @Override
+  protected void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
+    final String sizeParam = request.getParameter("size");
+    final int size = sizeParam == null ? DEFAULT_SIZE : Integer.parseInt(sizeParam);
+    response.setContentType("application/octet-stream");
+    response.setContentLength(size);
+    final ServletOutputStream out = response.getOutputStream();
+    for (int remaining = size; remaining > 0; remaining -= CHUNK_SIZE) {
+      out.write(CHUNK, 0, Math.min(CHUNK_SIZE, remaining));
+    }
+  }
+}
@@ -5,7 +5,10 @@ import java.net.URISyntaxException;
 import com.google.common.base.Throwables;
 import org.eclipse.jetty.server.Server;
 import org.eclipse.jetty.server.handler.ContextHandler;
+import org.eclipse.jetty.server.handler.HandlerWrapper;
 import org.eclipse.jetty.webapp.WebAppContext;
+import org.eclipse.jetty.webapp.WebInfConfiguration;
+import org.eclipse.jetty.webapp.WebXmlConfiguration;
 
 /**
  * Utility class to generate the default connectors of an application.
@@ -17,6 +20,13 @@ public class ContextFactory {
   public static final String ROOT_CONTEXT = "/";
   public static final String STOP_CONTEXT = "/stop";
 
+  //Init parameter of the DefaultServlet that serves the .gz sibling of a static resource if the client accepts gzip
+  private static final String DEFAULT_SERVLET_GZIP_PARAM = "org.eclipse.jetty.servlet.Default.gzip";
+
+  //Configurations used by the fast start mode: class loader and web.xml descriptors only
+  private static final String[] FAST_START_CONFIGURATION_CLASSES =
+    {WebInfConfiguration.class.getName(), WebXmlConfiguration.class.getName()};
+
   //The @ is used by Jetty to find registered connectors
   private static final String VH_HOST_FMT = "@%s";
 
@@ -25,20 +35,52 @@ public class ContextFactory {
    * - The resource base points to  "src/main/webapp/"
    * - The application descriptor must be in "src/main/webapp/WEB-INF/web.xml"
    * - The root context is "/"
-   * - The context will be attached to the application connector.
+   * - The context will be attached to the application connector and to the sidecar connector, if there's one.
    */
   public static ContextHandler buildApplicationContext() {
+    return buildApplicationContext(null);
+  }
+
+  /**
+   * Builds the WebAppContext described in buildApplicationContext().
+   * If the gzipHandlerFactory is not null, the servlets responses are compressed by the GzipHandler it builds and
+   * static resources are served from their precompressed .gz sibling when it exists.
+   */
+  public static ContextHandler buildApplicationContext(GzipHandlerFactory gzipHandlerFactory) {
+    return buildApplicationContext(gzipHandlerFactory, false);
+  }
+
+  /**
+   * Builds the WebAppContext described in buildApplicationContext(GzipHandlerFactory).
+   * The context records the time of its startup phases in the StartupReport of the server, if it has one.
+   * In fastStart mode only the web.xml descriptors are processed: fragments, META-INF resources and jetty-web.xml
+   * files aren't scanned, and the webapp directory is served from the jar without being extracted or copied.
+   */
+  public static ContextHandler buildApplicationContext(GzipHandlerFactory gzipHandlerFactory, boolean fastStart) {
     try {
       //the webapp directory must be loaded from inside the jar file
       final String resourceBase = ContextFactory.class.getClassLoader().getResource(WEB_DIR).toURI().toString();
-      final WebAppContext root = new WebAppContext();
+      final WebAppContext root = new ProfiledWebAppContext();
       root.setContextPath(ROOT_CONTEXT);
       root.setDescriptor(resourceBase + DESCRIPTOR_PATH);
       root.setResourceBase(resourceBase);
       root.setParentLoaderPriority(true);
       root.setAttribute("org.eclipse.jetty.server.webapp.WebInfIncludeJarPattern", "^$");
       //set the connector
-      root.setVirtualHosts(new String[] {String.format(VH_HOST_FMT,HttpConnectorFactory.APP_CONNECTOR_NAME)});
+      root.setVirtualHosts(new String[] {String.format(VH_HOST_FMT,HttpConnectorFactory.APP_CONNECTOR_NAME),
+        String.format(VH_HOST_FMT,HttpConnectorFactory.SIDECAR_CONNECTOR_NAME),
+        String.format(VH_HOST_FMT,HttpConnectorFactory.WARM_UP_CONNECTOR_NAME)});
+      if (gzipHandlerFactory != null) {
+        root.setGzipHandler(gzipHandlerFactory.build());
+        root.setInitParameter(DEFAULT_SERVLET_GZIP_PARAM, Boolean.TRUE.toString());
+      }
+      if (fastStart) {
+        root.setConfigurationClasses(FAST_START_CONFIGURATION_CLASSES);
+        root.setConfigurationDiscovered(false);
+        root.setExtractWAR(false);
+        root.setCopyWebDir(false);
+        root.setCopyWebInf(false);
+      }
       return root;
     } catch (URISyntaxException ex){
       throw Throwables.propagate(ex);
@@ -48,11 +90,18 @@ public class ContextFactory {
   /**
    * Creates a ContextHandler with a handler to stop the application gracefully.
    * The context will be attached to the admin connector and accessible at the context "/stop".
+   * Additional admin handlers are chained after the StopHandler in the order received, each one handles its own
+   * targets and delegates the rest to the next handler.
    */
-  public static ContextHandler buildAdminContext(Server server, String secret) {
+  public static ContextHandler buildAdminContext(Server server, String secret, HandlerWrapper... adminHandlers) {
     ContextHandler adminContext = new ContextHandler();
     adminContext.setContextPath(ROOT_CONTEXT);
-    adminContext.setHandler(new StopHandler(server, secret));
+    HandlerWrapper lastHandler = new StopHandler(server, secret);
+    adminContext.setHandler(lastHandler);
+    for (HandlerWrapper adminHandler : adminHandlers) {
+      lastHandler.setHandler(adminHandler);
+      lastHandler = adminHandler;
+    }
     adminContext.setAttribute("org.eclipse.jetty.server.webapp.WebInfIncludeJarPattern", "^$");
     //set the connector
     adminContext.setVirtualHosts(new String[] {String.format(VH_HOST_FMT,HttpConnectorFactory.ADMIN_CONNECTOR_NAME)});
@@ -0,0 +1,92 @@
+package org.gbif.jetty;
+
+import java.util.List;
+import java.util.zip.Deflater;
+
+import org.eclipse.jetty.server.handler.gzip.GzipHandler;
+
+/**
+ * Factory class that provides the GzipHandler that compresses the responses of the application context.
+ * Paths are relative to the application context.
+ * The GzipHandler keeps the Deflater of each worker thread after a response is completed and reuses it in the next
+ * compressed response, instead of allocating a new one per request.
+ * The default values for this instance are:
+ * - minGzipSize: 2048 bytes
+ * - compressionLevel: Deflater.DEFAULT_COMPRESSION
+ * - mimeTypes: GzipHandler defaults, every type except images and already compressed formats
+ * - excludedPaths: none
+ * - excludedAgentPatterns: none, unlike the GzipHandler default that excludes MSIE 6.0
+ */
+public class GzipHandlerFactory {
+
+  public static final int DEFAULT_MIN_GZIP_SIZE = 2048; //2 Kilobytes
+
+  private int minGzipSize = DEFAULT_MIN_GZIP_SIZE;
+  private int compressionLevel = Deflater.DEFAULT_COMPRESSION;
+  private List<String> mimeTypes;
+  private List<String> excludedPaths;
+
+  /**
+   * Creates a factory using the compression settings of the configuration parameter.
+   */
+  public static GzipHandlerFactory fromConfiguration(JettyConfiguration configuration) {
+    final GzipHandlerFactory gzipHandlerFactory = new GzipHandlerFactory();
+    gzipHandlerFactory.minGzipSize = configuration.getGzipMinSize();
+    gzipHandlerFactory.compressionLevel = configuration.getGzipCompressionLevel();
+    gzipHandlerFactory.mimeTypes = configuration.getGzipMimeTypes();
+    gzipHandlerFactory.excludedPaths = configuration.getGzipExcludedPaths();
+    return gzipHandlerFactory;
+  }
+
+  public int getMinGzipSize() {
+    return minGzipSize;
+  }
+
+  public void setMinGzipSize(int minGzipSize) {
+    this.minGzipSize = minGzipSize;
+  }
+
+  public int getCompressionLevel() {
+    return compressionLevel;
+  }
+
+  public void setCompressionLevel(int compressionLevel) {
+    this.compressionLevel = compressionLevel;
+  }
+
+  public List<String> getMimeTypes() {
+    return mimeTypes;
+  }
+
+  public void setMimeTypes(List<String> mimeTypes) {
+    this.mimeTypes = mimeTypes;
+  }
+
+  public List<String> getExcludedPaths() {
+    return excludedPaths;
+  }
+
+  public void setExcludedPaths(List<String> excludedPaths) {
+    this.excludedPaths = excludedPaths;
+  }
+
+  /**
+   * Builds an instance of a GzipHandler using the values provided by the GzipHandlerFactory instance.
+   * Static resources that have a precompressed .gz sibling are left to the DefaultServlet.
+   */
+  public GzipHandler build() {
+    final GzipHandler gzipHandler = new GzipHandler();
+    gzipHandler.setMinGzipSize(minGzipSize);
+    gzipHandler.setCompressionLevel(compressionLevel);
+    if (mimeTypes != null && !mimeTypes.isEmpty()) {
+      gzipHandler.setIncludedMimeTypes(mimeTypes.toArray(new String[mimeTypes.size()]));
+    }
+    if (excludedPaths != null && !excludedPaths.isEmpty()) {
+      gzipHandler.setExcludedPaths(excludedPaths.toArray(new String[excludedPaths.size()]));
+    }
+    gzipHandler.setCheckGzExists(true);
+    //no user agent is excluded, so responses only vary by Accept-Encoding and caches can store them
+    gzipHandler.setExcludedAgentPatterns();
+    return gzipHandler;
+  }
+}
@@ -1,10 +1,27 @@
 package org.gbif.jetty;
 
+import java.util.concurrent.Executor;
+
+import com.google.common.base.Preconditions;
+import org.eclipse.jetty.alpn.server.ALPNServerConnectionFactory;
+import org.eclipse.jetty.http2.HTTP2Cipher;
+import org.eclipse.jetty.http2.server.AbstractHTTP2ServerConnectionFactory;
+import org.eclipse.jetty.http2.server.HTTP2CServerConnectionFactory;
+import org.eclipse.jetty.http2.server.HTTP2ServerConnectionFactory;
+import org.eclipse.jetty.io.ByteBufferPool;
+import org.eclipse.jetty.server.ConnectionFactory;
 import org.eclipse.jetty.server.Connector;
+import org.eclipse.jetty.server.ForwardedRequestCustomizer;
 import org.eclipse.jetty.server.HttpConfiguration;
 import org.eclipse.jetty.server.HttpConnectionFactory;
+import org.eclipse.jetty.server.NegotiatingServerConnectionFactory;
+import org.eclipse.jetty.server.SecureRequestCustomizer;
 import org.eclipse.jetty.server.Server;
-import org.eclipse.jetty.server.ServerConnector;
+import org.eclipse.jetty.server.SslConnectionFactory;
+import org.eclipse.jetty.util.ssl.SslContextFactory;
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
+import org.eclipse.jetty.util.thread.ScheduledExecutorScheduler;
+import org.eclipse.jetty.util.thread.Scheduler;
 
 /**
  * Factory class that provides instances of the Connectors used by an application.
@@ -12,40 +29,129 @@ import org.eclipse.jetty.server.ServerConnector;
  */
 public class HttpConnectorFactory {
 
+  /**
+   * HTTP/2 support of the connector.
+   */
+  public enum Http2Mode {
+    /**
+     * Only HTTP/1.1.
+     */
+    DISABLED,
+    /**
+     * HTTP/1.1 and cleartext HTTP/2, negotiated through the HTTP/1.1 upgrade or with prior knowledge.
+     */
+    H2C,
+    /**
+     * TLS connector that negotiates HTTP/2 or HTTP/1.1 using ALPN.
+     * On Java 8 it requires the alpn-boot jar matching the JVM version in the boot classpath.
+     */
+    TLS
+  }
+
   public static final String APP_CONNECTOR_NAME = "application";
   public static final String ADMIN_CONNECTOR_NAME = "admin";
+  public static final String SIDECAR_CONNECTOR_NAME = "sidecar";
+  public static final String WARM_UP_CONNECTOR_NAME = "warm-up";
+  public static final String LOOPBACK_HOST = "127.0.0.1";
+  public static final int DEFAULT_ADMIN_MIN_THREADS = 2;
+  public static final int DEFAULT_ADMIN_MAX_THREADS = 8;
+  public static final int DEFAULT_ADMIN_SELECTORS = 1;
   private int maxRequestHeaderSize = 8192; //8 Kilobytes
   private int idleTimeout = 30000; //30 seconds
   //Http port
   private int port = 8080;  //default http port
+  //Interface the connector binds to, null binds all the interfaces
+  private String host;
+  //Takes the client address and scheme from the X-Forwarded-* headers set by a proxy
+  private boolean forwarded;
   //Connector name
   private String name;
 
+  //Number of acceptor and selector threads, -1 lets Jetty choose them based on the available processors
+  private int acceptors = -1;
+  private int selectors = -1;
+
+  //Listening socket options, an accept queue size of 0 uses the platform default
+  private int acceptQueueSize = 0;
+  private boolean reuseAddress = true;
+  private boolean reusePort = false;
+  //Uses the listening socket inherited from the parent process, e.g. a supervisor with socket activation
+  private boolean inheritChannel = false;
+
+  //Accepted sockets options, a linger time of -1 disables SO_LINGER
+  private boolean tcpNoDelay = true;
+  private int soLingerTime = -1;
+
+  //Http responses settings
+  private int outputBufferSize = 32768; //32 Kilobytes
+  private int outputAggregationSize = 8192; //8 Kilobytes
+  private int maxResponseHeaderSize = 8192; //8 Kilobytes
+  private boolean sendDateHeader = true;
+  private boolean sendServerVersion = true;
+
+  //HTTP/2 settings, the flow control windows default to the HTTP/2 specification size
+  private Http2Mode http2Mode = Http2Mode.DISABLED;
+  private int http2MaxConcurrentStreams = 128;
+  private int http2InitialStreamRecvWindow = 65535;
+  private int http2InitialSessionRecvWindow = 65535;
+
+  //Key store used by the TLS mode
+  private String keyStorePath;
+  private String keyStorePassword;
+  private String keyManagerPassword;
+
   //Jetty server
   private Server server;
 
+  //Executor and scheduler of the connector, if null the ones of the server are used
+  private Executor executor;
+  private Scheduler scheduler;
+
+  //Buffer pool of the connector, if null the connector creates its own
+  private ByteBufferPool byteBufferPool;
+
   /**
    * Creates an instance of the admin connector.
+   * The admin connector doesn't share threads with the application connector, so the admin endpoints stay responsive
+   * when the application is saturated.
    * The default values for this instance are:
    * - name:  admin
    * - port: 8081
-   * - threadPool: QueuedThreadPool(maxThreadPoolSize)
+   * - threadPool: dedicated QueuedThreadPool(8, 2)
+   * - scheduler: dedicated ScheduledExecutorScheduler
+   * - acceptors: 1
+   * - selectors: 1
    */
   public static HttpConnectorFactory admin(Server server) {
+    return admin(server, DEFAULT_ADMIN_MIN_THREADS, DEFAULT_ADMIN_MAX_THREADS, DEFAULT_ADMIN_SELECTORS);
+  }
+
+  /**
+   * Creates an instance of the admin connector with a dedicated thread pool of the given size and number of selectors.
+   */
+  public static HttpConnectorFactory admin(Server server, int minThreads, int maxThreads, int selectors) {
+    //the admin threads must cover the acceptor and selectors and leave room to handle requests
+    Preconditions.checkArgument(maxThreads > selectors + 1, "admin maxThreads must be greater than selectors + 1");
     final HttpConnectorFactory httpConnectorFactory = new HttpConnectorFactory();
     httpConnectorFactory.port = 8081;  //default admin port
     httpConnectorFactory.name = ADMIN_CONNECTOR_NAME;
     httpConnectorFactory.server = server;
+    httpConnectorFactory.acceptors = 1;
+    httpConnectorFactory.selectors = selectors;
+    final QueuedThreadPool adminThreadPool = new QueuedThreadPool(maxThreads, minThreads);
+    adminThreadPool.setName(ADMIN_CONNECTOR_NAME);
+    httpConnectorFactory.executor = adminThreadPool;
+    httpConnectorFactory.scheduler = new ScheduledExecutorScheduler(ADMIN_CONNECTOR_NAME + "-scheduler", false);
     return httpConnectorFactory;
   }
 
   /**
    * Creates an instance of the application connector.
-   * The instance returned is a SelectorChannelConnector which by default has a threadPool implementation.
+   * The instance returned is a ServerConnector that uses the thread pool and scheduler of the server.
    * The default values for this instance are:
    * - name:  application
    * - port: 8080
-   * - threadPool: none
+   * - threadPool: server thread pool
    */
   public static HttpConnectorFactory application(Server server) {
     final HttpConnectorFactory httpConnectorFactory = new HttpConnectorFactory();
@@ -70,6 +176,43 @@ public class HttpConnectorFactory {
     this.idleTimeout = idleTimeout;
   }
 
+  /**
+   * Creates an instance of the sidecar connector: a second application connector for the clients that run in the same
+   * host, e.g. a local proxy. It serves the application context using the thread pool and scheduler of the server.
+   * The default values for this instance are:
+   * - name:  sidecar
+   * - host: 127.0.0.1, only reachable through the loopback interface
+   * - forwarded: true, the client address is taken from the X-Forwarded-For header set by the proxy
+   * - threadPool: server thread pool
+   */
+  public static HttpConnectorFactory sidecar(Server server) {
+    final HttpConnectorFactory httpConnectorFactory = new HttpConnectorFactory();
+    httpConnectorFactory.name = SIDECAR_CONNECTOR_NAME;
+    httpConnectorFactory.host = LOOPBACK_HOST;
+    httpConnectorFactory.forwarded = true;
+    httpConnectorFactory.server = server;
+    return httpConnectorFactory;
+  }
+
+  /**
+   * Creates an instance of the warm-up connector: a cleartext application connector that only this process listens on,
+   * so the WarmUp requests can't reach another instance that shares the application port. It serves the application
+   * context using the thread pool and scheduler of the server.
+   * The default values for this instance are:
+   * - name:  warm-up
+   * - host: 127.0.0.1, only reachable through the loopback interface
+   * - port: 0, an ephemeral port
+   * - threadPool: server thread pool
+   */
+  public static HttpConnectorFactory warmUp(Server server) {
+    final HttpConnectorFactory httpConnectorFactory = new HttpConnectorFactory();
+    httpConnectorFactory.name = WARM_UP_CONNECTOR_NAME;
+    httpConnectorFactory.host = LOOPBACK_HOST;
+    httpConnectorFactory.port = 0;
+    httpConnectorFactory.server = server;
+    return httpConnectorFactory;
+  }
+
   public int getPort() {
     return port;
   }
@@ -78,6 +221,22 @@ public class HttpConnectorFactory {
     this.port = port;
   }
 
+  public String getHost() {
+    return host;
+  }
+
+  public void setHost(String host) {
+    this.host = host;
+  }
+
+  public boolean isForwarded() {
+    return forwarded;
+  }
+
+  public void setForwarded(boolean forwarded) {
+    this.forwarded = forwarded;
+  }
+
   public String getName() {
     return name;
   }
@@ -86,6 +245,190 @@ public class HttpConnectorFactory {
     this.name = name;
   }
 
+  public int getAcceptors() {
+    return acceptors;
+  }
+
+  public void setAcceptors(int acceptors) {
+    this.acceptors = acceptors;
+  }
+
+  public int getSelectors() {
+    return selectors;
+  }
+
+  public void setSelectors(int selectors) {
+    this.selectors = selectors;
+  }
+
+  public int getAcceptQueueSize() {
+    return acceptQueueSize;
+  }
+
+  public void setAcceptQueueSize(int acceptQueueSize) {
+    this.acceptQueueSize = acceptQueueSize;
+  }
+
+  public boolean isReuseAddress() {
+    return reuseAddress;
+  }
+
+  public void setReuseAddress(boolean reuseAddress) {
+    this.reuseAddress = reuseAddress;
+  }
+
+  public boolean isReusePort() {
+    return reusePort;
+  }
+
+  public void setReusePort(boolean reusePort) {
+    this.reusePort = reusePort;
+  }
+
+  public boolean isInheritChannel() {
+    return inheritChannel;
+  }
+
+  public void setInheritChannel(boolean inheritChannel) {
+    this.inheritChannel = inheritChannel;
+  }
+
+  public boolean isTcpNoDelay() {
+    return tcpNoDelay;
+  }
+
+  public void setTcpNoDelay(boolean tcpNoDelay) {
+    this.tcpNoDelay = tcpNoDelay;
+  }
+
+  public int getSoLingerTime() {
+    return soLingerTime;
+  }
+
+  public void setSoLingerTime(int soLingerTime) {
+    this.soLingerTime = soLingerTime;
+  }
+
+  public int getOutputBufferSize() {
+    return outputBufferSize;
+  }
+
+  public void setOutputBufferSize(int outputBufferSize) {
+    this.outputBufferSize = outputBufferSize;
+  }
+
+  public int getOutputAggregationSize() {
+    return outputAggregationSize;
+  }
+
+  public void setOutputAggregationSize(int outputAggregationSize) {
+    this.outputAggregationSize = outputAggregationSize;
+  }
+
+  public int getMaxResponseHeaderSize() {
+    return maxResponseHeaderSize;
+  }
+
+  public void setMaxResponseHeaderSize(int maxResponseHeaderSize) {
+    this.maxResponseHeaderSize = maxResponseHeaderSize;
+  }
+
+  public boolean isSendDateHeader() {
+    return sendDateHeader;
+  }
+
+  public void setSendDateHeader(boolean sendDateHeader) {
+    this.sendDateHeader = sendDateHeader;
+  }
+
+  public boolean isSendServerVersion() {
+    return sendServerVersion;
+  }
+
+  public void setSendServerVersion(boolean sendServerVersion) {
+    this.sendServerVersion = sendServerVersion;
+  }
+
+  public Http2Mode getHttp2Mode() {
+    return http2Mode;
+  }
+
+  public void setHttp2Mode(Http2Mode http2Mode) {
+    this.http2Mode = http2Mode;
+  }
+
+  public int getHttp2MaxConcurrentStreams() {
+    return http2MaxConcurrentStreams;
+  }
+
+  public void setHttp2MaxConcurrentStreams(int http2MaxConcurrentStreams) {
+    this.http2MaxConcurrentStreams = http2MaxConcurrentStreams;
+  }
+
+  public int getHttp2InitialStreamRecvWindow() {
+    return http2InitialStreamRecvWindow;
+  }
+
+  public void setHttp2InitialStreamRecvWindow(int http2InitialStreamRecvWindow) {
+    this.http2InitialStreamRecvWindow = http2InitialStreamRecvWindow;
+  }
+
+  public int getHttp2InitialSessionRecvWindow() {
+    return http2InitialSessionRecvWindow;
+  }
+
+  public void setHttp2InitialSessionRecvWindow(int http2InitialSessionRecvWindow) {
+    this.http2InitialSessionRecvWindow = http2InitialSessionRecvWindow;
+  }
+
+  public String getKeyStorePath() {
+    return keyStorePath;
+  }
+
+  public void setKeyStorePath(String keyStorePath) {
+    this.keyStorePath = keyStorePath;
+  }
+
+  public String getKeyStorePassword() {
+    return keyStorePassword;
+  }
+
+  public void setKeyStorePassword(String keyStorePassword) {
+    this.keyStorePassword = keyStorePassword;
+  }
+
+  public String getKeyManagerPassword() {
+    return keyManagerPassword;
+  }
+
+  public void setKeyManagerPassword(String keyManagerPassword) {
+    this.keyManagerPassword = keyManagerPassword;
+  }
+
+  public Executor getExecutor() {
+    return executor;
+  }
+
+  public void setExecutor(Executor executor) {
+    this.executor = executor;
+  }
+
+  public Scheduler getScheduler() {
+    return scheduler;
+  }
+
+  public void setScheduler(Scheduler scheduler) {
+    this.scheduler = scheduler;
+  }
+
+  public ByteBufferPool getByteBufferPool() {
+    return byteBufferPool;
+  }
+
+  public void setByteBufferPool(ByteBufferPool byteBufferPool) {
+    this.byteBufferPool = byteBufferPool;
+  }
+
   public Server getServer() {
     return server;
   }
@@ -96,17 +439,85 @@ public class HttpConnectorFactory {
 
   /**
    * Builds an instance of a Connector using the values provider by the HttpConnectorFactory instance.
+   * Depending on the http2Mode the connector speaks HTTP/1.1 only, HTTP/1.1 and h2c, or HTTP/1.1 and h2 over TLS.
    */
   public Connector build() {
     final HttpConfiguration httpConfiguration = new HttpConfiguration();
     httpConfiguration.setRequestHeaderSize(maxRequestHeaderSize);
+    httpConfiguration.setResponseHeaderSize(maxResponseHeaderSize);
+    httpConfiguration.setOutputBufferSize(outputBufferSize);
+    httpConfiguration.setOutputAggregationSize(outputAggregationSize);
+    httpConfiguration.setSendDateHeader(sendDateHeader);
+    httpConfiguration.setSendServerVersion(sendServerVersion);
+    if (forwarded) {
+      httpConfiguration.addCustomizer(new ForwardedRequestCustomizer());
+    }
 
-    final HttpConnectionFactory httpConnectionFactory = new HttpConnectionFactory(httpConfiguration);
-
-    final ServerConnector httpConnector = new ServerConnector(server, httpConnectionFactory);
+    //the executor and scheduler, if provided, are managed by the connector lifecycle
+    final TunableServerConnector httpConnector =
+      new TunableServerConnector(server, executor, scheduler, byteBufferPool, acceptors, selectors,
+                                 connectionFactories(httpConfiguration));
+    httpConnector.setHost(host);
     httpConnector.setPort(port);
     httpConnector.setIdleTimeout(idleTimeout);
     httpConnector.setName(name);
+    httpConnector.setAcceptQueueSize(acceptQueueSize);
+    httpConnector.setReuseAddress(reuseAddress);
+    httpConnector.setReusePort(reusePort);
+    httpConnector.setInheritChannel(inheritChannel);
+    httpConnector.setTcpNoDelay(tcpNoDelay);
+    httpConnector.setSoLingerTime(soLingerTime);
     return httpConnector;
   }
+
+  /**
+   * Creates the connection factories of the connector, the first one is the default protocol.
+   */
+  private ConnectionFactory[] connectionFactories(HttpConfiguration httpConfiguration) {
+    if (http2Mode == Http2Mode.TLS) {
+      httpConfiguration.addCustomizer(new SecureRequestCustomizer());
+      final HttpConnectionFactory httpConnectionFactory = new HttpConnectionFactory(httpConfiguration);
+      final HTTP2ServerConnectionFactory http2ConnectionFactory =
+        configureHttp2(new HTTP2ServerConnectionFactory(httpConfiguration));
+      NegotiatingServerConnectionFactory.checkProtocolNegotiationAvailable();
+      final ALPNServerConnectionFactory alpnConnectionFactory =
+        new ALPNServerConnectionFactory(http2ConnectionFactory.getProtocol(), httpConnectionFactory.getProtocol());
+      alpnConnectionFactory.setDefaultProtocol(httpConnectionFactory.getProtocol());
+      final SslConnectionFactory sslConnectionFactory =
+        new SslConnectionFactory(sslContextFactory(), alpnConnectionFactory.getProtocol());
+      return new ConnectionFactory[] {sslConnectionFactory, alpnConnectionFactory, http2ConnectionFactory,
+        httpConnectionFactory};
+    }
+    final HttpConnectionFactory httpConnectionFactory = new HttpConnectionFactory(httpConfiguration);
+    if (http2Mode == Http2Mode.H2C) {
+      return new ConnectionFactory[] {httpConnectionFactory,
+        configureHttp2(new HTTP2CServerConnectionFactory(httpConfiguration))};
+    }
+    return new ConnectionFactory[] {httpConnectionFactory};
+  }
+
+  /**
+   * Applies the streams and flow control settings to an HTTP/2 connection factory.
+   */
+  private <T extends AbstractHTTP2ServerConnectionFactory> T configureHttp2(T http2ConnectionFactory) {
+    http2ConnectionFactory.setMaxConcurrentStreams(http2MaxConcurrentStreams);
+    http2ConnectionFactory.setInitialStreamRecvWindow(http2InitialStreamRecvWindow);
+    http2ConnectionFactory.setInitialSessionRecvWindow(http2InitialSessionRecvWindow);
+    return http2ConnectionFactory;
+  }
+
+  /**
+   * Creates the SslContextFactory from the local key store, the cipher suites are sorted to prefer the ones allowed by
+   * HTTP/2.
+   */
+  private SslContextFactory sslContextFactory() {
+    Preconditions.checkNotNull(keyStorePath, "A key store is required by the TLS mode");
+    final SslContextFactory sslContextFactory = new SslContextFactory();
+    sslContextFactory.setKeyStorePath(keyStorePath);
+    sslContextFactory.setKeyStorePassword(keyStorePassword);
+    sslContextFactory.setKeyManagerPassword(keyManagerPassword == null ? keyStorePassword : keyManagerPassword);
+    sslContextFactory.setCipherComparator(HTTP2Cipher.COMPARATOR);
+    sslContextFactory.setUseCipherSuitesOrder(true);
+    return sslContextFactory;
+  }
 }
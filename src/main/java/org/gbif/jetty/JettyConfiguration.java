@@ -0,0 +1,939 @@
+package org.gbif.jetty;
+
+import org.gbif.jetty.buffer.BoundedByteBufferPool;
+import org.gbif.jetty.cache.ResponseCacheHandler;
+import org.gbif.jetty.diagnostics.DiagnosticsHandler;
+import org.gbif.jetty.health.HealthCheckRegistry;
+import org.gbif.jetty.limit.RequestLimitHandler;
+import org.gbif.jetty.log.AsyncRequestLog;
+
+import java.util.List;
+import java.util.zip.Deflater;
+
+import com.beust.jcommander.Parameter;
+
+/**
+ * Command line configuration of the embedded Jetty server.
+ * It complements the ServiceConfiguration class with the settings that tune the server internals; all the values are
+ * optional and default to the values used by the ServerFactory.
+ */
+public class JettyConfiguration {
+
+  @Parameter(names = "-minThreads", description = "Minimum number of worker threads")
+  private int minThreads = ThreadPoolFactory.DEFAULT_MIN_THREADS;
+
+  @Parameter(names = "-maxThreads", description = "Maximum number of worker threads")
+  private int maxThreads = ThreadPoolFactory.DEFAULT_MAX_THREADS;
+
+  @Parameter(names = "-threadIdleTimeout", description = "Time in milliseconds an idle worker thread is kept alive")
+  private int threadIdleTimeout = ThreadPoolFactory.DEFAULT_IDLE_TIMEOUT;
+
+  @Parameter(names = "-maxQueuedRequests",
+    description = "Maximum number of jobs waiting for a worker thread, further jobs are rejected")
+  private int maxQueuedRequests = ThreadPoolFactory.DEFAULT_MAX_QUEUED_REQUESTS;
+
+  @Parameter(names = "-threadNamePrefix", description = "Name prefix of the worker threads")
+  private String threadNamePrefix = ThreadPoolFactory.DEFAULT_NAME;
+
+  @Parameter(names = "-threadPoolMode",
+    description = "Worker threads implementation: QUEUED (bounded platform threads) or VIRTUAL (a virtual thread per "
+                  + "task, requires a Java runtime that supports them)")
+  private ThreadPoolFactory.Mode threadPoolMode = ThreadPoolFactory.Mode.QUEUED;
+
+  @Parameter(names = "-adminMinThreads", description = "Minimum number of threads of the admin connector")
+  private int adminMinThreads = HttpConnectorFactory.DEFAULT_ADMIN_MIN_THREADS;
+
+  @Parameter(names = "-adminMaxThreads", description = "Maximum number of threads of the admin connector")
+  private int adminMaxThreads = HttpConnectorFactory.DEFAULT_ADMIN_MAX_THREADS;
+
+  @Parameter(names = "-adminSelectors", description = "Number of selector threads of the admin connector")
+  private int adminSelectors = HttpConnectorFactory.DEFAULT_ADMIN_SELECTORS;
+
+  @Parameter(names = "-acceptors",
+    description = "Number of acceptor threads of the application connector, -1 to choose it from the available cores")
+  private int acceptors = -1;
+
+  @Parameter(names = "-selectors",
+    description = "Number of selector threads of the application connector, -1 to choose it from the available cores")
+  private int selectors = -1;
+
+  @Parameter(names = "-acceptQueueSize",
+    description = "Size of the pending connections queue of the application connector, 0 to use the OS default")
+  private int acceptQueueSize = 0;
+
+  @Parameter(names = "-bindHost",
+    description = "Interface the application connector binds to, e.g. 127.0.0.1 to only serve local proxies; all the "
+                  + "interfaces by default")
+  private String bindHost;
+
+  @Parameter(names = "-adminBindHost", description = "Interface the admin connector binds to, all by default")
+  private String adminBindHost;
+
+  @Parameter(names = "-sidecarPort",
+    description = "Port of an additional application connector for a proxy running in the same host, disabled if not "
+                  + "set")
+  private Integer sidecarPort;
+
+  @Parameter(names = "-sidecarHost", description = "Interface the sidecar connector binds to")
+  private String sidecarHost = HttpConnectorFactory.LOOPBACK_HOST;
+
+  @Parameter(names = "-reuseAddress", arity = 1, description = "Enables SO_REUSEADDR on the application connector")
+  private boolean reuseAddress = true;
+
+  @Parameter(names = "-reusePort",
+    description = "Enables SO_REUSEPORT on the application connector, requires Java 9+ and OS support")
+  private boolean reusePort;
+
+  @Parameter(names = "-inheritChannel",
+    description = "The application connector uses the listening socket inherited from the parent process")
+  private boolean inheritChannel;
+
+  @Parameter(names = "-replaceInstance",
+    description = "Admin address, host:port, of the running instance that this one replaces: it's stopped once this "
+                  + "instance is RUNNING; the application connector binds with SO_REUSEPORT")
+  private String replaceInstance;
+
+  @Parameter(names = "-tcpNoDelay", arity = 1, description = "Enables TCP_NODELAY on the application connections")
+  private boolean tcpNoDelay = true;
+
+  @Parameter(names = "-soLingerTime",
+    description = "SO_LINGER time in milliseconds of the application connections, -1 to disable it")
+  private int soLingerTime = -1;
+
+  @Parameter(names = "-outputBufferSize", description = "Size in bytes of the response output buffer")
+  private int outputBufferSize = 32768;
+
+  @Parameter(names = "-outputAggregationSize",
+    description = "Maximum size in bytes of the writes aggregated in the output buffer before being flushed")
+  private int outputAggregationSize = 8192;
+
+  @Parameter(names = "-maxResponseHeaderSize", description = "Maximum size in bytes of the response headers")
+  private int maxResponseHeaderSize = 8192;
+
+  @Parameter(names = "-sendDateHeader", arity = 1, description = "Sends the Date header in the responses")
+  private boolean sendDateHeader = true;
+
+  @Parameter(names = "-sendServerVersion", arity = 1, description = "Sends the Server header in the responses")
+  private boolean sendServerVersion = true;
+
+  @Parameter(names = "-http2",
+    description = "HTTP/2 support of the application connector: DISABLED, H2C (cleartext) or TLS (ALPN, requires a "
+                  + "key store)")
+  private HttpConnectorFactory.Http2Mode http2Mode = HttpConnectorFactory.Http2Mode.DISABLED;
+
+  @Parameter(names = "-http2MaxConcurrentStreams", description = "Maximum number of concurrent HTTP/2 streams")
+  private int http2MaxConcurrentStreams = 128;
+
+  @Parameter(names = "-http2InitialStreamRecvWindow", description = "Initial HTTP/2 stream flow control window")
+  private int http2InitialStreamRecvWindow = 65535;
+
+  @Parameter(names = "-http2InitialSessionRecvWindow", description = "Initial HTTP/2 session flow control window")
+  private int http2InitialSessionRecvWindow = 65535;
+
+  @Parameter(names = "-keyStorePath", description = "Path to the key store used by the TLS mode")
+  private String keyStorePath;
+
+  @Parameter(names = "-keyStorePassword", description = "Password of the key store used by the TLS mode")
+  private String keyStorePassword;
+
+  @Parameter(names = "-gzip", description = "Enables the gzip compression of the application responses")
+  private boolean gzip;
+
+  @Parameter(names = "-gzipMinSize", description = "Minimum size in bytes of a response to be compressed")
+  private int gzipMinSize = GzipHandlerFactory.DEFAULT_MIN_GZIP_SIZE;
+
+  @Parameter(names = "-gzipCompressionLevel", description = "Deflater compression level, from 1 to 9 or -1 (default)")
+  private int gzipCompressionLevel = Deflater.DEFAULT_COMPRESSION;
+
+  @Parameter(names = "-gzipMimeTypes",
+    description = "Comma separated list of the compressed mime types, by default all except images and archives")
+  private List<String> gzipMimeTypes;
+
+  @Parameter(names = "-gzipExcludedPaths", description = "Comma separated list of path specs never compressed")
+  private List<String> gzipExcludedPaths;
+
+  @Parameter(names = "-drainPropagationDelay",
+    description = "Time in milliseconds to wait, before draining, for the STOPPING status to reach the clients")
+  private long drainPropagationDelay = 0L;
+
+  @Parameter(names = "-drainTimeout",
+    description = "Maximum time in milliseconds to wait for the active requests when the server is stopped")
+  private long drainTimeout = 30000L;
+
+  @Parameter(names = "-fastStart",
+    description = "Starts the web application without fragment and META-INF scanning and serves it from the jar "
+                  + "without extracting it")
+  private boolean fastStart;
+
+  @Parameter(names = "-healthCheckInterval", description = "Time in milliseconds between executions of the health checks")
+  private long healthCheckInterval = HealthCheckRegistry.DEFAULT_CHECK_INTERVAL;
+
+  @Parameter(names = "-healthCheckTimeout",
+    description = "Time in milliseconds a health check can take before it's reported as unhealthy")
+  private long healthCheckTimeout = HealthCheckRegistry.DEFAULT_CHECK_TIMEOUT;
+
+  @Parameter(names = "-maxClientConcurrency",
+    description = "Maximum number of requests a client can have in progress, 0 to disable the limit")
+  private int maxClientConcurrency;
+
+  @Parameter(names = "-maxClientRate",
+    description = "Maximum number of requests per second of a client, 0 to disable the limit")
+  private double maxClientRate;
+
+  @Parameter(names = "-clientRateBurst",
+    description = "Number of requests a client can send at once, 0 to use the maxClientRate")
+  private int clientRateBurst;
+
+  @Parameter(names = "-clientKeyHeader",
+    description = "Request header that identifies the clients, e.g. an API key; by default the remote address is used")
+  private String clientKeyHeader;
+
+  @Parameter(names = "-loadShedding",
+    description = "Rejects part of the application requests while the server is overloaded")
+  private boolean loadShedding;
+
+  @Parameter(names = "-sheddingMaxQueue",
+    description = "Number of jobs waiting for a worker thread above which the server is overloaded, 0 to ignore it")
+  private int sheddingMaxQueue = RequestLimitHandler.DEFAULT_SHEDDING_MAX_QUEUE;
+
+  @Parameter(names = "-sheddingLatencyGradient",
+    description = "Ratio of the recent latency to the normal latency above which a busy server is overloaded, 0 to "
+                  + "ignore it")
+  private double sheddingLatencyGradient = RequestLimitHandler.DEFAULT_SHEDDING_LATENCY_GRADIENT;
+
+  @Parameter(names = "-limitRetryAfter",
+    description = "Retry-After seconds of the requests rejected by the load shedding or the concurrency limit")
+  private int limitRetryAfter = 1;
+
+  @Parameter(names = "-accessLog", description = "Path of the access log file, the access log is disabled if not set")
+  private String accessLog;
+
+  @Parameter(names = "-accessLogBufferSize", description = "Number of access log events buffered in memory")
+  private int accessLogBufferSize = AsyncRequestLog.DEFAULT_BUFFER_SIZE;
+
+  @Parameter(names = "-accessLogOverflow",
+    description = "What to do when the access log buffer is full: DROP the event or BLOCK the request thread")
+  private AsyncRequestLog.Overflow accessLogOverflow = AsyncRequestLog.Overflow.DROP;
+
+  @Parameter(names = "-accessLogSampleRate",
+    description = "Fraction of the requests written to the access log, server errors are always written")
+  private double accessLogSampleRate = 1d;
+
+  @Parameter(names = "-accessLogMaxFileSize",
+    description = "Size in bytes at which the access log is rotated, 0 to disable the size rotation")
+  private long accessLogMaxFileSize = AsyncRequestLog.DEFAULT_MAX_FILE_SIZE;
+
+  @Parameter(names = "-accessLogRotationInterval",
+    description = "Time in milliseconds between rotations of the access log, 0 to disable the time rotation")
+  private long accessLogRotationInterval = AsyncRequestLog.DEFAULT_ROTATION_INTERVAL;
+
+  @Parameter(names = "-accessLogRetainedFiles", description = "Number of rotated access log files kept")
+  private int accessLogRetainedFiles = AsyncRequestLog.DEFAULT_RETAINED_FILES;
+
+  @Parameter(names = "-responseCacheRules",
+    description = "Comma separated pathSpec=seconds rules of the cached responses, the cache is disabled if not set")
+  private List<String> responseCacheRules;
+
+  @Parameter(names = "-responseCacheSize", description = "Maximum size in bytes of the response cache")
+  private long responseCacheSize = ResponseCacheHandler.DEFAULT_MAX_SIZE;
+
+  @Parameter(names = "-responseCacheMaxEntrySize", description = "Maximum size in bytes of a cached response body")
+  private int responseCacheMaxEntrySize = ResponseCacheHandler.DEFAULT_MAX_ENTRY_SIZE;
+
+  @Parameter(names = "-bufferPoolType",
+    description = "Buffers of the pool shared by the connectors: the type REQUESTED by Jetty or always HEAP; "
+                  + "if not set each connector uses its own Jetty buffer pool")
+  private BoundedByteBufferPool.BufferType bufferPoolType;
+
+  @Parameter(names = "-bufferPoolBucketSize",
+    description = "Buffer capacities of the pool are rounded up to multiples of this size")
+  private int bufferPoolBucketSize = BoundedByteBufferPool.DEFAULT_BUCKET_SIZE;
+
+  @Parameter(names = "-bufferPoolMaxBufferSize", description = "Size in bytes of the largest buffer kept by the pool")
+  private int bufferPoolMaxBufferSize = BoundedByteBufferPool.DEFAULT_MAX_BUFFER_SIZE;
+
+  @Parameter(names = "-bufferPoolMaxHeapMemory", description = "Maximum bytes of heap buffers kept by the pool")
+  private long bufferPoolMaxHeapMemory = BoundedByteBufferPool.DEFAULT_MAX_MEMORY;
+
+  @Parameter(names = "-bufferPoolMaxDirectMemory", description = "Maximum bytes of direct buffers kept by the pool")
+  private long bufferPoolMaxDirectMemory = BoundedByteBufferPool.DEFAULT_MAX_MEMORY;
+
+  @Parameter(names = "-downloadPath",
+    description = "Path prefix of the files served by the download handler, the downloads are disabled if not set")
+  private String downloadPath;
+
+  @Parameter(names = "-downloadDirectory", description = "Directory of the files served under the download path")
+  private String downloadDirectory;
+
+  @Parameter(names = "-downloadRate", description = "Maximum bytes per second of each download, 0 for no limit")
+  private long downloadRate;
+
+  @Parameter(names = "-downloadTotalRate",
+    description = "Maximum bytes per second of all the downloads together, 0 for no limit")
+  private long downloadTotalRate;
+
+  @Parameter(names = "-warmUpFile",
+    description = "File of sample requests replayed before the instance is RUNNING, the warm-up is disabled if not set")
+  private String warmUpFile;
+
+  @Parameter(names = "-warmUpConcurrency", description = "Number of concurrent warm-up requests")
+  private int warmUpConcurrency = 4;
+
+  @Parameter(names = "-warmUpRequests", description = "Maximum number of warm-up requests")
+  private int warmUpRequests = 1000;
+
+  @Parameter(names = "-warmUpLatencyTolerance",
+    description = "The warm-up stops when the p90 latency of two consecutive batches of 100 requests differs less than "
+                  + "this fraction, 0 to always send all the warm-up requests")
+  private double warmUpLatencyTolerance = 0.1d;
+
+  @Parameter(names = "-warmUpTimeout", description = "Maximum time in milliseconds of the warm-up")
+  private long warmUpTimeout = 120000L;
+
+  @Parameter(names = "-diagnosticsDirectory",
+    description = "Directory of the flight recordings of the diagnostics endpoints, the temporary directory if not set")
+  private String diagnosticsDirectory;
+
+  @Parameter(names = "-continuousRecording",
+    description = "Keeps a low overhead flight recording of the recent activity, it can be dumped from the admin port")
+  private boolean continuousRecording;
+
+  @Parameter(names = "-continuousRecordingMaxAge",
+    description = "Time in milliseconds of the activity kept by the continuous recording")
+  private long continuousRecordingMaxAge = DiagnosticsHandler.DEFAULT_CONTINUOUS_MAX_AGE;
+
+  @Parameter(names = "-continuousRecordingMaxSize", description = "Maximum bytes kept by the continuous recording")
+  private long continuousRecordingMaxSize = DiagnosticsHandler.DEFAULT_CONTINUOUS_MAX_SIZE;
+
+  public int getMinThreads() {
+    return minThreads;
+  }
+
+  public void setMinThreads(int minThreads) {
+    this.minThreads = minThreads;
+  }
+
+  public int getMaxThreads() {
+    return maxThreads;
+  }
+
+  public void setMaxThreads(int maxThreads) {
+    this.maxThreads = maxThreads;
+  }
+
+  public int getThreadIdleTimeout() {
+    return threadIdleTimeout;
+  }
+
+  public void setThreadIdleTimeout(int threadIdleTimeout) {
+    this.threadIdleTimeout = threadIdleTimeout;
+  }
+
+  public int getMaxQueuedRequests() {
+    return maxQueuedRequests;
+  }
+
+  public void setMaxQueuedRequests(int maxQueuedRequests) {
+    this.maxQueuedRequests = maxQueuedRequests;
+  }
+
+  public String getThreadNamePrefix() {
+    return threadNamePrefix;
+  }
+
+  public void setThreadNamePrefix(String threadNamePrefix) {
+    this.threadNamePrefix = threadNamePrefix;
+  }
+
+  public ThreadPoolFactory.Mode getThreadPoolMode() {
+    return threadPoolMode;
+  }
+
+  public void setThreadPoolMode(ThreadPoolFactory.Mode threadPoolMode) {
+    this.threadPoolMode = threadPoolMode;
+  }
+
+  public int getAdminMinThreads() {
+    return adminMinThreads;
+  }
+
+  public void setAdminMinThreads(int adminMinThreads) {
+    this.adminMinThreads = adminMinThreads;
+  }
+
+  public int getAdminMaxThreads() {
+    return adminMaxThreads;
+  }
+
+  public void setAdminMaxThreads(int adminMaxThreads) {
+    this.adminMaxThreads = adminMaxThreads;
+  }
+
+  public int getAdminSelectors() {
+    return adminSelectors;
+  }
+
+  public void setAdminSelectors(int adminSelectors) {
+    this.adminSelectors = adminSelectors;
+  }
+
+  public int getAcceptors() {
+    return acceptors;
+  }
+
+  public void setAcceptors(int acceptors) {
+    this.acceptors = acceptors;
+  }
+
+  public int getSelectors() {
+    return selectors;
+  }
+
+  public void setSelectors(int selectors) {
+    this.selectors = selectors;
+  }
+
+  public int getAcceptQueueSize() {
+    return acceptQueueSize;
+  }
+
+  public void setAcceptQueueSize(int acceptQueueSize) {
+    this.acceptQueueSize = acceptQueueSize;
+  }
+
+  public String getBindHost() {
+    return bindHost;
+  }
+
+  public void setBindHost(String bindHost) {
+    this.bindHost = bindHost;
+  }
+
+  public String getAdminBindHost() {
+    return adminBindHost;
+  }
+
+  public void setAdminBindHost(String adminBindHost) {
+    this.adminBindHost = adminBindHost;
+  }
+
+  public Integer getSidecarPort() {
+    return sidecarPort;
+  }
+
+  public void setSidecarPort(Integer sidecarPort) {
+    this.sidecarPort = sidecarPort;
+  }
+
+  public String getSidecarHost() {
+    return sidecarHost;
+  }
+
+  public void setSidecarHost(String sidecarHost) {
+    this.sidecarHost = sidecarHost;
+  }
+
+  public boolean isReuseAddress() {
+    return reuseAddress;
+  }
+
+  public void setReuseAddress(boolean reuseAddress) {
+    this.reuseAddress = reuseAddress;
+  }
+
+  public boolean isReusePort() {
+    return reusePort;
+  }
+
+  public void setReusePort(boolean reusePort) {
+    this.reusePort = reusePort;
+  }
+
+  public boolean isTcpNoDelay() {
+    return tcpNoDelay;
+  }
+
+  public void setTcpNoDelay(boolean tcpNoDelay) {
+    this.tcpNoDelay = tcpNoDelay;
+  }
+
+  public int getSoLingerTime() {
+    return soLingerTime;
+  }
+
+  public void setSoLingerTime(int soLingerTime) {
+    this.soLingerTime = soLingerTime;
+  }
+
+  public int getOutputBufferSize() {
+    return outputBufferSize;
+  }
+
+  public void setOutputBufferSize(int outputBufferSize) {
+    this.outputBufferSize = outputBufferSize;
+  }
+
+  public int getOutputAggregationSize() {
+    return outputAggregationSize;
+  }
+
+  public void setOutputAggregationSize(int outputAggregationSize) {
+    this.outputAggregationSize = outputAggregationSize;
+  }
+
+  public int getMaxResponseHeaderSize() {
+    return maxResponseHeaderSize;
+  }
+
+  public void setMaxResponseHeaderSize(int maxResponseHeaderSize) {
+    this.maxResponseHeaderSize = maxResponseHeaderSize;
+  }
+
+  public boolean isSendDateHeader() {
+    return sendDateHeader;
+  }
+
+  public void setSendDateHeader(boolean sendDateHeader) {
+    this.sendDateHeader = sendDateHeader;
+  }
+
+  public boolean isSendServerVersion() {
+    return sendServerVersion;
+  }
+
+  public void setSendServerVersion(boolean sendServerVersion) {
+    this.sendServerVersion = sendServerVersion;
+  }
+
+  public HttpConnectorFactory.Http2Mode getHttp2Mode() {
+    return http2Mode;
+  }
+
+  public void setHttp2Mode(HttpConnectorFactory.Http2Mode http2Mode) {
+    this.http2Mode = http2Mode;
+  }
+
+  public int getHttp2MaxConcurrentStreams() {
+    return http2MaxConcurrentStreams;
+  }
+
+  public void setHttp2MaxConcurrentStreams(int http2MaxConcurrentStreams) {
+    this.http2MaxConcurrentStreams = http2MaxConcurrentStreams;
+  }
+
+  public int getHttp2InitialStreamRecvWindow() {
+    return http2InitialStreamRecvWindow;
+  }
+
+  public void setHttp2InitialStreamRecvWindow(int http2InitialStreamRecvWindow) {
+    this.http2InitialStreamRecvWindow = http2InitialStreamRecvWindow;
+  }
+
+  public int getHttp2InitialSessionRecvWindow() {
+    return http2InitialSessionRecvWindow;
+  }
+
+  public void setHttp2InitialSessionRecvWindow(int http2InitialSessionRecvWindow) {
+    this.http2InitialSessionRecvWindow = http2InitialSessionRecvWindow;
+  }
+
+  public String getKeyStorePath() {
+    return keyStorePath;
+  }
+
+  public void setKeyStorePath(String keyStorePath) {
+    this.keyStorePath = keyStorePath;
+  }
+
+  public String getKeyStorePassword() {
+    return keyStorePassword;
+  }
+
+  public void setKeyStorePassword(String keyStorePassword) {
+    this.keyStorePassword = keyStorePassword;
+  }
+
+  public boolean isGzip() {
+    return gzip;
+  }
+
+  public void setGzip(boolean gzip) {
+    this.gzip = gzip;
+  }
+
+  public int getGzipMinSize() {
+    return gzipMinSize;
+  }
+
+  public void setGzipMinSize(int gzipMinSize) {
+    this.gzipMinSize = gzipMinSize;
+  }
+
+  public int getGzipCompressionLevel() {
+    return gzipCompressionLevel;
+  }
+
+  public void setGzipCompressionLevel(int gzipCompressionLevel) {
+    this.gzipCompressionLevel = gzipCompressionLevel;
+  }
+
+  public List<String> getGzipMimeTypes() {
+    return gzipMimeTypes;
+  }
+
+  public void setGzipMimeTypes(List<String> gzipMimeTypes) {
+    this.gzipMimeTypes = gzipMimeTypes;
+  }
+
+  public List<String> getGzipExcludedPaths() {
+    return gzipExcludedPaths;
+  }
+
+  public void setGzipExcludedPaths(List<String> gzipExcludedPaths) {
+    this.gzipExcludedPaths = gzipExcludedPaths;
+  }
+
+  public long getDrainPropagationDelay() {
+    return drainPropagationDelay;
+  }
+
+  public void setDrainPropagationDelay(long drainPropagationDelay) {
+    this.drainPropagationDelay = drainPropagationDelay;
+  }
+
+  public long getDrainTimeout() {
+    return drainTimeout;
+  }
+
+  public void setDrainTimeout(long drainTimeout) {
+    this.drainTimeout = drainTimeout;
+  }
+
+  public boolean isFastStart() {
+    return fastStart;
+  }
+
+  public void setFastStart(boolean fastStart) {
+    this.fastStart = fastStart;
+  }
+
+  public long getHealthCheckInterval() {
+    return healthCheckInterval;
+  }
+
+  public void setHealthCheckInterval(long healthCheckInterval) {
+    this.healthCheckInterval = healthCheckInterval;
+  }
+
+  public long getHealthCheckTimeout() {
+    return healthCheckTimeout;
+  }
+
+  public void setHealthCheckTimeout(long healthCheckTimeout) {
+    this.healthCheckTimeout = healthCheckTimeout;
+  }
+
+  public int getMaxClientConcurrency() {
+    return maxClientConcurrency;
+  }
+
+  public void setMaxClientConcurrency(int maxClientConcurrency) {
+    this.maxClientConcurrency = maxClientConcurrency;
+  }
+
+  public double getMaxClientRate() {
+    return maxClientRate;
+  }
+
+  public void setMaxClientRate(double maxClientRate) {
+    this.maxClientRate = maxClientRate;
+  }
+
+  public int getClientRateBurst() {
+    return clientRateBurst;
+  }
+
+  public void setClientRateBurst(int clientRateBurst) {
+    this.clientRateBurst = clientRateBurst;
+  }
+
+  public String getClientKeyHeader() {
+    return clientKeyHeader;
+  }
+
+  public void setClientKeyHeader(String clientKeyHeader) {
+    this.clientKeyHeader = clientKeyHeader;
+  }
+
+  public boolean isLoadShedding() {
+    return loadShedding;
+  }
+
+  public void setLoadShedding(boolean loadShedding) {
+    this.loadShedding = loadShedding;
+  }
+
+  public int getSheddingMaxQueue() {
+    return sheddingMaxQueue;
+  }
+
+  public void setSheddingMaxQueue(int sheddingMaxQueue) {
+    this.sheddingMaxQueue = sheddingMaxQueue;
+  }
+
+  public double getSheddingLatencyGradient() {
+    return sheddingLatencyGradient;
+  }
+
+  public void setSheddingLatencyGradient(double sheddingLatencyGradient) {
+    this.sheddingLatencyGradient = sheddingLatencyGradient;
+  }
+
+  public int getLimitRetryAfter() {
+    return limitRetryAfter;
+  }
+
+  public void setLimitRetryAfter(int limitRetryAfter) {
+    this.limitRetryAfter = limitRetryAfter;
+  }
+
+  public String getAccessLog() {
+    return accessLog;
+  }
+
+  public void setAccessLog(String accessLog) {
+    this.accessLog = accessLog;
+  }
+
+  public int getAccessLogBufferSize() {
+    return accessLogBufferSize;
+  }
+
+  public void setAccessLogBufferSize(int accessLogBufferSize) {
+    this.accessLogBufferSize = accessLogBufferSize;
+  }
+
+  public AsyncRequestLog.Overflow getAccessLogOverflow() {
+    return accessLogOverflow;
+  }
+
+  public void setAccessLogOverflow(AsyncRequestLog.Overflow accessLogOverflow) {
+    this.accessLogOverflow = accessLogOverflow;
+  }
+
+  public double getAccessLogSampleRate() {
+    return accessLogSampleRate;
+  }
+
+  public void setAccessLogSampleRate(double accessLogSampleRate) {
+    this.accessLogSampleRate = accessLogSampleRate;
+  }
+
+  public long getAccessLogMaxFileSize() {
+    return accessLogMaxFileSize;
+  }
+
+  public void setAccessLogMaxFileSize(long accessLogMaxFileSize) {
+    this.accessLogMaxFileSize = accessLogMaxFileSize;
+  }
+
+  public long getAccessLogRotationInterval() {
+    return accessLogRotationInterval;
+  }
+
+  public void setAccessLogRotationInterval(long accessLogRotationInterval) {
+    this.accessLogRotationInterval = accessLogRotationInterval;
+  }
+
+  public int getAccessLogRetainedFiles() {
+    return accessLogRetainedFiles;
+  }
+
+  public void setAccessLogRetainedFiles(int accessLogRetainedFiles) {
+    this.accessLogRetainedFiles = accessLogRetainedFiles;
+  }
+
+  public List<String> getResponseCacheRules() {
+    return responseCacheRules;
+  }
+
+  public void setResponseCacheRules(List<String> responseCacheRules) {
+    this.responseCacheRules = responseCacheRules;
+  }
+
+  public long getResponseCacheSize() {
+    return responseCacheSize;
+  }
+
+  public void setResponseCacheSize(long responseCacheSize) {
+    this.responseCacheSize = responseCacheSize;
+  }
+
+  public int getResponseCacheMaxEntrySize() {
+    return responseCacheMaxEntrySize;
+  }
+
+  public void setResponseCacheMaxEntrySize(int responseCacheMaxEntrySize) {
+    this.responseCacheMaxEntrySize = responseCacheMaxEntrySize;
+  }
+
+  public BoundedByteBufferPool.BufferType getBufferPoolType() {
+    return bufferPoolType;
+  }
+
+  public void setBufferPoolType(BoundedByteBufferPool.BufferType bufferPoolType) {
+    this.bufferPoolType = bufferPoolType;
+  }
+
+  public int getBufferPoolBucketSize() {
+    return bufferPoolBucketSize;
+  }
+
+  public void setBufferPoolBucketSize(int bufferPoolBucketSize) {
+    this.bufferPoolBucketSize = bufferPoolBucketSize;
+  }
+
+  public int getBufferPoolMaxBufferSize() {
+    return bufferPoolMaxBufferSize;
+  }
+
+  public void setBufferPoolMaxBufferSize(int bufferPoolMaxBufferSize) {
+    this.bufferPoolMaxBufferSize = bufferPoolMaxBufferSize;
+  }
+
+  public long getBufferPoolMaxHeapMemory() {
+    return bufferPoolMaxHeapMemory;
+  }
+
+  public void setBufferPoolMaxHeapMemory(long bufferPoolMaxHeapMemory) {
+    this.bufferPoolMaxHeapMemory = bufferPoolMaxHeapMemory;
+  }
+
+  public long getBufferPoolMaxDirectMemory() {
+    return bufferPoolMaxDirectMemory;
+  }
+
+  public void setBufferPoolMaxDirectMemory(long bufferPoolMaxDirectMemory) {
+    this.bufferPoolMaxDirectMemory = bufferPoolMaxDirectMemory;
+  }
+
+  public boolean isInheritChannel() {
+    return inheritChannel;
+  }
+
+  public void setInheritChannel(boolean inheritChannel) {
+    this.inheritChannel = inheritChannel;
+  }
+
+  public String getReplaceInstance() {
+    return replaceInstance;
+  }
+
+  public void setReplaceInstance(String replaceInstance) {
+    this.replaceInstance = replaceInstance;
+  }
+
+  public String getDownloadPath() {
+    return downloadPath;
+  }
+
+  public void setDownloadPath(String downloadPath) {
+    this.downloadPath = downloadPath;
+  }
+
+  public String getDownloadDirectory() {
+    return downloadDirectory;
+  }
+
+  public void setDownloadDirectory(String downloadDirectory) {
+    this.downloadDirectory = downloadDirectory;
+  }
+
+  public long getDownloadRate() {
+    return downloadRate;
+  }
+
+  public void setDownloadRate(long downloadRate) {
+    this.downloadRate = downloadRate;
+  }
+
+  public long getDownloadTotalRate() {
+    return downloadTotalRate;
+  }
+
+  public void setDownloadTotalRate(long downloadTotalRate) {
+    this.downloadTotalRate = downloadTotalRate;
+  }
+
+  public String getWarmUpFile() {
+    return warmUpFile;
+  }
+
+  public void setWarmUpFile(String warmUpFile) {
+    this.warmUpFile = warmUpFile;
+  }
+
+  public int getWarmUpConcurrency() {
+    return warmUpConcurrency;
+  }
+
+  public void setWarmUpConcurrency(int warmUpConcurrency) {
+    this.warmUpConcurrency = warmUpConcurrency;
+  }
+
+  public int getWarmUpRequests() {
+    return warmUpRequests;
+  }
+
+  public void setWarmUpRequests(int warmUpRequests) {
+    this.warmUpRequests = warmUpRequests;
+  }
+
+  public double getWarmUpLatencyTolerance() {
+    return warmUpLatencyTolerance;
+  }
+
+  public void setWarmUpLatencyTolerance(double warmUpLatencyTolerance) {
+    this.warmUpLatencyTolerance = warmUpLatencyTolerance;
+  }
+
+  public long getWarmUpTimeout() {
+    return warmUpTimeout;
+  }
+
+  public void setWarmUpTimeout(long warmUpTimeout) {
+    this.warmUpTimeout = warmUpTimeout;
+  }
+
+  public String getDiagnosticsDirectory() {
+    return diagnosticsDirectory;
+  }
+
+  public void setDiagnosticsDirectory(String diagnosticsDirectory) {
+    this.diagnosticsDirectory = diagnosticsDirectory;
+  }
+
+  public boolean isContinuousRecording() {
+    return continuousRecording;
+  }
+
+  public void setContinuousRecording(boolean continuousRecording) {
+    this.continuousRecording = continuousRecording;
+  }
+
+  public long getContinuousRecordingMaxAge() {
+    return continuousRecordingMaxAge;
+  }
+
+  public void setContinuousRecordingMaxAge(long continuousRecordingMaxAge) {
+    this.continuousRecordingMaxAge = continuousRecordingMaxAge;
+  }
+
+  public long getContinuousRecordingMaxSize() {
+    return continuousRecordingMaxSize;
+  }
+
+  public void setContinuousRecordingMaxSize(long continuousRecordingMaxSize) {
+    this.continuousRecordingMaxSize = continuousRecordingMaxSize;
+  }
+}
@@ -0,0 +1,54 @@
+package org.gbif.jetty;
+
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.webapp.WebAppContext;
+
+/**
+ * WebAppContext that records the time of its startup phases in the StartupReport bean of the server:
+ * - descriptors: preConfigure, creates the class loader and parses the webdefault.xml and web.xml descriptors.
+ * - configuration: configure, applies the configurations to the context.
+ * - initialization: resolution of the descriptors, listeners, filters and servlets initialization.
+ * If the server has no StartupReport the phases aren't recorded.
+ */
+public class ProfiledWebAppContext extends WebAppContext {
+
+  private long configureNanos;
+
+  @Override
+  public void preConfigure() throws Exception {
+    final long start = System.nanoTime();
+    super.preConfigure();
+    record("descriptors", start);
+  }
+
+  @Override
+  public void configure() throws Exception {
+    final long start = System.nanoTime();
+    super.configure();
+    configureNanos = System.nanoTime() - start;
+    record("configuration", start);
+  }
+
+  /**
+   * The context start configures the context and then initializes the listeners, filters and servlets, the
+   * configuration time is subtracted to get the initialization time.
+   */
+  @Override
+  protected void startContext() throws Exception {
+    final long start = System.nanoTime();
+    configureNanos = 0L;
+    super.startContext();
+    record("initialization", start + configureNanos);
+  }
+
+  /**
+   * Records the phase in the server StartupReport, if it exists.
+   */
+  private void record(String phase, long startNanos) {
+    final Server server = getServer();
+    final StartupReport startupReport = server == null ? null : server.getBean(StartupReport.class);
+    if (startupReport != null) {
+      startupReport.record("context " + getContextPath() + ' ' + phase, startNanos);
+    }
+  }
+}
@@ -1,18 +1,48 @@
 package org.gbif.jetty;
 
 import org.gbif.discovery.conf.ServiceConfiguration;
+import org.gbif.jetty.buffer.BoundedByteBufferPool;
+import org.gbif.jetty.cache.ResponseCacheHandler;
+import org.gbif.jetty.diagnostics.DiagnosticsHandler;
+import org.gbif.jetty.download.DirectoryFileResolver;
+import org.gbif.jetty.download.DownloadHandler;
+import org.gbif.jetty.download.FileResolver;
+import org.gbif.jetty.health.HealthCheckRegistry;
+import org.gbif.jetty.health.HealthHandler;
+import org.gbif.jetty.limit.RequestLimitHandler;
+import org.gbif.jetty.log.AsyncRequestLog;
+import org.gbif.jetty.metrics.ConnectorMetrics;
+import org.gbif.jetty.metrics.MetricsHandler;
+import org.gbif.jetty.metrics.MetricsRegistry;
+import org.gbif.jetty.metrics.RequestMetricsHandler;
+import org.gbif.jetty.metrics.ThreadPoolMetrics;
+import org.gbif.ws.app.GracefulDrain;
+import org.gbif.ws.app.InstanceHandoff;
+import org.gbif.ws.discovery.conf.DiscoveryConfiguration;
 import org.gbif.ws.discovery.lifecycle.DiscoveryLifeCycle;
 
+import java.io.File;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+
+import com.google.common.base.Preconditions;
+import org.eclipse.jetty.server.AbstractConnector;
 import org.eclipse.jetty.server.Connector;
 import org.eclipse.jetty.server.Handler;
 import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.handler.ContextHandler;
 import org.eclipse.jetty.server.handler.ContextHandlerCollection;
+import org.eclipse.jetty.util.component.LifeCycle;
+import org.eclipse.jetty.util.thread.ThreadPool;
 
 /**
  * Utility class to generate instances of Jetty Servers.
  * The default values for the instance are:
  * -  gracefulShutdown period: 1 second.
  * - stopAtShutdown: true.
+ * - jettyConfiguration: default JettyConfiguration values.
+ * - discoveryConfiguration: default DiscoveryConfiguration values.
  */
 public class ServerFactory {
 
@@ -22,6 +52,18 @@ public class ServerFactory {
   //Shutdown the server when it's stopped
   private boolean stopAtShutdown = true;
 
+  //Server internals settings: thread pool, connectors, etc.
+  private JettyConfiguration jettyConfiguration = new JettyConfiguration();
+
+  //Application supplied executor to handle requests, overrides the thread pool mode of the jettyConfiguration
+  private ExecutorService executorService;
+
+  //Application supplied resolver of the downloads, overrides the downloadDirectory of the jettyConfiguration
+  private FileResolver downloadResolver;
+
+  //Zookeeper registration settings
+  private DiscoveryConfiguration discoveryConfiguration = new DiscoveryConfiguration();
+
   public int getGracefulShutdown() {
     return gracefulShutdown;
   }
@@ -38,48 +80,345 @@ public class ServerFactory {
     this.stopAtShutdown = stopAtShutdown;
   }
 
+  public JettyConfiguration getJettyConfiguration() {
+    return jettyConfiguration;
+  }
+
+  public void setJettyConfiguration(JettyConfiguration jettyConfiguration) {
+    this.jettyConfiguration = jettyConfiguration;
+  }
+
+  public ExecutorService getExecutorService() {
+    return executorService;
+  }
+
+  public void setExecutorService(ExecutorService executorService) {
+    this.executorService = executorService;
+  }
+
+  public FileResolver getDownloadResolver() {
+    return downloadResolver;
+  }
+
+  public void setDownloadResolver(FileResolver downloadResolver) {
+    this.downloadResolver = downloadResolver;
+  }
+
+  public DiscoveryConfiguration getDiscoveryConfiguration() {
+    return discoveryConfiguration;
+  }
+
+  public void setDiscoveryConfiguration(DiscoveryConfiguration discoveryConfiguration) {
+    this.discoveryConfiguration = discoveryConfiguration;
+  }
+
   /**
    * Builds a Jetty Server instance using the configuration class.
    * From the configuration class the following fields are used:
    * - stopSecret: stop password used by the StopHandler.
-   * - Http connectors definition: application and admin
+   * - Http connectors definition: application and admin, plus the sidecar connector if the jettyConfiguration has a
+   *   sidecarPort; with a bufferPoolType all of them share a BoundedByteBufferPool
    * - Contexts: default web application and stop context.
-   * If the configuration instance isDiscoverable registers a DiscoveryLifeCycle that handles the discovery process.
+   * The web application is wrapped by a RequestMetricsHandler, by a ResponseCacheHandler if there are response cache
+   * rules, by a RequestLimitHandler if any request limit is configured and by a DownloadHandler if there's a
+   * downloadPath; the server metrics are exposed in the admin context and its MetricsRegistry is registered as a server
+   * bean.
+   * A StartupReport bean times the start of the server, connectors and application context, it's served by the admin
+   * context, along with the secret protected diagnostics of the DiagnosticsHandler.
+   * A HealthCheckRegistry is registered as a managed server bean and as an attribute of the application context, its
+   * checks back the readiness and liveness probes of the admin context.
+   * If the jettyConfiguration has an accessLog file, an AsyncRequestLog is set as the server request log.
+   * The thread pool is built from the jettyConfiguration, or wraps the executorService if it has been set.
+   * If the jettyConfiguration has a warmUpFile, a WarmUp bean replays its requests through a warm-up connector once the
+   * server has started, the instance isn't ready nor RUNNING until it finishes.
+   * If the configuration instance isDiscoverable registers a DiscoveryLifeCycle that handles the discovery process,
+   * the service is registered in background using the discoveryConfiguration settings.
+   * A GracefulDrain bean drains the server before it's stopped by the ShutdownHolder, the gracefulShutdown period is
+   * the time given to the connections to close once the server is drained.
+   * If the jettyConfiguration has a replaceInstance, an InstanceHandoff stops that instance once this one is RUNNING.
    */
   public Server build(ServiceConfiguration configuration) {
-    Server server = new Server();
-    server.setConnectors(buildConnectors(configuration,server));
+    Server server = new Server(buildThreadPool());
+    final StartupReport startupReport = new StartupReport();
+    server.addLifeCycleListener(startupReport);
+    server.addBean(startupReport, false);
+    final BoundedByteBufferPool byteBufferPool = buildByteBufferPool();
+    server.setConnectors(buildConnectors(configuration, server, byteBufferPool));
+    for (Connector connector : server.getConnectors()) {
+      ((LifeCycle) connector).addLifeCycleListener(startupReport);
+    }
     server.setStopTimeout(gracefulShutdown);
-    server.setHandler(buildContexts(server, configuration.getStopSecret()));
+    final MetricsRegistry metricsRegistry = new MetricsRegistry();
+    server.addBean(metricsRegistry);
+    if (byteBufferPool != null) {
+      metricsRegistry.register(byteBufferPool);
+    }
+    server.setHandler(buildContexts(server, configuration.getStopSecret(), metricsRegistry, startupReport));
+    if (jettyConfiguration.getAccessLog() != null) {
+      final AsyncRequestLog requestLog = buildRequestLog();
+      server.setRequestLog(requestLog);
+      metricsRegistry.register(requestLog);
+    }
+    if (jettyConfiguration.getWarmUpFile() != null) {
+      //added once the contexts are built, so the connector metrics don't report it after the warm-up
+      final HttpConnectorFactory warmUpConnectorFactory = HttpConnectorFactory.warmUp(server);
+      warmUpConnectorFactory.setByteBufferPool(byteBufferPool);
+      server.addConnector(warmUpConnectorFactory.build());
+      final WarmUp warmUp = new WarmUp(new File(jettyConfiguration.getWarmUpFile()),
+                                       jettyConfiguration.getWarmUpConcurrency(),
+                                       jettyConfiguration.getWarmUpRequests(),
+                                       jettyConfiguration.getWarmUpLatencyTolerance(),
+                                       jettyConfiguration.getWarmUpTimeout());
+      server.addLifeCycleListener(warmUp);
+      server.addBean(warmUp, false);
+    }
     if (configuration.isDiscoverable()) { //Register the discovery lifecycle
-      server.addLifeCycleListener(new DiscoveryLifeCycle(configuration));
+      final DiscoveryLifeCycle discoveryLifeCycle = new DiscoveryLifeCycle(configuration, discoveryConfiguration);
+      server.addLifeCycleListener(discoveryLifeCycle);
+      server.addBean(discoveryLifeCycle, false);
+    }
+    server.addBean(new GracefulDrain(server, jettyConfiguration.getDrainPropagationDelay(),
+                                     jettyConfiguration.getDrainTimeout()), false);
+    if (jettyConfiguration.getReplaceInstance() != null) {
+      server.addLifeCycleListener(new InstanceHandoff(jettyConfiguration.getReplaceInstance(),
+                                                      configuration.getHttpAdminPort(),
+                                                      configuration.getStopSecret()));
     }
     return server;
   }
 
   /**
-   * Builds the admin and application connectors.
+   * Builds the thread pool shared by the server connectors.
+   */
+  private ThreadPool buildThreadPool() {
+    final ThreadPoolFactory threadPoolFactory = ThreadPoolFactory.fromConfiguration(jettyConfiguration);
+    threadPoolFactory.setExecutorService(executorService);
+    return threadPoolFactory.build();
+  }
+
+  /**
+   * Builds the buffer pool shared by the connectors, null if the jettyConfiguration doesn't have a bufferPoolType.
    */
-  private static Connector[] buildConnectors(ServiceConfiguration configuration, Server server) {
+  private BoundedByteBufferPool buildByteBufferPool() {
+    if (jettyConfiguration.getBufferPoolType() == null) {
+      return null;
+    }
+    return new BoundedByteBufferPool(jettyConfiguration.getBufferPoolType(),
+                                     jettyConfiguration.getBufferPoolBucketSize(),
+                                     jettyConfiguration.getBufferPoolMaxBufferSize(),
+                                     jettyConfiguration.getBufferPoolMaxHeapMemory(),
+                                     jettyConfiguration.getBufferPoolMaxDirectMemory());
+  }
+
+  /**
+   * Builds the admin and application connectors, they use the byteBufferPool if it isn't null.
+   */
+  private Connector[] buildConnectors(
+    ServiceConfiguration configuration, Server server, BoundedByteBufferPool byteBufferPool
+  ) {
     final HttpConnectorFactory appConnectorFactory = HttpConnectorFactory.application(server);
     appConnectorFactory.setPort(configuration.getHttpPort());
     if (configuration.getMaxRequestHeaderSize() != null) {
       appConnectorFactory.setMaxRequestHeaderSize(configuration.getMaxRequestHeaderSize());
     }
+    appConnectorFactory.setHost(jettyConfiguration.getBindHost());
+    appConnectorFactory.setByteBufferPool(byteBufferPool);
+    applyConnectorSettings(appConnectorFactory);
+    appConnectorFactory.setInheritChannel(jettyConfiguration.isInheritChannel());
 
-    final HttpConnectorFactory adminConnectorFactory = HttpConnectorFactory.admin(server);
+    final HttpConnectorFactory adminConnectorFactory =
+      HttpConnectorFactory.admin(server, jettyConfiguration.getAdminMinThreads(), jettyConfiguration.getAdminMaxThreads(),
+                                 jettyConfiguration.getAdminSelectors());
     adminConnectorFactory.setPort(configuration.getHttpAdminPort());
+    adminConnectorFactory.setHost(jettyConfiguration.getAdminBindHost());
+    adminConnectorFactory.setByteBufferPool(byteBufferPool);
+
+    if (jettyConfiguration.getSidecarPort() == null) {
+      return new Connector[] {appConnectorFactory.build(), adminConnectorFactory.build()};
+    }
+    return new Connector[] {appConnectorFactory.build(), adminConnectorFactory.build(),
+      buildSidecarConnector(server, byteBufferPool)};
+  }
+
+  /**
+   * Builds the sidecar connector, it has the settings of the application connector but it's always cleartext: TLS is
+   * terminated by the proxy, which can use h2c if HTTP/2 is enabled.
+   */
+  private Connector buildSidecarConnector(Server server, BoundedByteBufferPool byteBufferPool) {
+    final HttpConnectorFactory sidecarConnectorFactory = HttpConnectorFactory.sidecar(server);
+    sidecarConnectorFactory.setByteBufferPool(byteBufferPool);
+    applyConnectorSettings(sidecarConnectorFactory);
+    sidecarConnectorFactory.setPort(jettyConfiguration.getSidecarPort());
+    sidecarConnectorFactory.setHost(jettyConfiguration.getSidecarHost());
+    if (sidecarConnectorFactory.getHttp2Mode() == HttpConnectorFactory.Http2Mode.TLS) {
+      sidecarConnectorFactory.setHttp2Mode(HttpConnectorFactory.Http2Mode.H2C);
+    }
+    return sidecarConnectorFactory.build();
+  }
 
-    return new Connector[] {appConnectorFactory.build(), adminConnectorFactory.build()};
+  /**
+   * Applies the connector and socket settings of the jettyConfiguration to the application connector.
+   */
+  private void applyConnectorSettings(HttpConnectorFactory connectorFactory) {
+    connectorFactory.setAcceptors(jettyConfiguration.getAcceptors());
+    connectorFactory.setSelectors(jettyConfiguration.getSelectors());
+    connectorFactory.setAcceptQueueSize(jettyConfiguration.getAcceptQueueSize());
+    connectorFactory.setReuseAddress(jettyConfiguration.isReuseAddress());
+    //both instances listen on the same port while the replaced one drains
+    connectorFactory.setReusePort(jettyConfiguration.isReusePort() || jettyConfiguration.getReplaceInstance() != null);
+    connectorFactory.setTcpNoDelay(jettyConfiguration.isTcpNoDelay());
+    connectorFactory.setSoLingerTime(jettyConfiguration.getSoLingerTime());
+    connectorFactory.setOutputBufferSize(jettyConfiguration.getOutputBufferSize());
+    connectorFactory.setOutputAggregationSize(jettyConfiguration.getOutputAggregationSize());
+    connectorFactory.setMaxResponseHeaderSize(jettyConfiguration.getMaxResponseHeaderSize());
+    connectorFactory.setSendDateHeader(jettyConfiguration.isSendDateHeader());
+    connectorFactory.setSendServerVersion(jettyConfiguration.isSendServerVersion());
+    connectorFactory.setHttp2Mode(jettyConfiguration.getHttp2Mode());
+    connectorFactory.setHttp2MaxConcurrentStreams(jettyConfiguration.getHttp2MaxConcurrentStreams());
+    connectorFactory.setHttp2InitialStreamRecvWindow(jettyConfiguration.getHttp2InitialStreamRecvWindow());
+    connectorFactory.setHttp2InitialSessionRecvWindow(jettyConfiguration.getHttp2InitialSessionRecvWindow());
+    connectorFactory.setKeyStorePath(jettyConfiguration.getKeyStorePath());
+    connectorFactory.setKeyStorePassword(jettyConfiguration.getKeyStorePassword());
   }
 
   /**
-   * Builds the web application and stop contexts.
+   * Builds the web application and admin contexts.
    */
-  private static ContextHandlerCollection buildContexts(Server server, String secret) {
+  private ContextHandlerCollection buildContexts(
+    Server server, String secret, MetricsRegistry metricsRegistry, StartupReport startupReport
+  ) {
+    final GzipHandlerFactory gzipHandlerFactory =
+      jettyConfiguration.isGzip() ? GzipHandlerFactory.fromConfiguration(jettyConfiguration) : null;
+    final ContextHandler applicationContext =
+      ContextFactory.buildApplicationContext(gzipHandlerFactory, jettyConfiguration.isFastStart());
+    applicationContext.addLifeCycleListener(startupReport);
+    final HealthCheckRegistry healthCheckRegistry =
+      new HealthCheckRegistry(jettyConfiguration.getHealthCheckInterval(), jettyConfiguration.getHealthCheckTimeout());
+    server.addBean(healthCheckRegistry);
+    applicationContext.setAttribute(HealthCheckRegistry.ATTRIBUTE, healthCheckRegistry);
+    final RequestMetricsHandler requestMetricsHandler = new RequestMetricsHandler();
+    Handler applicationHandler = applicationContext;
+    if (jettyConfiguration.getDownloadPath() != null) {
+      final DownloadHandler downloadHandler = buildDownloadHandler();
+      downloadHandler.setHandler(applicationHandler);
+      applicationHandler = downloadHandler;
+      metricsRegistry.register(downloadHandler);
+    }
+    final RequestLimitHandler requestLimitHandler = buildRequestLimitHandler();
+    if (requestLimitHandler.isEnabled()) {
+      //inside the RequestMetricsHandler, so the rejected requests are counted by status
+      requestLimitHandler.setHandler(applicationHandler);
+      applicationHandler = requestLimitHandler;
+      metricsRegistry.register(requestLimitHandler);
+    }
+    final ResponseCacheHandler responseCacheHandler = buildResponseCacheHandler();
+    if (responseCacheHandler.isEnabled()) {
+      //outside the RequestLimitHandler, so the cache hits aren't limited
+      responseCacheHandler.setHandler(applicationHandler);
+      applicationHandler = responseCacheHandler;
+      metricsRegistry.register(responseCacheHandler);
+    }
+    requestMetricsHandler.setHandler(applicationHandler);
+    metricsRegistry.register(requestMetricsHandler);
+    metricsRegistry.register(new ConnectorMetrics(server));
+    metricsRegistry.register(new ThreadPoolMetrics(threadPools(server)));
     ContextHandlerCollection contexts = new ContextHandlerCollection();
-    contexts.setHandlers(new Handler[] {ContextFactory.buildApplicationContext(),
-      ContextFactory.buildAdminContext(server, secret)});
+    //the admin context goes first: it handles all the admin connector requests, so the handlers that wrap the
+    //application context only see application requests
+    final ContextHandler adminContext = ContextFactory.buildAdminContext(server, secret,
+                                                                         new MetricsHandler(metricsRegistry),
+                                                                         new StartupHandler(startupReport),
+                                                                         new HealthHandler(server,
+                                                                                           healthCheckRegistry),
+                                                                         buildDiagnosticsHandler(secret));
+    contexts.setHandlers(new Handler[] {adminContext, requestMetricsHandler});
     return contexts;
   }
+
+  /**
+   * Builds the DiagnosticsHandler of the admin context, protected by the stop secret.
+   */
+  private DiagnosticsHandler buildDiagnosticsHandler(String secret) {
+    final File recordingDirectory = new File(jettyConfiguration.getDiagnosticsDirectory() == null
+                                               ? System.getProperty("java.io.tmpdir")
+                                               : jettyConfiguration.getDiagnosticsDirectory());
+    final DiagnosticsHandler diagnosticsHandler = new DiagnosticsHandler(secret, recordingDirectory);
+    diagnosticsHandler.setContinuousRecording(jettyConfiguration.isContinuousRecording());
+    diagnosticsHandler.setContinuousMaxAge(jettyConfiguration.getContinuousRecordingMaxAge());
+    diagnosticsHandler.setContinuousMaxSize(jettyConfiguration.getContinuousRecordingMaxSize());
+    return diagnosticsHandler;
+  }
+
+  /**
+   * Builds the DownloadHandler of the downloadPath, the files are resolved by the downloadResolver or, if it isn't set,
+   * from the downloadDirectory of the jettyConfiguration.
+   */
+  private DownloadHandler buildDownloadHandler() {
+    FileResolver fileResolver = downloadResolver;
+    if (fileResolver == null) {
+      Preconditions.checkArgument(jettyConfiguration.getDownloadDirectory() != null,
+                                  "A download directory or resolver is required by the download path");
+      fileResolver = new DirectoryFileResolver(new File(jettyConfiguration.getDownloadDirectory()));
+    }
+    final DownloadHandler downloadHandler = new DownloadHandler(jettyConfiguration.getDownloadPath(), fileResolver);
+    downloadHandler.setRate(jettyConfiguration.getDownloadRate());
+    downloadHandler.setTotalRate(jettyConfiguration.getDownloadTotalRate());
+    return downloadHandler;
+  }
+
+  /**
+   * Builds the ResponseCacheHandler from the jettyConfiguration, it's only used if there are caching rules.
+   */
+  private ResponseCacheHandler buildResponseCacheHandler() {
+    final ResponseCacheHandler responseCacheHandler = new ResponseCacheHandler();
+    responseCacheHandler.setRules(jettyConfiguration.getResponseCacheRules());
+    responseCacheHandler.setMaxSize(jettyConfiguration.getResponseCacheSize());
+    responseCacheHandler.setMaxEntrySize(jettyConfiguration.getResponseCacheMaxEntrySize());
+    return responseCacheHandler;
+  }
+
+  /**
+   * Builds the RequestLimitHandler from the jettyConfiguration, it's only used if one of the limits is enabled.
+   */
+  private RequestLimitHandler buildRequestLimitHandler() {
+    final RequestLimitHandler requestLimitHandler = new RequestLimitHandler();
+    requestLimitHandler.setMaxClientConcurrency(jettyConfiguration.getMaxClientConcurrency());
+    requestLimitHandler.setMaxClientRate(jettyConfiguration.getMaxClientRate());
+    requestLimitHandler.setClientRateBurst(jettyConfiguration.getClientRateBurst());
+    requestLimitHandler.setClientKeyHeader(jettyConfiguration.getClientKeyHeader());
+    requestLimitHandler.setLoadShedding(jettyConfiguration.isLoadShedding());
+    requestLimitHandler.setSheddingMaxQueue(jettyConfiguration.getSheddingMaxQueue());
+    requestLimitHandler.setSheddingLatencyGradient(jettyConfiguration.getSheddingLatencyGradient());
+    requestLimitHandler.setRetryAfter(jettyConfiguration.getLimitRetryAfter());
+    return requestLimitHandler;
+  }
+
+  /**
+   * Builds the access log from the jettyConfiguration.
+   */
+  private AsyncRequestLog buildRequestLog() {
+    final AsyncRequestLog requestLog = new AsyncRequestLog(jettyConfiguration.getAccessLog());
+    requestLog.setBufferSize(jettyConfiguration.getAccessLogBufferSize());
+    requestLog.setOverflow(jettyConfiguration.getAccessLogOverflow());
+    requestLog.setSampleRate(jettyConfiguration.getAccessLogSampleRate());
+    requestLog.setMaxFileSize(jettyConfiguration.getAccessLogMaxFileSize());
+    requestLog.setRotationInterval(jettyConfiguration.getAccessLogRotationInterval());
+    requestLog.setRetainedFiles(jettyConfiguration.getAccessLogRetainedFiles());
+    return requestLog;
+  }
+
+  /**
+   * Thread pools of the server and its connectors, by name.
+   */
+  private static Map<String, ThreadPool> threadPools(Server server) {
+    final Map<String, ThreadPool> threadPools = new LinkedHashMap<String, ThreadPool>();
+    threadPools.put("server", server.getThreadPool());
+    for (Connector connector : server.getConnectors()) {
+      if (connector instanceof AbstractConnector && connector.getExecutor() instanceof ThreadPool
+          && connector.getExecutor() != server.getThreadPool()) {
+        threadPools.put(connector.getName(), (ThreadPool) connector.getExecutor());
+      }
+    }
+    return threadPools;
+  }
 }
@@ -0,0 +1,41 @@
+package org.gbif.jetty;
+
+import java.io.IOException;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.eclipse.jetty.http.HttpStatus;
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.handler.HandlerWrapper;
+
+/**
+ * Admin handler that exposes the StartupReport as plain text at "/startup".
+ */
+public class StartupHandler extends HandlerWrapper {
+
+  public static final String STARTUP_CONTEXT = "/startup";
+
+  private final StartupReport startupReport;
+
+  /**
+   * Creates a handler that serves the startupReport parameter.
+   */
+  public StartupHandler(StartupReport startupReport) {
+    this.startupReport = startupReport;
+  }
+
+  @Override
+  public void handle(
+    String target, Request baseRequest, HttpServletRequest request, HttpServletResponse response
+  ) throws IOException, ServletException {
+    if (STARTUP_CONTEXT.equals(target)) {
+      baseRequest.setHandled(true);
+      response.setStatus(HttpStatus.OK_200);
+      response.setContentType("text/plain; charset=utf-8");
+      response.getWriter().write(startupReport.format());
+    } else {
+      super.handle(target, baseRequest, request, response);
+    }
+  }
+}
@@ -0,0 +1,170 @@
+package org.gbif.jetty;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.jetty.server.Connector;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.handler.ContextHandler;
+import org.eclipse.jetty.util.component.LifeCycle;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Records the time spent in each startup phase of the server.
+ * As a LifeCycle listener it times the start of the components it's attached to: server, connectors and contexts,
+ * other phases are recorded explicitly by the components that run them.
+ * The report is logged once the server is started and it's served by the admin context at "/startup".
+ * The ServerFactory registers the instance as a bean of the server.
+ */
+public class StartupReport implements LifeCycle.Listener {
+
+  private static final Logger LOG = LoggerFactory.getLogger(StartupReport.class);
+
+  private static final String REPORT_FMT = "%8d ms %8d ms  %s%n";
+
+  //Start time of the components being started
+  private final Map<LifeCycle, Long> starts = new ConcurrentHashMap<LifeCycle, Long>();
+
+  private final List<Phase> phases = new ArrayList<Phase>();
+
+  //Time when the first phase started, all offsets are relative to it
+  private volatile long origin;
+
+  //JVM uptime when the server was started, 0 while it's starting
+  private volatile long jvmUptime;
+
+  /**
+   * Records a phase that started at startNanos (System.nanoTime()) and has just finished.
+   */
+  public void record(String phase, long startNanos) {
+    final long now = System.nanoTime();
+    synchronized (phases) {
+      if (origin == 0L) {
+        origin = startNanos;
+      }
+      phases.add(new Phase(phase, TimeUnit.NANOSECONDS.toMillis(startNanos - origin),
+                           TimeUnit.NANOSECONDS.toMillis(now - startNanos)));
+    }
+  }
+
+  /**
+   * Recorded phases, in the order they finished.
+   */
+  public List<Phase> getPhases() {
+    synchronized (phases) {
+      return new ArrayList<Phase>(phases);
+    }
+  }
+
+  /**
+   * Time in milliseconds since the JVM started until the server was started, 0 if the server hasn't started yet.
+   */
+  public long getJvmUptime() {
+    return jvmUptime;
+  }
+
+  @Override
+  public void lifeCycleStarting(LifeCycle event) {
+    final long now = System.nanoTime();
+    synchronized (phases) {
+      if (origin == 0L) {
+        origin = now;
+      }
+    }
+    starts.put(event, now);
+  }
+
+  @Override
+  public void lifeCycleStarted(LifeCycle event) {
+    final Long start = starts.remove(event);
+    if (start != null) {
+      record(phaseName(event), start);
+    }
+    if (event instanceof Server) {
+      jvmUptime = ManagementFactory.getRuntimeMXBean().getUptime();
+      LOG.info("Startup report{}{}", System.lineSeparator(), format());
+    }
+  }
+
+  @Override
+  public void lifeCycleFailure(LifeCycle event, Throwable cause) {
+    final Long start = starts.remove(event);
+    if (start != null) {
+      record(phaseName(event) + " (failed)", start);
+    }
+  }
+
+  @Override
+  public void lifeCycleStopping(LifeCycle event) {
+    //do nothing
+  }
+
+  @Override
+  public void lifeCycleStopped(LifeCycle event) {
+    //do nothing
+  }
+
+  /**
+   * Formats the report as text: offset from the beginning of the startup, duration and name of each phase.
+   */
+  public String format() {
+    final StringBuilder report = new StringBuilder();
+    report.append(String.format("%11s %11s  %s%n", "offset", "duration", "phase"));
+    for (Phase phase : getPhases()) {
+      report.append(String.format(REPORT_FMT, phase.getOffset(), phase.getDuration(), phase.getName()));
+    }
+    if (jvmUptime > 0) {
+      report.append(String.format("JVM uptime when the server started: %d ms%n", jvmUptime));
+    }
+    return report.toString();
+  }
+
+  /**
+   * Name of the phase that starts a component.
+   */
+  private static String phaseName(LifeCycle lifeCycle) {
+    if (lifeCycle instanceof Server) {
+      return "server";
+    }
+    if (lifeCycle instanceof Connector) {
+      return "connector " + ((Connector) lifeCycle).getName();
+    }
+    if (lifeCycle instanceof ContextHandler) {
+      return "context " + ((ContextHandler) lifeCycle).getContextPath();
+    }
+    return lifeCycle.getClass().getSimpleName();
+  }
+
+  /**
+   * Startup phase: offset from the beginning of the startup and duration, both in milliseconds.
+   */
+  public static class Phase {
+
+    private final String name;
+    private final long offset;
+    private final long duration;
+
+    public Phase(String name, long offset, long duration) {
+      this.name = name;
+      this.offset = offset;
+      this.duration = duration;
+    }
+
+    public String getName() {
+      return name;
+    }
+
+    public long getOffset() {
+      return offset;
+    }
+
+    public long getDuration() {
+      return duration;
+    }
+  }
+}
@@ -3,6 +3,8 @@ package org.gbif.jetty;
 import org.gbif.ws.app.ShutdownHolder;
 
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
@@ -39,6 +41,8 @@ public class StopHandler extends HandlerWrapper {
 
   /**
    * Initiates the stop process.
+   * Other targets are delegated to the next admin handlers, if none of them handles the request a NOT_FOUND is
+   * returned.
    * Any unforeseen error returns a INTERNAL_SERVER_ERROR.
    */
   @Override
@@ -47,9 +51,14 @@ public class StopHandler extends HandlerWrapper {
   ) throws IOException, ServletException {
     try {
       if (target.equals(ContextFactory.STOP_CONTEXT)) {
+        baseRequest.setHandled(true);
         stopServer(request, response);
       } else {
         super.handle(target,baseRequest,request,response);
+        if (!baseRequest.isHandled()) {
+          baseRequest.setHandled(true);
+          response.sendError(HttpServletResponse.SC_NOT_FOUND);
+        }
       }
     } catch (Exception ex) {
       response.sendError(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
@@ -65,7 +74,7 @@ public class StopHandler extends HandlerWrapper {
    */
   private void stopServer(HttpServletRequest request, HttpServletResponse response) throws IOException {
     //Validates the secret
-    if (request.getParameterMap().containsKey(SECRET_PARAM) && secret.equals(request.getParameter(SECRET_PARAM))) {
+    if (isValidSecret(request, secret)) {
       LOG.info("Stopping Jetty");
       response.setStatus(HttpStatus.ACCEPTED_202);
       response.flushBuffer();
@@ -85,4 +94,16 @@ public class StopHandler extends HandlerWrapper {
       response.sendError(HttpServletResponse.SC_UNAUTHORIZED);
     }
   }
+
+  /**
+   * True if the "secret" parameter of the request matches the secret, it's shared by the admin handlers that require
+   * the stop secret.
+   * The comparison takes the same time wherever the values differ, so the secret can't be guessed from the timing.
+   */
+  public static boolean isValidSecret(HttpServletRequest request, String secret) {
+    final String requestSecret = request.getParameter(SECRET_PARAM);
+    return secret != null && requestSecret != null
+           && MessageDigest.isEqual(secret.getBytes(StandardCharsets.UTF_8),
+                                    requestSecret.getBytes(StandardCharsets.UTF_8));
+  }
 }
@@ -0,0 +1,163 @@
+package org.gbif.jetty;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import com.google.common.base.Preconditions;
+import org.eclipse.jetty.util.BlockingArrayQueue;
+import org.eclipse.jetty.util.thread.ExecutorThreadPool;
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
+import org.eclipse.jetty.util.thread.ThreadPool;
+
+/**
+ * Factory class that provides the ThreadPool used by a Jetty server to run the connectors and handle the requests.
+ * The default values for this instance are:
+ * - mode: QUEUED
+ * - minThreads: 8
+ * - maxThreads: 200
+ * - idleTimeout: 60 seconds
+ * - maxQueuedRequests: 1024
+ * - name: qtp
+ */
+public class ThreadPoolFactory {
+
+  /**
+   * Implementation used to execute the server tasks.
+   */
+  public enum Mode {
+    /**
+     * A QueuedThreadPool of platform threads with a bounded job queue.
+     */
+    QUEUED,
+    /**
+     * A new virtual thread per task, only available in Java runtimes that support them.
+     */
+    VIRTUAL
+  }
+
+  public static final int DEFAULT_MIN_THREADS = 8;
+  public static final int DEFAULT_MAX_THREADS = 200;
+  public static final int DEFAULT_IDLE_TIMEOUT = 60000; //60 seconds
+  public static final int DEFAULT_MAX_QUEUED_REQUESTS = 1024;
+  public static final String DEFAULT_NAME = "qtp";
+
+  //Factory method of virtual thread executors, resolved by reflection to keep this class Java 8 compatible
+  private static final String VIRTUAL_EXECUTOR_METHOD = "newVirtualThreadPerTaskExecutor";
+
+  private Mode mode = Mode.QUEUED;
+  private int minThreads = DEFAULT_MIN_THREADS;
+  private int maxThreads = DEFAULT_MAX_THREADS;
+  private int idleTimeout = DEFAULT_IDLE_TIMEOUT;
+  private int maxQueuedRequests = DEFAULT_MAX_QUEUED_REQUESTS;
+  private String name = DEFAULT_NAME;
+
+  //Application supplied executor, if set it takes precedence over the mode
+  private ExecutorService executorService;
+
+  /**
+   * Creates a factory using the thread pool settings of the configuration parameter.
+   */
+  public static ThreadPoolFactory fromConfiguration(JettyConfiguration configuration) {
+    final ThreadPoolFactory threadPoolFactory = new ThreadPoolFactory();
+    threadPoolFactory.mode = configuration.getThreadPoolMode();
+    threadPoolFactory.minThreads = configuration.getMinThreads();
+    threadPoolFactory.maxThreads = configuration.getMaxThreads();
+    threadPoolFactory.idleTimeout = configuration.getThreadIdleTimeout();
+    threadPoolFactory.maxQueuedRequests = configuration.getMaxQueuedRequests();
+    threadPoolFactory.name = configuration.getThreadNamePrefix();
+    return threadPoolFactory;
+  }
+
+  public Mode getMode() {
+    return mode;
+  }
+
+  public void setMode(Mode mode) {
+    this.mode = mode;
+  }
+
+  public int getMinThreads() {
+    return minThreads;
+  }
+
+  public void setMinThreads(int minThreads) {
+    this.minThreads = minThreads;
+  }
+
+  public int getMaxThreads() {
+    return maxThreads;
+  }
+
+  public void setMaxThreads(int maxThreads) {
+    this.maxThreads = maxThreads;
+  }
+
+  public int getIdleTimeout() {
+    return idleTimeout;
+  }
+
+  public void setIdleTimeout(int idleTimeout) {
+    this.idleTimeout = idleTimeout;
+  }
+
+  public int getMaxQueuedRequests() {
+    return maxQueuedRequests;
+  }
+
+  public void setMaxQueuedRequests(int maxQueuedRequests) {
+    this.maxQueuedRequests = maxQueuedRequests;
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  public void setName(String name) {
+    this.name = name;
+  }
+
+  public ExecutorService getExecutorService() {
+    return executorService;
+  }
+
+  public void setExecutorService(ExecutorService executorService) {
+    this.executorService = executorService;
+  }
+
+  /**
+   * Builds an instance of a ThreadPool using the values provided by the ThreadPoolFactory instance.
+   * If an ExecutorService has been set, it is used regardless of the mode.
+   */
+  public ThreadPool build() {
+    if (executorService != null) {
+      return new ExecutorThreadPool(executorService);
+    }
+    if (mode == Mode.VIRTUAL) {
+      return new ExecutorThreadPool(virtualThreadExecutor());
+    }
+    Preconditions.checkArgument(minThreads > 0 && minThreads <= maxThreads,
+                                "minThreads must be positive and lower or equal than maxThreads");
+    Preconditions.checkArgument(maxQueuedRequests > 0, "maxQueuedRequests must be positive");
+    //the queue grows on demand up to maxQueuedRequests, jobs submitted to a full queue are rejected
+    final BlockingArrayQueue<Runnable> queue =
+      new BlockingArrayQueue<Runnable>(Math.min(minThreads, maxQueuedRequests), minThreads, maxQueuedRequests);
+    final QueuedThreadPool threadPool = new QueuedThreadPool(maxThreads, minThreads, idleTimeout, queue);
+    threadPool.setName(name);
+    return threadPool;
+  }
+
+  /**
+   * Creates an executor that starts a new virtual thread for each task.
+   */
+  private static ExecutorService virtualThreadExecutor() {
+    try {
+      final Method factoryMethod = Executors.class.getMethod(VIRTUAL_EXECUTOR_METHOD);
+      return (ExecutorService) factoryMethod.invoke(null);
+    } catch (NoSuchMethodException ex) {
+      throw new IllegalStateException("Virtual threads are not supported by this Java runtime", ex);
+    } catch (ReflectiveOperationException ex) {
+      throw new IllegalStateException("Error creating a virtual thread executor", ex);
+    }
+  }
+}
@@ -0,0 +1,111 @@
+package org.gbif.jetty;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketException;
+import java.net.SocketOption;
+import java.net.StandardSocketOptions;
+import java.nio.channels.ServerSocketChannel;
+import java.util.concurrent.Executor;
+
+import org.eclipse.jetty.io.ByteBufferPool;
+import org.eclipse.jetty.server.ConnectionFactory;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+import org.eclipse.jetty.util.thread.Scheduler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * ServerConnector that exposes the socket options that Jetty 9.3 doesn't let configure: SO_REUSEPORT on the listening
+ * socket and TCP_NODELAY on the accepted sockets.
+ */
+public class TunableServerConnector extends ServerConnector {
+
+  private static final Logger LOG = LoggerFactory.getLogger(TunableServerConnector.class);
+
+  //Name of the StandardSocketOptions field of SO_REUSEPORT, only available since Java 9
+  private static final String SO_REUSEPORT = "SO_REUSEPORT";
+
+  private volatile boolean reusePort;
+
+  private volatile boolean tcpNoDelay = true;
+
+  /**
+   * Creates a connector using the same parameters as the ServerConnector full constructor.
+   */
+  public TunableServerConnector(
+    Server server, Executor executor, Scheduler scheduler, ByteBufferPool bufferPool, int acceptors, int selectors,
+    ConnectionFactory... factories
+  ) {
+    super(server, executor, scheduler, bufferPool, acceptors, selectors, factories);
+  }
+
+  public boolean isReusePort() {
+    return reusePort;
+  }
+
+  public void setReusePort(boolean reusePort) {
+    this.reusePort = reusePort;
+  }
+
+  public boolean isTcpNoDelay() {
+    return tcpNoDelay;
+  }
+
+  public void setTcpNoDelay(boolean tcpNoDelay) {
+    this.tcpNoDelay = tcpNoDelay;
+  }
+
+  /**
+   * Opens the listening channel setting SO_REUSEPORT before binding it, if it was requested.
+   * Inherited channels are already bound, so they are handled by the ServerConnector.
+   */
+  @Override
+  protected ServerSocketChannel openAcceptChannel() throws IOException {
+    if (!reusePort || isInheritChannel()) {
+      return super.openAcceptChannel();
+    }
+    final ServerSocketChannel serverChannel = ServerSocketChannel.open();
+    final SocketOption<Boolean> reusePortOption = reusePortOption();
+    if (reusePortOption != null && serverChannel.supportedOptions().contains(reusePortOption)) {
+      serverChannel.setOption(reusePortOption, Boolean.TRUE);
+    } else {
+      LOG.warn("SO_REUSEPORT is not supported by this Java runtime or platform, connector {} ignores it", getName());
+    }
+    final InetSocketAddress bindAddress =
+      getHost() == null ? new InetSocketAddress(getPort()) : new InetSocketAddress(getHost(), getPort());
+    serverChannel.socket().setReuseAddress(getReuseAddress());
+    serverChannel.socket().bind(bindAddress, getAcceptQueueSize());
+    return serverChannel;
+  }
+
+  /**
+   * Configures the accepted socket, overriding the TCP_NODELAY that Jetty always enables.
+   */
+  @Override
+  protected void configure(Socket socket) {
+    super.configure(socket);
+    if (!tcpNoDelay) {
+      try {
+        socket.setTcpNoDelay(false);
+      } catch (SocketException ex) {
+        LOG.debug("Unable to disable TCP_NODELAY", ex);
+      }
+    }
+  }
+
+  /**
+   * Looks up the SO_REUSEPORT socket option by reflection to keep this class Java 8 compatible.
+   * Returns null if the option is not available.
+   */
+  @SuppressWarnings("unchecked")
+  private static SocketOption<Boolean> reusePortOption() {
+    try {
+      return (SocketOption<Boolean>) StandardSocketOptions.class.getField(SO_REUSEPORT).get(null);
+    } catch (ReflectiveOperationException ex) {
+      return null;
+    }
+  }
+}
@@ -0,0 +1,309 @@
+package org.gbif.jetty;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.base.Preconditions;
+import com.google.common.base.Splitter;
+import com.google.common.io.ByteStreams;
+import com.google.common.io.Files;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.eclipse.jetty.http.HttpMethod;
+import org.eclipse.jetty.server.Connector;
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+import org.eclipse.jetty.util.component.AbstractLifeCycle;
+import org.eclipse.jetty.util.component.LifeCycle;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Warms up the application, so the JIT compiles its hot paths, before the instance receives traffic.
+ * Once the server has started, the sample requests are replayed in a background thread, in batches of BATCH_SIZE
+ * requests sent by concurrency threads, through the warm-up connector built by the HttpConnectorFactory: a cleartext
+ * loopback connector on an ephemeral port, so the requests can't reach another instance that shares the application
+ * port, e.g.: the one being replaced. The request limits and the response cache let its requests reach the
+ * application, and it's stopped once the warm-up finishes. The warm-up finishes when maxRequests have been sent, when
+ * the 90th percentile latency of a batch differs less than the latencyTolerance from the previous one, or when the
+ * timeout expires. Until then the instance isn't ready and the DiscoveryLifeCycle doesn't publish it as RUNNING.
+ * Each line of the requests file is a request: a path, a method and a path, or an access log line with the quoted
+ * request, e.g. "GET /species/1 HTTP/1.1"; empty lines and lines starting with # are ignored. Only GET and HEAD
+ * requests are replayed, so the warm-up doesn't modify any data.
+ * The instance is registered as a bean of the server by the ServerFactory.
+ */
+public class WarmUp extends AbstractLifeCycle.AbstractLifeCycleListener {
+
+  private static final Logger LOG = LoggerFactory.getLogger(WarmUp.class);
+
+  //Requests sent between latency measures
+  private static final int BATCH_SIZE = 100;
+
+  //Connect and read timeout of each request
+  private static final int REQUEST_TIMEOUT = 10000;
+
+  //Identifies the warm-up requests in the access log
+  private static final String USER_AGENT = "gbif-warm-up";
+
+  private final List<String[]> requests;
+  private final int concurrency;
+  private final int maxRequests;
+  private final double latencyTolerance;
+  private final long timeout;
+
+  private volatile boolean complete;
+  private final List<Runnable> completionListeners = new ArrayList<Runnable>();
+
+  /**
+   * Creates a warm-up that replays the requests of the file; timeout is in milliseconds and a latencyTolerance of 0
+   * disables the stabilisation target.
+   */
+  public WarmUp(File requestsFile, int concurrency, int maxRequests, double latencyTolerance, long timeout) {
+    Preconditions.checkArgument(concurrency > 0, "The warm-up concurrency must be greater than 0");
+    try {
+      requests = parseRequests(Files.readLines(requestsFile, StandardCharsets.UTF_8));
+    } catch (IOException ex) {
+      throw new IllegalArgumentException("Unable to read the warm-up requests " + requestsFile, ex);
+    }
+    Preconditions.checkArgument(!requests.isEmpty(), "There are no GET or HEAD requests in %s", requestsFile);
+    this.concurrency = concurrency;
+    this.maxRequests = maxRequests;
+    this.latencyTolerance = latencyTolerance;
+    this.timeout = timeout;
+  }
+
+  /**
+   * True once the warm-up has finished, it never blocks.
+   */
+  public boolean isComplete() {
+    return complete;
+  }
+
+  /**
+   * Runs the listener once the warm-up has finished, immediately if it has already finished.
+   */
+  public void addCompletionListener(Runnable listener) {
+    synchronized (completionListeners) {
+      if (!complete) {
+        completionListeners.add(listener);
+        return;
+      }
+    }
+    listener.run();
+  }
+
+  /**
+   * Starts the warm-up in a new thread.
+   */
+  @Override
+  public void lifeCycleStarted(LifeCycle event) {
+    final Server server = (Server) event;
+    final Thread warmUpThread = new Thread("warm-up") {
+      @Override
+      public void run() {
+        try {
+          warmUp(server);
+        } catch (Exception ex) {
+          LOG.warn("The warm-up failed", ex);
+        } finally {
+          completed();
+        }
+      }
+    };
+    warmUpThread.setDaemon(true);
+    warmUpThread.start();
+  }
+
+  /**
+   * Sends the batches of requests until a target is reached.
+   */
+  private void warmUp(Server server) throws InterruptedException, IOException {
+    final long start = System.nanoTime();
+    final long deadline = System.currentTimeMillis() + timeout;
+    final ServerConnector connector = warmUpConnector(server);
+    if (connector == null) {
+      LOG.warn("Warm-up skipped: the server doesn't have a warm-up connector");
+      return;
+    }
+    try {
+      warmUp(server, new URL("http", connector.getHost(), connector.getLocalPort(), "/"), start, deadline);
+    } finally {
+      stopConnector(server, connector);
+    }
+  }
+
+  /**
+   * Sends the batches of requests to the baseUrl until a target is reached.
+   */
+  private void warmUp(Server server, URL baseUrl, long start, long deadline) throws InterruptedException {
+    LOG.info("Warming up {} with {} sample requests", baseUrl, requests.size());
+    final ExecutorService executor =
+      Executors.newFixedThreadPool(concurrency, new ThreadFactoryBuilder().setNameFormat("warm-up-%d")
+                                                  .setDaemon(true).build());
+    try {
+      int sent = 0;
+      long previousLatency = -1L;
+      long latency = -1L;
+      boolean stable = false;
+      while (sent < maxRequests && !stable && System.currentTimeMillis() < deadline && server.isRunning()) {
+        final List<Callable<Long>> batch = new ArrayList<Callable<Long>>();
+        for (int i = 0; i < Math.min(BATCH_SIZE, maxRequests - sent); i++) {
+          batch.add(request(baseUrl, requests.get((sent + i) % requests.size())));
+        }
+        sent += batch.size();
+        previousLatency = latency;
+        latency = percentile90(executor.invokeAll(batch));
+        stable = latencyTolerance > 0d && previousLatency > 0L && latency > 0L
+                 && Math.abs(latency - previousLatency) <= latencyTolerance * previousLatency;
+      }
+      final StartupReport startupReport = server.getBean(StartupReport.class);
+      if (startupReport != null) {
+        startupReport.record("warm-up", start);
+      }
+      LOG.info("Warm-up finished after {} requests, p90 latency {} us, {}", sent,
+               TimeUnit.NANOSECONDS.toMicros(latency), stable ? "stable" : "target not reached");
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  /**
+   * Marks the warm-up as complete and notifies the listeners, outside the lock: they may block, e.g.: publishing the
+   * RUNNING status in Zookeeper.
+   */
+  private void completed() {
+    final List<Runnable> listeners;
+    synchronized (completionListeners) {
+      complete = true;
+      listeners = new ArrayList<Runnable>(completionListeners);
+      completionListeners.clear();
+    }
+    for (Runnable listener : listeners) {
+      listener.run();
+    }
+  }
+
+  /**
+   * Request that returns its latency in nanoseconds, or -1 if it fails.
+   */
+  private static Callable<Long> request(final URL baseUrl, final String[] request) {
+    return new Callable<Long>() {
+      @Override
+      public Long call() {
+        final long start = System.nanoTime();
+        try {
+          final HttpURLConnection connection = (HttpURLConnection) new URL(baseUrl, request[1]).openConnection();
+          connection.setRequestMethod(request[0]);
+          connection.setRequestProperty("User-Agent", USER_AGENT);
+          connection.setConnectTimeout(REQUEST_TIMEOUT);
+          connection.setReadTimeout(REQUEST_TIMEOUT);
+          final InputStream body =
+            connection.getResponseCode() < 400 ? connection.getInputStream() : connection.getErrorStream();
+          if (body != null) {
+            //the body is read to keep the connection alive
+            ByteStreams.copy(body, ByteStreams.nullOutputStream());
+            body.close();
+          }
+          return System.nanoTime() - start;
+        } catch (IOException ex) {
+          LOG.debug("Warm-up request {} failed", request[1], ex);
+          return -1L;
+        }
+      }
+    };
+  }
+
+  /**
+   * 90th percentile of the latencies of the successful requests, -1 if all of them failed.
+   */
+  private static long percentile90(List<Future<Long>> results) throws InterruptedException {
+    final long[] latencies = new long[results.size()];
+    int count = 0;
+    for (Future<Long> result : results) {
+      try {
+        if (result.get() >= 0L) {
+          latencies[count++] = result.get();
+        }
+      } catch (ExecutionException ex) {
+        LOG.debug("Warm-up request failed", ex);
+      }
+    }
+    if (count == 0) {
+      return -1L;
+    }
+    Arrays.sort(latencies, 0, count);
+    return latencies[(int) Math.ceil(count * 0.9d) - 1];
+  }
+
+  /**
+   * True if the request has been received by the warm-up connector: the request limits and the response cache must
+   * let it reach the application.
+   */
+  public static boolean isWarmUpRequest(Request baseRequest) {
+    return HttpConnectorFactory.WARM_UP_CONNECTOR_NAME.equals(baseRequest.getHttpChannel().getConnector().getName());
+  }
+
+  /**
+   * Warm-up connector of the server, null if it doesn't have one.
+   */
+  private static ServerConnector warmUpConnector(Server server) {
+    for (Connector connector : server.getConnectors()) {
+      if (HttpConnectorFactory.WARM_UP_CONNECTOR_NAME.equals(connector.getName())) {
+        return (ServerConnector) connector;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Stops the warm-up connector and removes it from the server, it's only used during the warm-up.
+   */
+  private static void stopConnector(Server server, ServerConnector connector) {
+    try {
+      connector.stop();
+    } catch (Exception ex) {
+      LOG.warn("Unable to stop the warm-up connector", ex);
+    }
+    server.removeConnector(connector);
+  }
+
+  /**
+   * Parses the lines into method and path pairs, only GET and HEAD requests are kept.
+   */
+  private static List<String[]> parseRequests(List<String> lines) {
+    final List<String[]> requests = new ArrayList<String[]>();
+    for (String line : lines) {
+      String request = line.trim();
+      if (request.isEmpty() || request.startsWith("#")) {
+        continue;
+      }
+      //access log line: the request is the first quoted field
+      final int quote = request.indexOf('"');
+      if (quote >= 0 && request.indexOf('"', quote + 1) > quote) {
+        request = request.substring(quote + 1, request.indexOf('"', quote + 1));
+      }
+      final List<String> fields = Splitter.on(' ').omitEmptyStrings().splitToList(request);
+      if (fields.size() == 1 && fields.get(0).startsWith("/")) {
+        requests.add(new String[] {HttpMethod.GET.asString(), fields.get(0)});
+      } else if (fields.size() > 1 && fields.get(1).startsWith("/")
+                 && (HttpMethod.GET.is(fields.get(0)) || HttpMethod.HEAD.is(fields.get(0)))) {
+        requests.add(new String[] {fields.get(0).toUpperCase(Locale.ENGLISH), fields.get(1)});
+      }
+    }
+    return requests;
+  }
+}
@@ -0,0 +1,218 @@
+package org.gbif.jetty.buffer;
+
+import org.gbif.jetty.metrics.MetricsSource;
+import org.gbif.jetty.metrics.MetricsWriter;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.google.common.base.Preconditions;
+import org.eclipse.jetty.io.ByteBufferPool;
+import org.eclipse.jetty.util.BufferUtil;
+
+/**
+ * ByteBufferPool shared by the connectors that bounds the memory it retains and reports its usage.
+ * Buffer capacities are rounded up to a multiple of the bucketSize and released buffers are kept in a queue per
+ * capacity. A released buffer is discarded, and left to the garbage collector, if it's larger than the maxBufferSize
+ * or if retaining it would exceed the maximum memory of its type, so the pool never holds more than maxHeapMemory
+ * bytes of heap buffers and maxDirectMemory bytes of direct buffers.
+ * The bufferType decides whether the direct buffers requested are direct or heap ones; heap buffers are always heap,
+ * since their callers may use their backing array, e.g.: the gzip compression.
+ * The default values of this instance are:
+ * - bufferType: REQUESTED.
+ * - bucketSize: DEFAULT_BUCKET_SIZE bytes.
+ * - maxBufferSize: DEFAULT_MAX_BUFFER_SIZE bytes.
+ * - maxHeapMemory and maxDirectMemory: DEFAULT_MAX_MEMORY bytes each.
+ */
+public class BoundedByteBufferPool implements ByteBufferPool, MetricsSource {
+
+  /**
+   * Type of the buffers handed out by the pool.
+   */
+  public enum BufferType {
+    /**
+     * The type requested by Jetty.
+     */
+    REQUESTED,
+    /**
+     * Always heap buffers, nothing is allocated outside the heap.
+     */
+    HEAP
+  }
+
+  public static final int DEFAULT_BUCKET_SIZE = 4096;
+  public static final int DEFAULT_MAX_BUFFER_SIZE = 256 * 1024;
+  public static final long DEFAULT_MAX_MEMORY = 64L * 1024 * 1024;
+
+  private final BufferType bufferType;
+  private final int bucketSize;
+  private final int maxBufferSize;
+  private final Buckets heapBuckets;
+  private final Buckets directBuckets;
+
+  /**
+   * Creates a pool with the default settings.
+   */
+  public BoundedByteBufferPool() {
+    this(BufferType.REQUESTED, DEFAULT_BUCKET_SIZE, DEFAULT_MAX_BUFFER_SIZE, DEFAULT_MAX_MEMORY, DEFAULT_MAX_MEMORY);
+  }
+
+  /**
+   * Full constructor.
+   */
+  public BoundedByteBufferPool(
+    BufferType bufferType, int bucketSize, int maxBufferSize, long maxHeapMemory, long maxDirectMemory
+  ) {
+    Preconditions.checkArgument(bucketSize > 0, "The bucket size must be greater than 0");
+    this.bufferType = Preconditions.checkNotNull(bufferType);
+    this.bucketSize = bucketSize;
+    this.maxBufferSize = maxBufferSize;
+    heapBuckets = new Buckets(false, maxHeapMemory);
+    directBuckets = new Buckets(true, maxDirectMemory);
+  }
+
+  public BufferType getBufferType() {
+    return bufferType;
+  }
+
+  public int getBucketSize() {
+    return bucketSize;
+  }
+
+  public int getMaxBufferSize() {
+    return maxBufferSize;
+  }
+
+  @Override
+  public ByteBuffer acquire(int size, boolean direct) {
+    return (direct && bufferType == BufferType.REQUESTED ? directBuckets : heapBuckets).acquire(capacityFor(size));
+  }
+
+  @Override
+  public void release(ByteBuffer buffer) {
+    if (buffer != null) {
+      (buffer.isDirect() ? directBuckets : heapBuckets).release(buffer);
+    }
+  }
+
+  /**
+   * Capacity of the buffers that can hold size bytes: the next multiple of the bucket size.
+   */
+  private int capacityFor(int size) {
+    final int buckets = size / bucketSize + (size % bucketSize > 0 ? 1 : 0);
+    return Math.max(1, buckets) * bucketSize;
+  }
+
+  @Override
+  public void report(MetricsWriter writer) throws IOException {
+    for (Buckets buckets : new Buckets[] {heapBuckets, directBuckets}) {
+      writer.counter("jetty_buffer_pool_acquires_total", "Number of buffers acquired by result",
+                     buckets.hits.sum(), "type", buckets.type(), "result", "hit");
+      writer.counter("jetty_buffer_pool_acquires_total", "Number of buffers acquired by result",
+                     buckets.misses.sum(), "type", buckets.type(), "result", "miss");
+    }
+    for (Buckets buckets : new Buckets[] {heapBuckets, directBuckets}) {
+      writer.gauge("jetty_buffer_pool_hit_ratio", "Fraction of the buffers acquired that were reused",
+                   buckets.hitRatio(), "type", buckets.type());
+    }
+    for (Buckets buckets : new Buckets[] {heapBuckets, directBuckets}) {
+      writer.counter("jetty_buffer_pool_allocated_bytes_total", "Bytes of the buffers allocated by the pool",
+                     buckets.allocatedBytes.sum(), "type", buckets.type());
+    }
+    for (Buckets buckets : new Buckets[] {heapBuckets, directBuckets}) {
+      writer.counter("jetty_buffer_pool_discarded_total", "Number of released buffers that weren't retained",
+                     buckets.discarded.sum(), "type", buckets.type());
+    }
+    for (Buckets buckets : new Buckets[] {heapBuckets, directBuckets}) {
+      writer.gauge("jetty_buffer_pool_retained_bytes", "Bytes of the buffers retained by the pool",
+                   buckets.retainedBytes.get(), "type", buckets.type());
+    }
+  }
+
+  /**
+   * Queues of released buffers of one type by capacity, with the memory they retain and their usage counters.
+   */
+  private class Buckets {
+
+    private final boolean direct;
+    private final long maxMemory;
+    private final ConcurrentMap<Integer, Queue<ByteBuffer>> queues =
+      new ConcurrentHashMap<Integer, Queue<ByteBuffer>>();
+    private final AtomicLong retainedBytes = new AtomicLong();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder allocatedBytes = new LongAdder();
+    private final LongAdder discarded = new LongAdder();
+
+    private Buckets(boolean direct, long maxMemory) {
+      this.direct = direct;
+      this.maxMemory = maxMemory;
+    }
+
+    /**
+     * Takes a retained buffer of the capacity, or allocates a new one, in flush mode and empty.
+     */
+    private ByteBuffer acquire(int capacity) {
+      final Queue<ByteBuffer> queue = queues.get(capacity);
+      final ByteBuffer buffer = queue == null ? null : queue.poll();
+      if (buffer != null) {
+        retainedBytes.addAndGet(-capacity);
+        hits.increment();
+        return buffer;
+      }
+      misses.increment();
+      allocatedBytes.add(capacity);
+      return direct ? BufferUtil.allocateDirect(capacity) : BufferUtil.allocate(capacity);
+    }
+
+    /**
+     * Retains the buffer if it has a pooled capacity and the maximum memory isn't exceeded.
+     */
+    private void release(ByteBuffer buffer) {
+      final int capacity = buffer.capacity();
+      if (capacity > maxBufferSize || capacity % bucketSize != 0 || !reserve(capacity)) {
+        discarded.increment();
+        return;
+      }
+      BufferUtil.clear(buffer);
+      Queue<ByteBuffer> queue = queues.get(capacity);
+      if (queue == null) {
+        final Queue<ByteBuffer> newQueue = new ConcurrentLinkedQueue<ByteBuffer>();
+        queue = queues.putIfAbsent(capacity, newQueue);
+        if (queue == null) {
+          queue = newQueue;
+        }
+      }
+      queue.offer(buffer);
+    }
+
+    /**
+     * Adds the capacity to the retained bytes, false if it would exceed the maximum memory.
+     */
+    private boolean reserve(int capacity) {
+      long retained;
+      do {
+        retained = retainedBytes.get();
+        if (retained + capacity > maxMemory) {
+          return false;
+        }
+      } while (!retainedBytes.compareAndSet(retained, retained + capacity));
+      return true;
+    }
+
+    private double hitRatio() {
+      final long acquired = hits.sum() + misses.sum();
+      return acquired > 0 ? (double) hits.sum() / acquired : 0d;
+    }
+
+    private String type() {
+      return direct ? "direct" : "heap";
+    }
+  }
+}
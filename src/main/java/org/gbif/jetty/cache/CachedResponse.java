@@ -0,0 +1,80 @@
+package org.gbif.jetty.cache;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+
+import org.eclipse.jetty.http.HttpField;
+
+/**
+ * Response stored by the ResponseCacheHandler: status, end to end headers and the body as it was sent to the client,
+ * compressed if the GzipHandler compressed it.
+ */
+class CachedResponse {
+
+  //Approximate memory used by an entry besides its body and headers
+  private static final int ENTRY_OVERHEAD = 128;
+
+  private final int status;
+  private final List<HttpField> headers;
+  private final byte[] body;
+  private final String etag;
+  private final long created;
+  private final long expires;
+
+  CachedResponse(int status, List<HttpField> headers, byte[] body, String etag, long created, long expires) {
+    this.status = status;
+    this.headers = headers;
+    this.body = body;
+    this.etag = etag;
+    this.created = created;
+    this.expires = expires;
+  }
+
+  int getStatus() {
+    return status;
+  }
+
+  List<HttpField> getHeaders() {
+    return headers;
+  }
+
+  /**
+   * Read-only view of the body, each call returns an independent buffer.
+   */
+  ByteBuffer getBody() {
+    return ByteBuffer.wrap(body).asReadOnlyBuffer();
+  }
+
+  int getContentLength() {
+    return body.length;
+  }
+
+  String getEtag() {
+    return etag;
+  }
+
+  /**
+   * Time in milliseconds the response was stored.
+   */
+  long getCreated() {
+    return created;
+  }
+
+  /**
+   * True if the response can't be served at the time now, in milliseconds.
+   */
+  boolean isExpired(long now) {
+    return now >= expires;
+  }
+
+  /**
+   * Approximate size in bytes of the entry, used to bound the cache size.
+   */
+  int weight() {
+    int weight = ENTRY_OVERHEAD + body.length;
+    for (HttpField header : headers) {
+      weight += header.getName().length() + header.getValue().length();
+    }
+    return weight;
+  }
+}
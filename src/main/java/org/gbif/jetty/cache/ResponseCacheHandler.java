@@ -0,0 +1,422 @@
+package org.gbif.jetty.cache;
+
+import org.gbif.jetty.WarmUp;
+import org.gbif.jetty.metrics.MetricsSource;
+import org.gbif.jetty.metrics.MetricsWriter;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import javax.servlet.DispatcherType;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import com.google.common.base.Preconditions;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalCause;
+import com.google.common.cache.RemovalListener;
+import com.google.common.cache.RemovalNotification;
+import com.google.common.cache.Weigher;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.hash.Hashing;
+import org.eclipse.jetty.http.HttpField;
+import org.eclipse.jetty.http.HttpFields;
+import org.eclipse.jetty.http.HttpHeader;
+import org.eclipse.jetty.http.HttpMethod;
+import org.eclipse.jetty.http.HttpStatus;
+import org.eclipse.jetty.http.pathmap.MappedResource;
+import org.eclipse.jetty.http.pathmap.PathMappings;
+import org.eclipse.jetty.http.pathmap.ServletPathSpec;
+import org.eclipse.jetty.server.HttpOutput;
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.Response;
+import org.eclipse.jetty.server.handler.HandlerWrapper;
+import org.eclipse.jetty.util.Callback;
+
+/**
+ * In-process cache of the GET responses of the application, it wraps the application context.
+ * Only the paths that match a rule are cached, rules have the format pathSpec=seconds, e.g. "/species/*=300", using
+ * the servlet path spec syntax: the most specific match decides the time to live and 0 excludes a path.
+ * A response is stored if it's a 200 response to a GET request without an Authorization header, it doesn't set
+ * cookies, its Cache-Control allows shared caches, it only varies by the key headers and its body isn't larger than
+ * maxEntrySize. A Cache-Control max-age shorter than the rule time to live takes precedence.
+ * Entries are keyed by the URI and the Accept, Accept-Encoding (gzip or not), Accept-Language and Origin headers and
+ * evicted by Guava, least recently used first, once they take more than maxSize bytes.
+ * The response is captured while it's sent to the client, as it leaves the GzipHandler, so hits are served without
+ * executing nor compressing anything. Hits have an ETag, the one set by the application or a hash of the body, and
+ * requests whose If-None-Match matches it get a NOT_MODIFIED response. A request with Cache-Control: no-cache is
+ * always handled by the application.
+ * The default values of this instance are:
+ * - rules: none, nothing is cached.
+ * - maxSize: DEFAULT_MAX_SIZE bytes.
+ * - maxEntrySize: DEFAULT_MAX_ENTRY_SIZE bytes.
+ */
+public class ResponseCacheHandler extends HandlerWrapper implements MetricsSource {
+
+  public static final long DEFAULT_MAX_SIZE = 64L * 1024 * 1024;
+  public static final int DEFAULT_MAX_ENTRY_SIZE = 1024 * 1024;
+
+  private static final String CACHE_STATUS_HEADER = "X-Cache";
+
+  //Request headers that select the response representation
+  private static final String[] KEY_HEADERS = {HttpHeader.ACCEPT.asString(), HttpHeader.ACCEPT_ENCODING.asString(),
+    HttpHeader.ACCEPT_LANGUAGE.asString(), "Origin"};
+  private static final Set<String> VARY_HEADERS = ImmutableSet.of("accept", "accept-encoding", "accept-language",
+                                                                  "origin");
+
+  //Headers that aren't stored: they describe the connection or the original exchange
+  private static final Set<HttpHeader> EXCLUDED_HEADERS =
+    ImmutableSet.of(HttpHeader.DATE, HttpHeader.CONTENT_LENGTH, HttpHeader.TRANSFER_ENCODING, HttpHeader.CONNECTION,
+                    HttpHeader.KEEP_ALIVE, HttpHeader.AGE, HttpHeader.SET_COOKIE, HttpHeader.ETAG);
+
+  private List<String> rules;
+  private long maxSize = DEFAULT_MAX_SIZE;
+  private int maxEntrySize = DEFAULT_MAX_ENTRY_SIZE;
+
+  private final LongAdder hits = new LongAdder();
+  private final LongAdder misses = new LongAdder();
+  private final LongAdder notModified = new LongAdder();
+  private final LongAdder stores = new LongAdder();
+  private final LongAdder evictions = new LongAdder();
+  private final AtomicLong bytes = new AtomicLong();
+
+  //Time to live in milliseconds by path
+  private PathMappings<Long> timesToLive;
+  private Cache<String, CachedResponse> cache;
+
+  public List<String> getRules() {
+    return rules;
+  }
+
+  public void setRules(List<String> rules) {
+    this.rules = rules;
+  }
+
+  public long getMaxSize() {
+    return maxSize;
+  }
+
+  public void setMaxSize(long maxSize) {
+    this.maxSize = maxSize;
+  }
+
+  public int getMaxEntrySize() {
+    return maxEntrySize;
+  }
+
+  public void setMaxEntrySize(int maxEntrySize) {
+    this.maxEntrySize = maxEntrySize;
+  }
+
+  /**
+   * True if there are caching rules.
+   */
+  public boolean isEnabled() {
+    return rules != null && !rules.isEmpty();
+  }
+
+  @Override
+  protected void doStart() throws Exception {
+    timesToLive = new PathMappings<Long>();
+    long maxTimeToLive = 1L;
+    if (rules != null) {
+      for (String rule : rules) {
+        final int separator = rule.lastIndexOf('=');
+        Preconditions.checkArgument(separator > 0, "Response cache rules must have the format pathSpec=seconds: %s",
+                                    rule);
+        final long timeToLive = TimeUnit.SECONDS.toMillis(Long.parseLong(rule.substring(separator + 1).trim()));
+        timesToLive.put(new ServletPathSpec(rule.substring(0, separator).trim()), timeToLive);
+        maxTimeToLive = Math.max(maxTimeToLive, timeToLive);
+      }
+    }
+    cache = CacheBuilder.newBuilder()
+      .maximumWeight(maxSize)
+      .weigher(new Weigher<String, CachedResponse>() {
+        @Override
+        public int weigh(String key, CachedResponse value) {
+          return key.length() + value.weight();
+        }
+      })
+      .expireAfterWrite(maxTimeToLive, TimeUnit.MILLISECONDS)
+      .removalListener(new RemovalListener<String, CachedResponse>() {
+        @Override
+        public void onRemoval(RemovalNotification<String, CachedResponse> notification) {
+          bytes.addAndGet(-notification.getKey().length() - notification.getValue().weight());
+          if (notification.getCause() == RemovalCause.SIZE) {
+            evictions.increment();
+          }
+        }
+      })
+      .build();
+    super.doStart();
+  }
+
+  @Override
+  protected void doStop() throws Exception {
+    super.doStop();
+    cache.invalidateAll();
+  }
+
+  @Override
+  public void handle(
+    String target, Request baseRequest, HttpServletRequest request, HttpServletResponse response
+  ) throws IOException, ServletException {
+    final boolean get = HttpMethod.GET.is(request.getMethod());
+    //warm-up requests must reach the application
+    if ((!get && !HttpMethod.HEAD.is(request.getMethod())) || baseRequest.getDispatcherType() != DispatcherType.REQUEST
+        || request.getHeader(HttpHeader.AUTHORIZATION.asString()) != null || WarmUp.isWarmUpRequest(baseRequest)) {
+      super.handle(target, baseRequest, request, response);
+      return;
+    }
+    final long timeToLive = timeToLive(target);
+    if (timeToLive <= 0L) {
+      super.handle(target, baseRequest, request, response);
+      return;
+    }
+    final String key = cacheKey(target, request);
+    if (!hasNoCache(request.getHeader(HttpHeader.CACHE_CONTROL.asString()))) {
+      final CachedResponse cachedResponse = cache.getIfPresent(key);
+      if (cachedResponse != null) {
+        if (!cachedResponse.isExpired(System.currentTimeMillis())) {
+          hits.increment();
+          serve(cachedResponse, get, baseRequest, request, response);
+          return;
+        }
+        cache.invalidate(key);
+      }
+    }
+    misses.increment();
+    response.setHeader(CACHE_STATUS_HEADER, "MISS");
+    if (get) {
+      final HttpOutput httpOutput = baseRequest.getResponse().getHttpOutput();
+      httpOutput.setInterceptor(new CachingInterceptor(httpOutput.getInterceptor(), baseRequest.getResponse(), key,
+                                                       timeToLive));
+    }
+    super.handle(target, baseRequest, request, response);
+  }
+
+  /**
+   * Sends a cached response, or NOT_MODIFIED if the If-None-Match header matches its ETag.
+   */
+  private void serve(
+    CachedResponse cachedResponse, boolean get, Request baseRequest, HttpServletRequest request,
+    HttpServletResponse response
+  ) throws IOException {
+    baseRequest.setHandled(true);
+    final HttpFields fields = baseRequest.getResponse().getHttpFields();
+    for (HttpField header : cachedResponse.getHeaders()) {
+      fields.add(header);
+    }
+    fields.put(HttpHeader.ETAG, cachedResponse.getEtag());
+    fields.put(HttpHeader.AGE, Long.toString((System.currentTimeMillis() - cachedResponse.getCreated()) / 1000L));
+    fields.put(CACHE_STATUS_HEADER, "HIT");
+    if (etagMatches(request.getHeader(HttpHeader.IF_NONE_MATCH.asString()), cachedResponse.getEtag())) {
+      response.setStatus(HttpStatus.NOT_MODIFIED_304);
+      notModified.increment();
+      return;
+    }
+    response.setStatus(cachedResponse.getStatus());
+    response.setContentLength(cachedResponse.getContentLength());
+    if (get) {
+      baseRequest.getResponse().getHttpOutput().sendContent(cachedResponse.getBody());
+    }
+  }
+
+  /**
+   * Time to live in milliseconds of the responses of a path, 0 if they aren't cached.
+   */
+  private long timeToLive(String path) {
+    final MappedResource<Long> rule = timesToLive.getMatch(path);
+    return rule == null ? 0L : rule.getResource();
+  }
+
+  /**
+   * Key of the responses of the request: URI and representation headers.
+   */
+  private static String cacheKey(String target, HttpServletRequest request) {
+    final StringBuilder key = new StringBuilder(target);
+    if (request.getQueryString() != null) {
+      key.append('?').append(request.getQueryString());
+    }
+    for (String header : KEY_HEADERS) {
+      key.append('\n');
+      final String value = request.getHeader(header);
+      if (value != null) {
+        //the GzipHandler only cares whether gzip is accepted
+        if (HttpHeader.ACCEPT_ENCODING.is(header)) {
+          key.append(value.contains("gzip") ? "gzip" : "");
+        } else {
+          key.append(value);
+        }
+      }
+    }
+    return key.toString();
+  }
+
+  /**
+   * True if the Cache-Control value forbids serving a stored response.
+   */
+  private static boolean hasNoCache(String cacheControl) {
+    return cacheControl != null && cacheControl.toLowerCase(Locale.ENGLISH).contains("no-cache");
+  }
+
+  /**
+   * True if the If-None-Match value matches the ETag, weak comparison.
+   */
+  private static boolean etagMatches(String ifNoneMatch, String etag) {
+    if (ifNoneMatch == null) {
+      return false;
+    }
+    for (String candidate : ifNoneMatch.split(",")) {
+      final String value = candidate.trim();
+      if ("*".equals(value) || etag.equals(value.startsWith("W/") ? value.substring(2) : value)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Time to live in milliseconds allowed by the response Cache-Control, the rule value if it doesn't restrict it and
+   * 0 if the response can't be stored.
+   */
+  private static long allowedTimeToLive(String cacheControl, long timeToLive) {
+    if (cacheControl == null) {
+      return timeToLive;
+    }
+    long allowed = timeToLive;
+    for (String directive : cacheControl.toLowerCase(Locale.ENGLISH).split(",")) {
+      final String value = directive.trim();
+      if (value.equals("no-store") || value.equals("private") || value.equals("no-cache")) {
+        return 0L;
+      }
+      if (value.startsWith("max-age=") || value.startsWith("s-maxage=")) {
+        try {
+          final long maxAge = Long.parseLong(value.substring(value.indexOf('=') + 1));
+          allowed = Math.min(allowed, TimeUnit.SECONDS.toMillis(maxAge));
+        } catch (NumberFormatException ex) {
+          return 0L;
+        }
+      }
+    }
+    return allowed;
+  }
+
+  /**
+   * True if the response only varies by the headers of the cache key.
+   */
+  private static boolean variesByKeyHeaders(HttpFields fields) {
+    for (String vary : fields.getValuesList(HttpHeader.VARY.asString())) {
+      for (String header : vary.split(",")) {
+        if (!VARY_HEADERS.contains(header.trim().toLowerCase(Locale.ENGLISH))) {
+          return false;
+        }
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Stores the response if it can be cached.
+   */
+  private void store(String key, Response baseResponse, byte[] body, long timeToLive) {
+    final HttpFields fields = baseResponse.getHttpFields();
+    if (baseResponse.getStatus() != HttpStatus.OK_200 || fields.containsKey(HttpHeader.SET_COOKIE.asString())
+        || !variesByKeyHeaders(fields)) {
+      return;
+    }
+    final long allowedTimeToLive = allowedTimeToLive(fields.get(HttpHeader.CACHE_CONTROL), timeToLive);
+    if (allowedTimeToLive <= 0L) {
+      return;
+    }
+    final List<HttpField> headers = new ArrayList<HttpField>(fields.size());
+    for (HttpField field : fields) {
+      if ((field.getHeader() == null || !EXCLUDED_HEADERS.contains(field.getHeader()))
+          && !CACHE_STATUS_HEADER.equalsIgnoreCase(field.getName())) {
+        headers.add(field);
+      }
+    }
+    final String etag = fields.get(HttpHeader.ETAG) != null ? fields.get(HttpHeader.ETAG)
+      : '"' + Hashing.murmur3_128().hashBytes(body).toString() + '"';
+    final long now = System.currentTimeMillis();
+    final CachedResponse cachedResponse =
+      new CachedResponse(HttpStatus.OK_200, headers, body, etag, now, now + allowedTimeToLive);
+    bytes.addAndGet(key.length() + cachedResponse.weight());
+    cache.put(key, cachedResponse);
+    stores.increment();
+  }
+
+  @Override
+  public void report(MetricsWriter writer) throws IOException {
+    writer.counter("jetty_response_cache_requests_total", "Number of cacheable requests by result", hits.sum(),
+                   "result", "hit");
+    writer.counter("jetty_response_cache_requests_total", "Number of cacheable requests by result", misses.sum(),
+                   "result", "miss");
+    writer.counter("jetty_response_cache_not_modified_total", "Number of hits answered with NOT_MODIFIED",
+                   notModified.sum());
+    writer.counter("jetty_response_cache_stores_total", "Number of responses stored", stores.sum());
+    writer.counter("jetty_response_cache_evictions_total", "Number of responses evicted by the size limit",
+                   evictions.sum());
+    writer.gauge("jetty_response_cache_entries", "Number of cached responses", cache == null ? 0 : cache.size());
+    writer.gauge("jetty_response_cache_bytes", "Approximate size of the cached responses", bytes.get());
+  }
+
+  /**
+   * Output interceptor that copies the response body, as it's sent to the client, and stores the response once it's
+   * complete. The copy is abandoned if it exceeds the maxEntrySize.
+   */
+  private class CachingInterceptor implements HttpOutput.Interceptor {
+
+    private final HttpOutput.Interceptor next;
+    private final Response baseResponse;
+    private final String key;
+    private final long timeToLive;
+    private ByteArrayOutputStream body = new ByteArrayOutputStream();
+
+    private CachingInterceptor(HttpOutput.Interceptor next, Response baseResponse, String key, long timeToLive) {
+      this.next = next;
+      this.baseResponse = baseResponse;
+      this.key = key;
+      this.timeToLive = timeToLive;
+    }
+
+    @Override
+    public void write(ByteBuffer content, boolean complete, Callback callback) {
+      if (body != null) {
+        if (body.size() + content.remaining() > maxEntrySize) {
+          body = null;
+        } else if (content.hasArray()) {
+          body.write(content.array(), content.arrayOffset() + content.position(), content.remaining());
+        } else {
+          final byte[] bytes = new byte[content.remaining()];
+          content.duplicate().get(bytes);
+          body.write(bytes, 0, bytes.length);
+        }
+        if (body != null && complete) {
+          store(key, baseResponse, body.toByteArray(), timeToLive);
+          body = null;
+        }
+      }
+      next.write(content, complete, callback);
+    }
+
+    @Override
+    public HttpOutput.Interceptor getNextInterceptor() {
+      return next;
+    }
+
+    @Override
+    public boolean isOptimizedForDirectBuffers() {
+      return next.isOptimizedForDirectBuffers();
+    }
+  }
+}
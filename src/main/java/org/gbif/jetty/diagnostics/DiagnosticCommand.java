@@ -0,0 +1,57 @@
+package org.gbif.jetty.diagnostics;
+
+import java.lang.management.ManagementFactory;
+import javax.management.JMException;
+import javax.management.MBeanException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Executes diagnostic commands of the JVM, the same ones run by 'jcmd', through the DiagnosticCommand MBean.
+ * Java Flight Recorder commands need a JVM that includes it: OpenJDK 8u262 or later, or Oracle JDK 8 started with
+ * -XX:+UnlockCommercialFeatures.
+ */
+class DiagnosticCommand {
+
+  private static final String MBEAN_NAME = "com.sun.management:type=DiagnosticCommand";
+  private static final String[] SIGNATURE = {String[].class.getName()};
+
+  private final MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+  private final ObjectName objectName;
+
+  DiagnosticCommand() {
+    try {
+      objectName = new ObjectName(MBEAN_NAME);
+    } catch (JMException ex) {
+      throw new IllegalStateException("Invalid DiagnosticCommand MBean name", ex);
+    }
+  }
+
+  /**
+   * Executes the command operation, e.g.: threadPrint for Thread.print, with the arguments in "name=value" form and
+   * returns its output.
+   * The arguments are joined by spaces into a single command line, so they must not contain spaces.
+   */
+  String execute(String operation, String... arguments) throws DiagnosticCommandException {
+    try {
+      return (String) mBeanServer.invoke(objectName, operation, new Object[] {arguments}, SIGNATURE);
+    } catch (MBeanException ex) {
+      //errors of the command itself, e.g.: an unknown recording
+      throw new DiagnosticCommandException(ex.getCause() == null ? ex.getMessage() : ex.getCause().getMessage(), ex);
+    } catch (JMException ex) {
+      throw new DiagnosticCommandException("The diagnostic command " + operation + " is not available", ex);
+    }
+  }
+
+  /**
+   * Failure of a diagnostic command, its message explains the reason.
+   */
+  static class DiagnosticCommandException extends Exception {
+
+    private static final long serialVersionUID = 1L;
+
+    DiagnosticCommandException(String message, Throwable cause) {
+      super(message, cause);
+    }
+  }
+}
@@ -0,0 +1,330 @@
+package org.gbif.jetty.diagnostics;
+
+import org.gbif.jetty.StopHandler;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import com.google.common.base.Preconditions;
+import org.eclipse.jetty.http.HttpStatus;
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.handler.HandlerWrapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Admin handler of on-demand diagnostics, all of them require the stop secret as the "secret" parameter:
+ * - /diagnostics/threads: thread dump, with the owned locks.
+ * - /diagnostics/histogram: class histogram of the heap, it triggers a full GC.
+ * - /diagnostics/jfr: Flight Recorder recordings of the JVM.
+ * - /diagnostics/jfr/start: starts an on-demand recording, with the "settings" profile, default or profile, and an
+ *   optional "duration", e.g.: 60s or 5m; only one on-demand recording runs at a time.
+ * - /diagnostics/jfr/stop: stops the on-demand recording.
+ * - /diagnostics/jfr/recording: downloads the last on-demand recording once it has finished.
+ * - /diagnostics/jfr/dump: downloads the data of a running recording, the "name" parameter selects the on-demand
+ *   or the continuous one (default).
+ * The continuous recording runs while the handler is started, with the low overhead default settings, keeping the last
+ * continuousMaxAge milliseconds or continuousMaxSize bytes of data so it can be dumped after an incident.
+ * Recordings are written to the recordingDirectory.
+ * The default values of this instance are:
+ * - continuousRecording: false.
+ * - continuousMaxAge: 1 hour.
+ * - continuousMaxSize: 100MB.
+ */
+public class DiagnosticsHandler extends HandlerWrapper {
+
+  private static final Logger LOG = LoggerFactory.getLogger(DiagnosticsHandler.class);
+
+  public static final String DIAGNOSTICS_CONTEXT = "/diagnostics";
+
+  public static final String ON_DEMAND_RECORDING = "on-demand";
+  public static final String CONTINUOUS_RECORDING = "continuous";
+
+  public static final long DEFAULT_CONTINUOUS_MAX_AGE = TimeUnit.HOURS.toMillis(1L);
+  public static final long DEFAULT_CONTINUOUS_MAX_SIZE = 100L * 1024L * 1024L;
+
+  private static final String THREADS_TARGET = DIAGNOSTICS_CONTEXT + "/threads";
+  private static final String HISTOGRAM_TARGET = DIAGNOSTICS_CONTEXT + "/histogram";
+  private static final String JFR_TARGET = DIAGNOSTICS_CONTEXT + "/jfr";
+  private static final String JFR_START_TARGET = JFR_TARGET + "/start";
+  private static final String JFR_STOP_TARGET = JFR_TARGET + "/stop";
+  private static final String JFR_RECORDING_TARGET = JFR_TARGET + "/recording";
+  private static final String JFR_DUMP_TARGET = JFR_TARGET + "/dump";
+
+  //The arguments of the diagnostic commands are joined by spaces, the parameters can't contain spaces nor '='
+  private static final Pattern SETTINGS_PATTERN = Pattern.compile("[\\w./-]+");
+  private static final Pattern DURATION_PATTERN = Pattern.compile("0|\\d+[smhd]");
+
+  private static final String TEXT_CONTENT_TYPE = "text/plain; charset=utf-8";
+  private static final String RECORDING_CONTENT_TYPE = "application/octet-stream";
+  private static final String CONTENT_DISPOSITION = "Content-Disposition";
+
+  private final String secret;
+  private final File recordingDirectory;
+  private boolean continuousRecording;
+  private long continuousMaxAge = DEFAULT_CONTINUOUS_MAX_AGE;
+  private long continuousMaxSize = DEFAULT_CONTINUOUS_MAX_SIZE;
+
+  private final DiagnosticCommand diagnosticCommand = new DiagnosticCommand();
+
+  //File of the last on-demand recording and, while it runs, the System.nanoTime it ends at, Long.MAX_VALUE if it
+  //doesn't have a duration
+  private File onDemandFile;
+  private boolean onDemandRunning;
+  private long onDemandEnd;
+
+  /**
+   * Creates a handler protected by the stop secret that writes the recordings to the recordingDirectory.
+   */
+  public DiagnosticsHandler(String secret, File recordingDirectory) {
+    Preconditions.checkArgument(recordingDirectory.isDirectory(), "%s is not a directory", recordingDirectory);
+    this.secret = secret;
+    this.recordingDirectory = recordingDirectory;
+  }
+
+  public File getRecordingDirectory() {
+    return recordingDirectory;
+  }
+
+  public boolean isContinuousRecording() {
+    return continuousRecording;
+  }
+
+  public void setContinuousRecording(boolean continuousRecording) {
+    this.continuousRecording = continuousRecording;
+  }
+
+  public long getContinuousMaxAge() {
+    return continuousMaxAge;
+  }
+
+  public void setContinuousMaxAge(long continuousMaxAge) {
+    this.continuousMaxAge = continuousMaxAge;
+  }
+
+  public long getContinuousMaxSize() {
+    return continuousMaxSize;
+  }
+
+  public void setContinuousMaxSize(long continuousMaxSize) {
+    this.continuousMaxSize = continuousMaxSize;
+  }
+
+  /**
+   * Starts the continuous recording, if enabled; the server starts even if the JVM can't record.
+   */
+  @Override
+  protected void doStart() throws Exception {
+    if (continuousRecording) {
+      try {
+        diagnosticCommand.execute("jfrStart", "name=" + CONTINUOUS_RECORDING, "settings=default",
+                                  "maxage=" + TimeUnit.MILLISECONDS.toSeconds(continuousMaxAge) + 's',
+                                  "maxsize=" + continuousMaxSize);
+        LOG.info("Continuous flight recording started");
+      } catch (DiagnosticCommand.DiagnosticCommandException ex) {
+        LOG.warn("Unable to start the continuous flight recording: {}", ex.getMessage());
+      }
+    }
+    super.doStart();
+  }
+
+  /**
+   * Discards the continuous recording.
+   */
+  @Override
+  protected void doStop() throws Exception {
+    super.doStop();
+    if (continuousRecording) {
+      try {
+        diagnosticCommand.execute("jfrStop", "name=" + CONTINUOUS_RECORDING);
+      } catch (DiagnosticCommand.DiagnosticCommandException ex) {
+        LOG.debug("Unable to stop the continuous flight recording", ex);
+      }
+    }
+  }
+
+  @Override
+  public void handle(
+    String target, Request baseRequest, HttpServletRequest request, HttpServletResponse response
+  ) throws IOException, ServletException {
+    if (!target.startsWith(DIAGNOSTICS_CONTEXT)) {
+      super.handle(target, baseRequest, request, response);
+      return;
+    }
+    baseRequest.setHandled(true);
+    if (!StopHandler.isValidSecret(request, secret)) {
+      response.sendError(HttpServletResponse.SC_UNAUTHORIZED);
+      return;
+    }
+    try {
+      if (THREADS_TARGET.equals(target)) {
+        writeText(response, HttpStatus.OK_200, diagnosticCommand.execute("threadPrint", "-l"));
+      } else if (HISTOGRAM_TARGET.equals(target)) {
+        writeText(response, HttpStatus.OK_200, diagnosticCommand.execute("gcClassHistogram"));
+      } else if (JFR_TARGET.equals(target)) {
+        writeText(response, HttpStatus.OK_200, diagnosticCommand.execute("jfrCheck"));
+      } else if (JFR_START_TARGET.equals(target)) {
+        startRecording(request, response);
+      } else if (JFR_STOP_TARGET.equals(target)) {
+        stopRecording(response);
+      } else if (JFR_RECORDING_TARGET.equals(target)) {
+        downloadRecording(response);
+      } else if (JFR_DUMP_TARGET.equals(target)) {
+        dumpRecording(request, response);
+      } else {
+        response.sendError(HttpServletResponse.SC_NOT_FOUND);
+      }
+    } catch (DiagnosticCommand.DiagnosticCommandException ex) {
+      LOG.warn("Diagnostic command failed: {}", ex.getMessage());
+      writeText(response, HttpStatus.INTERNAL_SERVER_ERROR_500, ex.getMessage());
+    }
+  }
+
+  /**
+   * Starts the on-demand recording, the previous recording file is deleted.
+   */
+  private synchronized void startRecording(HttpServletRequest request, HttpServletResponse response)
+    throws IOException, DiagnosticCommand.DiagnosticCommandException {
+    if (isOnDemandRunning()) {
+      writeText(response, HttpStatus.CONFLICT_409, "The on-demand recording is already running");
+      return;
+    }
+    final String settings = parameter(request, "settings", "profile");
+    final String duration = parameter(request, "duration", null);
+    if (!SETTINGS_PATTERN.matcher(settings).matches()
+        || duration != null && !DURATION_PATTERN.matcher(duration).matches()) {
+      writeText(response, HttpStatus.BAD_REQUEST_400, "Invalid settings or duration");
+      return;
+    }
+    if (onDemandFile != null) {
+      Files.deleteIfExists(onDemandFile.toPath());
+    }
+    final File file = new File(recordingDirectory,
+                               "recording-" + new SimpleDateFormat("yyyyMMdd-HHmmss", Locale.ENGLISH).format(new Date())
+                               + ".jfr");
+    final List<String> arguments = new ArrayList<String>();
+    arguments.add("name=" + ON_DEMAND_RECORDING);
+    arguments.add("settings=" + settings);
+    arguments.add("filename=" + file.getAbsolutePath());
+    if (duration != null) {
+      arguments.add("duration=" + duration);
+    }
+    final String output = diagnosticCommand.execute("jfrStart", arguments.toArray(new String[arguments.size()]));
+    onDemandFile = file;
+    onDemandRunning = true;
+    //a 0 duration doesn't limit the recording
+    onDemandEnd =
+      duration == null || "0".equals(duration) ? Long.MAX_VALUE : System.nanoTime() + durationNanos(duration);
+    LOG.info("On-demand flight recording started: settings {}, duration {}", settings, duration);
+    writeText(response, HttpStatus.OK_200, output);
+  }
+
+  /**
+   * Stops the on-demand recording, its data is written to the recording file.
+   */
+  private synchronized void stopRecording(HttpServletResponse response)
+    throws IOException, DiagnosticCommand.DiagnosticCommandException {
+    if (!isOnDemandRunning()) {
+      writeText(response, HttpStatus.CONFLICT_409, "The on-demand recording isn't running");
+      return;
+    }
+    final String output = diagnosticCommand.execute("jfrStop", "name=" + ON_DEMAND_RECORDING);
+    onDemandRunning = false;
+    LOG.info("On-demand flight recording stopped");
+    writeText(response, HttpStatus.OK_200, output);
+  }
+
+  /**
+   * Sends the file of the last on-demand recording.
+   */
+  private synchronized void downloadRecording(HttpServletResponse response) throws IOException {
+    if (isOnDemandRunning()) {
+      writeText(response, HttpStatus.CONFLICT_409, "The on-demand recording is still running");
+    } else if (onDemandFile == null || !onDemandFile.isFile()) {
+      response.sendError(HttpServletResponse.SC_NOT_FOUND);
+    } else {
+      writeRecording(response, onDemandFile);
+    }
+  }
+
+  /**
+   * Dumps the data of a running recording to a temporary file, sends it and deletes it.
+   */
+  private void dumpRecording(HttpServletRequest request, HttpServletResponse response)
+    throws IOException, DiagnosticCommand.DiagnosticCommandException {
+    final String name = parameter(request, "name", CONTINUOUS_RECORDING);
+    if (!CONTINUOUS_RECORDING.equals(name) && !ON_DEMAND_RECORDING.equals(name)) {
+      writeText(response, HttpStatus.BAD_REQUEST_400, "Unknown recording " + name);
+      return;
+    }
+    final File file = File.createTempFile(name + '-', ".jfr", recordingDirectory);
+    try {
+      //the dump command doesn't overwrite existing files
+      Files.delete(file.toPath());
+      diagnosticCommand.execute("jfrDump", "name=" + name, "filename=" + file.getAbsolutePath());
+      writeRecording(response, file);
+    } finally {
+      Files.deleteIfExists(file.toPath());
+    }
+  }
+
+  /**
+   * True if the on-demand recording has been started and it hasn't been stopped nor reached its duration.
+   */
+  private boolean isOnDemandRunning() {
+    return onDemandRunning && (onDemandEnd == Long.MAX_VALUE || System.nanoTime() - onDemandEnd < 0L);
+  }
+
+  /**
+   * Sends the recording file as an attachment.
+   */
+  private static void writeRecording(HttpServletResponse response, File file) throws IOException {
+    response.setStatus(HttpStatus.OK_200);
+    response.setContentType(RECORDING_CONTENT_TYPE);
+    response.setContentLengthLong(file.length());
+    response.setHeader(CONTENT_DISPOSITION, "attachment; filename=\"" + file.getName() + '"');
+    Files.copy(file.toPath(), response.getOutputStream());
+  }
+
+  private static void writeText(HttpServletResponse response, int status, String text) throws IOException {
+    response.setStatus(status);
+    response.setContentType(TEXT_CONTENT_TYPE);
+    response.getWriter().write(text);
+  }
+
+  /**
+   * Value of the request parameter, defaultValue if it's missing or empty.
+   */
+  private static String parameter(HttpServletRequest request, String name, String defaultValue) {
+    final String value = request.getParameter(name);
+    return value == null || value.isEmpty() ? defaultValue : value;
+  }
+
+  /**
+   * Nanoseconds of a duration in the Flight Recorder format, e.g.: 30s.
+   */
+  private static long durationNanos(String duration) {
+    final long value = Long.parseLong(duration.substring(0, duration.length() - 1));
+    switch (duration.charAt(duration.length() - 1)) {
+      case 'm':
+        return TimeUnit.MINUTES.toNanos(value);
+      case 'h':
+        return TimeUnit.HOURS.toNanos(value);
+      case 'd':
+        return TimeUnit.DAYS.toNanos(value);
+      default:
+        return TimeUnit.SECONDS.toNanos(value);
+    }
+  }
+}
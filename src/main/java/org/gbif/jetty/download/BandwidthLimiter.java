@@ -0,0 +1,44 @@
+package org.gbif.jetty.download;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Paces the bytes sent to a maximum rate: each write reserves the time its bytes take at that rate, after the
+ * reservations already made, and has to wait until its reserved time arrives.
+ * Reservations are lock-free, so a limiter can be shared by all the downloads.
+ */
+class BandwidthLimiter {
+
+  private static final long NANOS_PER_SECOND = TimeUnit.SECONDS.toNanos(1L);
+
+  //0 disables the limit
+  private final long bytesPerSecond;
+
+  //Time, in System.nanoTime, at which the reserved bytes will have been sent
+  private final AtomicLong reservedUntil = new AtomicLong(System.nanoTime());
+
+  BandwidthLimiter(long bytesPerSecond) {
+    this.bytesPerSecond = bytesPerSecond;
+  }
+
+  /**
+   * Reserves the time to send the bytes and returns the nanoseconds to wait before sending them, 0 if they can be sent
+   * right away.
+   */
+  long reserve(long bytes) {
+    if (bytesPerSecond <= 0L) {
+      return 0L;
+    }
+    final long cost = bytes * NANOS_PER_SECOND / bytesPerSecond;
+    final long now = System.nanoTime();
+    long reserved;
+    long start;
+    do {
+      reserved = reservedUntil.get();
+      //unused time isn't accumulated, so the rate can't be exceeded after an idle period
+      start = Math.max(reserved, now);
+    } while (!reservedUntil.compareAndSet(reserved, start + cost));
+    return start - now;
+  }
+}
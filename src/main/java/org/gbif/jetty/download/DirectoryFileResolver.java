@@ -0,0 +1,48 @@
+package org.gbif.jetty.download;
+
+import java.io.File;
+import java.io.IOException;
+
+import com.google.common.base.Preconditions;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Resolves the paths as files of a directory or its subdirectories.
+ * Paths that point outside the directory, e.g.: through '..' segments or symbolic links, aren't resolved.
+ */
+public class DirectoryFileResolver implements FileResolver {
+
+  private static final Logger LOG = LoggerFactory.getLogger(DirectoryFileResolver.class);
+
+  private final File directory;
+
+  /**
+   * Creates a resolver of the files of the directory.
+   */
+  public DirectoryFileResolver(File directory) {
+    Preconditions.checkArgument(directory.isDirectory(), "%s is not a directory", directory);
+    try {
+      this.directory = directory.getCanonicalFile();
+    } catch (IOException ex) {
+      throw new IllegalArgumentException("Invalid download directory " + directory, ex);
+    }
+  }
+
+  public File getDirectory() {
+    return directory;
+  }
+
+  @Override
+  public File resolve(String path) {
+    try {
+      final File file = new File(directory, path).getCanonicalFile();
+      if (file.toPath().startsWith(directory.toPath()) && file.isFile() && file.canRead()) {
+        return file;
+      }
+    } catch (IOException ex) {
+      LOG.debug("Unable to resolve the path {}", path, ex);
+    }
+    return null;
+  }
+}
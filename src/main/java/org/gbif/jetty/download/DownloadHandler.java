@@ -0,0 +1,333 @@
+package org.gbif.jetty.download;
+
+import org.gbif.jetty.metrics.MetricsSource;
+import org.gbif.jetty.metrics.MetricsWriter;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import javax.servlet.AsyncContext;
+import javax.servlet.ServletException;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import com.google.common.base.Preconditions;
+import org.eclipse.jetty.http.HttpHeader;
+import org.eclipse.jetty.http.HttpMethod;
+import org.eclipse.jetty.http.HttpStatus;
+import org.eclipse.jetty.http.MimeTypes;
+import org.eclipse.jetty.io.ByteBufferPool;
+import org.eclipse.jetty.server.HttpOutput;
+import org.eclipse.jetty.server.InclusiveByteRange;
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.handler.HandlerWrapper;
+import org.eclipse.jetty.util.thread.ScheduledExecutorScheduler;
+import org.eclipse.jetty.util.thread.Scheduler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Serves large files, e.g.: download archives, under a path prefix; other requests are handled by the wrapped handler.
+ * Files are resolved by a FileResolver, by default the files of a directory, and they are read in chunks into a buffer
+ * of the connector pool, direct unless the pool only has heap buffers, so no memory stays mapped after a download.
+ * Downloads are written asynchronously, the worker thread is released once the headers are prepared and the file is
+ * sent as the connection becomes writable, so a slow client doesn't hold a thread.
+ * A single byte range is supported, with If-Range, multiple ranges are answered with the whole file. Responses have a
+ * strong ETag derived from the size and modification time of the file and If-None-Match is answered with
+ * NOT_MODIFIED.
+ * The bandwidth of each download and the total bandwidth of all the downloads can be capped, in bytes per second.
+ * The default values of this instance are:
+ * - rate: 0, unlimited.
+ * - totalRate: 0, unlimited.
+ */
+public class DownloadHandler extends HandlerWrapper implements MetricsSource {
+
+  private static final Logger LOG = LoggerFactory.getLogger(DownloadHandler.class);
+
+  //Bytes written at once, the bandwidth is paced per chunk; the largest buffer pooled by the default Jetty pool
+  private static final int CHUNK_SIZE = 64 * 1024;
+
+  private static final String DEFAULT_CONTENT_TYPE = "application/octet-stream";
+
+  private final String path;
+  private final FileResolver fileResolver;
+  private long rate;
+  private long totalRate;
+
+  private BandwidthLimiter totalLimiter;
+  private final Scheduler scheduler = new ScheduledExecutorScheduler("download-pacer", true);
+
+  private final LongAdder downloads = new LongAdder();
+  private final LongAdder failures = new LongAdder();
+  private final LongAdder bytesSent = new LongAdder();
+  private final AtomicInteger active = new AtomicInteger();
+
+  /**
+   * Creates a handler of the downloads under the path prefix, e.g. /downloads, resolved by the fileResolver.
+   */
+  public DownloadHandler(String path, FileResolver fileResolver) {
+    Preconditions.checkArgument(path.startsWith("/"), "The download path must start with /: %s", path);
+    this.path = path.endsWith("/") ? path : path + '/';
+    this.fileResolver = Preconditions.checkNotNull(fileResolver);
+    addBean(scheduler);
+  }
+
+  public String getPath() {
+    return path;
+  }
+
+  public FileResolver getFileResolver() {
+    return fileResolver;
+  }
+
+  public long getRate() {
+    return rate;
+  }
+
+  public void setRate(long rate) {
+    this.rate = rate;
+  }
+
+  public long getTotalRate() {
+    return totalRate;
+  }
+
+  public void setTotalRate(long totalRate) {
+    this.totalRate = totalRate;
+  }
+
+  @Override
+  protected void doStart() throws Exception {
+    totalLimiter = new BandwidthLimiter(totalRate);
+    super.doStart();
+  }
+
+  @Override
+  public void handle(
+    String target, Request baseRequest, HttpServletRequest request, HttpServletResponse response
+  ) throws IOException, ServletException {
+    if (!target.startsWith(path)) {
+      super.handle(target, baseRequest, request, response);
+      return;
+    }
+    baseRequest.setHandled(true);
+    final boolean get = HttpMethod.GET.is(request.getMethod());
+    if (!get && !HttpMethod.HEAD.is(request.getMethod())) {
+      response.setHeader(HttpHeader.ALLOW.asString(), "GET, HEAD");
+      response.sendError(HttpStatus.METHOD_NOT_ALLOWED_405);
+      return;
+    }
+    final File file = fileResolver.resolve(target.substring(path.length()));
+    if (file == null) {
+      response.sendError(HttpStatus.NOT_FOUND_404);
+      return;
+    }
+    final long length = file.length();
+    final long lastModified = file.lastModified();
+    final String etag = '"' + Long.toHexString(length) + '-' + Long.toHexString(lastModified) + '"';
+    response.setHeader(HttpHeader.ACCEPT_RANGES.asString(), "bytes");
+    response.setHeader(HttpHeader.ETAG.asString(), etag);
+    response.setDateHeader(HttpHeader.LAST_MODIFIED.asString(), lastModified);
+    if (etagMatches(request.getHeader(HttpHeader.IF_NONE_MATCH.asString()), etag)) {
+      response.setStatus(HttpStatus.NOT_MODIFIED_304);
+      return;
+    }
+    long first = 0L;
+    long count = length;
+    if (request.getHeader(HttpHeader.RANGE.asString()) != null && ifRangeMatches(request, etag, lastModified)) {
+      final List<InclusiveByteRange> ranges =
+        InclusiveByteRange.satisfiableRanges(request.getHeaders(HttpHeader.RANGE.asString()), length);
+      if (ranges == null || ranges.isEmpty()) {
+        response.setHeader(HttpHeader.CONTENT_RANGE.asString(), InclusiveByteRange.to416HeaderRangeString(length));
+        response.sendError(HttpStatus.RANGE_NOT_SATISFIABLE_416);
+        return;
+      }
+      if (ranges.size() == 1) {
+        first = ranges.get(0).getFirst(length);
+        count = ranges.get(0).getSize(length);
+        response.setStatus(HttpStatus.PARTIAL_CONTENT_206);
+        response.setHeader(HttpHeader.CONTENT_RANGE.asString(), ranges.get(0).toHeaderRangeString(length));
+      }
+    }
+    final String contentType = MimeTypes.getDefaultMimeByExtension(file.getName());
+    response.setContentType(contentType == null ? DEFAULT_CONTENT_TYPE : contentType);
+    response.setContentLengthLong(count);
+    if (!get || count == 0L) {
+      return;
+    }
+    final FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+    final AsyncContext asyncContext = request.startAsync();
+    asyncContext.setTimeout(0L);
+    downloads.increment();
+    active.incrementAndGet();
+    response.getOutputStream()
+      .setWriteListener(new Transfer(channel, first, count, asyncContext, baseRequest.getResponse().getHttpOutput(),
+                                     baseRequest.getHttpChannel().getByteBufferPool()));
+  }
+
+  /**
+   * True if the If-None-Match value matches the ETag.
+   */
+  private static boolean etagMatches(String ifNoneMatch, String etag) {
+    if (ifNoneMatch == null) {
+      return false;
+    }
+    for (String candidate : ifNoneMatch.split(",")) {
+      final String value = candidate.trim();
+      if ("*".equals(value) || etag.equals(value.startsWith("W/") ? value.substring(2) : value)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * True if the request doesn't have an If-Range header or it matches the current file: the Range can be applied.
+   */
+  private static boolean ifRangeMatches(HttpServletRequest request, String etag, long lastModified) {
+    final String ifRange = request.getHeader(HttpHeader.IF_RANGE.asString());
+    if (ifRange == null) {
+      return true;
+    }
+    if (ifRange.startsWith("\"") || ifRange.startsWith("W/")) {
+      return etag.equals(ifRange);
+    }
+    try {
+      //HTTP dates have a resolution of seconds
+      return lastModified / 1000L == request.getDateHeader(HttpHeader.IF_RANGE.asString()) / 1000L;
+    } catch (IllegalArgumentException ex) {
+      return false;
+    }
+  }
+
+  @Override
+  public void report(MetricsWriter writer) throws IOException {
+    writer.counter("jetty_downloads_total", "Number of downloads started", downloads.sum());
+    writer.counter("jetty_downloads_failed_total", "Number of downloads interrupted by an error", failures.sum());
+    writer.gauge("jetty_downloads_active", "Number of downloads in progress", active.get());
+    writer.counter("jetty_download_bytes_total", "Bytes sent by the downloads", bytesSent.sum());
+  }
+
+  /**
+   * Sends a region of a file as the response output becomes ready, pacing the chunks to the bandwidth limits.
+   * Either the container, once the output is writable, or the scheduler, once a paced chunk can be sent, calls
+   * onWritePossible, never both at the same time.
+   */
+  private class Transfer implements WriteListener {
+
+    private final FileChannel channel;
+    private final AsyncContext asyncContext;
+    private final HttpOutput output;
+    private final ByteBufferPool bufferPool;
+    private final BandwidthLimiter limiter = new BandwidthLimiter(rate);
+    private final AtomicBoolean completed = new AtomicBoolean(false);
+    private long position;
+    private long remaining;
+    //Buffer of the chunks, reused once the previous chunk has been written
+    private ByteBuffer buffer;
+    //true if the time of the next chunk has been reserved already
+    private boolean paced;
+
+    private final Runnable resume = new Runnable() {
+      @Override
+      public void run() {
+        try {
+          onWritePossible();
+        } catch (Throwable ex) {
+          onError(ex);
+        }
+      }
+    };
+
+    private Transfer(FileChannel channel, long position, long count, AsyncContext asyncContext, HttpOutput output,
+                     ByteBufferPool bufferPool) {
+      this.channel = channel;
+      this.position = position;
+      this.remaining = count;
+      this.asyncContext = asyncContext;
+      this.output = output;
+      this.bufferPool = bufferPool;
+    }
+
+    @Override
+    public void onWritePossible() throws IOException {
+      while (output.isReady()) {
+        if (remaining == 0L) {
+          //the output is ready, so the last chunk has been written and the buffer can be reused
+          if (buffer != null) {
+            bufferPool.release(buffer);
+            buffer = null;
+          }
+          complete();
+          return;
+        }
+        final int chunkSize = (int) Math.min(CHUNK_SIZE, remaining);
+        if (!paced) {
+          final long wait = Math.max(limiter.reserve(chunkSize), totalLimiter.reserve(chunkSize));
+          if (wait > 0L) {
+            paced = true;
+            scheduler.schedule(resume, wait, TimeUnit.NANOSECONDS);
+            return;
+          }
+        }
+        paced = false;
+        output.write(nextChunk(chunkSize));
+        bytesSent.add(chunkSize);
+      }
+    }
+
+    @Override
+    public void onError(Throwable ex) {
+      LOG.debug("Download interrupted", ex);
+      if (complete()) {
+        failures.increment();
+      }
+    }
+
+    /**
+     * Reads the next chunk of the file into the buffer, it's only called once the previous chunk has been written.
+     */
+    private ByteBuffer nextChunk(int chunkSize) throws IOException {
+      if (buffer == null) {
+        buffer = bufferPool.acquire(CHUNK_SIZE, true);
+      }
+      buffer.clear();
+      buffer.limit(chunkSize);
+      while (buffer.hasRemaining()) {
+        if (channel.read(buffer, position + buffer.position()) < 0) {
+          throw new IOException("The downloaded file has been truncated");
+        }
+      }
+      buffer.flip();
+      position += chunkSize;
+      remaining -= chunkSize;
+      return buffer;
+    }
+
+    /**
+     * Releases the file and completes the response, only once: returns false if it was already completed.
+     * After an error the buffer isn't returned to the pool, since the failed write may still reference it.
+     */
+    private boolean complete() {
+      if (completed.compareAndSet(false, true)) {
+        active.decrementAndGet();
+        try {
+          channel.close();
+        } catch (IOException ex) {
+          LOG.debug("Unable to close the downloaded file", ex);
+        }
+        asyncContext.complete();
+        return true;
+      }
+      return false;
+    }
+  }
+}
@@ -0,0 +1,15 @@
+package org.gbif.jetty.download;
+
+import java.io.File;
+
+/**
+ * Resolves the files served by the DownloadHandler, e.g.: the archive of a download key.
+ * It's called in a worker thread for each download request, so it can perform blocking I/O.
+ */
+public interface FileResolver {
+
+  /**
+   * File of the path requested, relative to the download path, or null if it doesn't exist or can't be served.
+   */
+  File resolve(String path);
+}
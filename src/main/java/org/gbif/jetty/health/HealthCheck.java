@@ -0,0 +1,49 @@
+package org.gbif.jetty.health;
+
+/**
+ * Check of a component the application depends on, e.g.: a database or Solr connection.
+ * Checks are executed periodically by the HealthCheckRegistry in its own threads, never while a probe is served,
+ * so they can perform blocking I/O. An exception is reported as an unhealthy result.
+ */
+public interface HealthCheck {
+
+  /**
+   * Checks the component.
+   */
+  Result check() throws Exception;
+
+  /**
+   * Outcome of a health check.
+   */
+  class Result {
+
+    private static final Result HEALTHY = new Result(true, null);
+
+    private final boolean healthy;
+    private final String message;
+
+    private Result(boolean healthy, String message) {
+      this.healthy = healthy;
+      this.message = message;
+    }
+
+    public static Result healthy() {
+      return HEALTHY;
+    }
+
+    public static Result unhealthy(String message) {
+      return new Result(false, message);
+    }
+
+    public boolean isHealthy() {
+      return healthy;
+    }
+
+    /**
+     * Describes the problem of an unhealthy result, null if the result is healthy.
+     */
+    public String getMessage() {
+      return message;
+    }
+  }
+}
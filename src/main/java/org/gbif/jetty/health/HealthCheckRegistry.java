@@ -0,0 +1,270 @@
+package org.gbif.jetty.health;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.eclipse.jetty.util.component.AbstractLifeCycle;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Registry of the health checks that decide the liveness and readiness of the application.
+ * While the registry is started all the checks are executed every checkInterval milliseconds in background threads,
+ * a check that doesn't complete in checkTimeout milliseconds is reported as unhealthy and interrupted, and it isn't
+ * executed again until it completes. Readers only get the cached
+ * results, so they never block on the checked components.
+ * A check is unhealthy until its first execution completes.
+ * The ServerFactory registers it as a managed bean of the server and in the application context, as the attribute
+ * HealthCheckRegistry.ATTRIBUTE, so applications can register their checks, e.g. in a ServletContextListener.
+ */
+public class HealthCheckRegistry extends AbstractLifeCycle {
+
+  private static final Logger LOG = LoggerFactory.getLogger(HealthCheckRegistry.class);
+
+  public static final String ATTRIBUTE = HealthCheckRegistry.class.getName();
+
+  public static final long DEFAULT_CHECK_INTERVAL = 10000L;
+  public static final long DEFAULT_CHECK_TIMEOUT = 5000L;
+
+  //Maximum number of checks executed at the same time
+  private static final int CHECK_THREADS = 4;
+
+  private static final HealthCheck.Result NOT_CHECKED = HealthCheck.Result.unhealthy("Not checked yet");
+
+  /**
+   * Probe that a health check contributes to.
+   */
+  public enum Probe {
+    /**
+     * The application must be restarted if the check fails.
+     */
+    LIVENESS,
+
+    /**
+     * The application must not receive traffic while the check fails.
+     */
+    READINESS
+  }
+
+  private final long checkInterval;
+  private final long checkTimeout;
+
+  private final Map<String, Registration> registrations = new ConcurrentHashMap<String, Registration>();
+
+  //Schedules the executions of the checks
+  private ScheduledExecutorService scheduler;
+  //Runs the checks, so a slow check doesn't delay the others; an execution isn't submitted while the previous one
+  //of the same check is in flight, so a hung check holds one thread at most
+  private ExecutorService checkExecutor;
+
+  /**
+   * Creates a registry that executes the checks every checkInterval milliseconds, with a checkTimeout.
+   */
+  public HealthCheckRegistry(long checkInterval, long checkTimeout) {
+    this.checkInterval = checkInterval;
+    this.checkTimeout = checkTimeout;
+  }
+
+  /**
+   * Creates a registry with the default check interval and timeout.
+   */
+  public HealthCheckRegistry() {
+    this(DEFAULT_CHECK_INTERVAL, DEFAULT_CHECK_TIMEOUT);
+  }
+
+  /**
+   * Registers a READINESS check.
+   */
+  public void register(String name, HealthCheck healthCheck) {
+    register(name, healthCheck, Probe.READINESS);
+  }
+
+  /**
+   * Registers a check for a probe, replacing any check with the same name.
+   * If the registry is started the check is executed immediately.
+   */
+  public void register(String name, HealthCheck healthCheck, Probe probe) {
+    final Registration registration = new Registration(name, healthCheck, probe);
+    registrations.put(name, registration);
+    if (isStarted()) {
+      scheduler.execute(registration);
+    }
+  }
+
+  /**
+   * Removes a check.
+   */
+  public void unregister(String name) {
+    registrations.remove(name);
+  }
+
+  /**
+   * True if all the checks of the probe are healthy.
+   */
+  public boolean isHealthy(Probe probe) {
+    for (Registration registration : registrations.values()) {
+      if (registration.probe == probe && !registration.result.isHealthy()) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Last results of the checks of a probe, by name.
+   */
+  public Map<String, HealthCheck.Result> getResults(Probe probe) {
+    final ImmutableMap.Builder<String, HealthCheck.Result> results = ImmutableMap.builder();
+    for (Registration registration : registrations.values()) {
+      if (registration.probe == probe) {
+        results.put(registration.name, registration.result);
+      }
+    }
+    return results.build();
+  }
+
+  @Override
+  protected void doStart() throws Exception {
+    scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+                                                             .setNameFormat("health-checks-scheduler")
+                                                             .setDaemon(true)
+                                                             .build());
+    final ThreadPoolExecutor checkPool =
+      new ThreadPoolExecutor(CHECK_THREADS, CHECK_THREADS, 60L, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+                             new ThreadFactoryBuilder().setNameFormat("health-check-%d").setDaemon(true).build());
+    checkPool.allowCoreThreadTimeOut(true);
+    checkExecutor = checkPool;
+    scheduler.scheduleWithFixedDelay(new Runnable() {
+      @Override
+      public void run() {
+        for (Registration registration : registrations.values()) {
+          registration.run();
+        }
+      }
+    }, 0L, checkInterval, TimeUnit.MILLISECONDS);
+    super.doStart();
+  }
+
+  @Override
+  protected void doStop() throws Exception {
+    scheduler.shutdownNow();
+    checkExecutor.shutdownNow();
+    super.doStop();
+  }
+
+  /**
+   * Health check registered for a probe and its last result.
+   */
+  private class Registration implements Runnable {
+
+    private final String name;
+    private final HealthCheck healthCheck;
+    private final Probe probe;
+    private volatile HealthCheck.Result result = NOT_CHECKED;
+
+    //True from the submission of an execution until it completes
+    private final AtomicBoolean inFlight = new AtomicBoolean(false);
+    //Number of the current execution and the thread that runs it, guarded by this
+    private long execution;
+    private Thread executingThread;
+
+    private Registration(String name, HealthCheck healthCheck, Probe probe) {
+      this.name = name;
+      this.healthCheck = healthCheck;
+      this.probe = probe;
+    }
+
+    /**
+     * Submits an execution of the check to the checkExecutor, unless the previous one is still in flight, and
+     * schedules its timeout; it doesn't wait for the result, so a slow check doesn't delay the others.
+     */
+    @Override
+    public void run() {
+      if (!inFlight.compareAndSet(false, true)) {
+        LOG.debug("Health check {} is still running, skipping this execution", name);
+        return;
+      }
+      final long currentExecution;
+      synchronized (this) {
+        currentExecution = ++execution;
+      }
+      try {
+        checkExecutor.execute(new Runnable() {
+          @Override
+          public void run() {
+            execute();
+          }
+        });
+        scheduler.schedule(new Runnable() {
+          @Override
+          public void run() {
+            timeOut(currentExecution);
+          }
+        }, checkTimeout, TimeUnit.MILLISECONDS);
+      } catch (RejectedExecutionException ex) {
+        //the registry is stopping
+        inFlight.set(false);
+      }
+    }
+
+    /**
+     * Executes the check in the current thread and records its result.
+     */
+    private void execute() {
+      synchronized (this) {
+        executingThread = Thread.currentThread();
+      }
+      HealthCheck.Result newResult;
+      try {
+        newResult = healthCheck.check();
+        if (newResult == null) {
+          newResult = HealthCheck.Result.unhealthy("No result");
+        }
+      } catch (Exception ex) {
+        newResult = HealthCheck.Result.unhealthy(ex.getClass().getSimpleName() + ": " + ex.getMessage());
+      } finally {
+        synchronized (this) {
+          executingThread = null;
+          //clears the interrupt of a timed out execution, so it doesn't affect the next task of the thread
+          Thread.interrupted();
+        }
+        inFlight.set(false);
+      }
+      update(newResult);
+    }
+
+    /**
+     * Reports the execution as unhealthy and interrupts it, if it's still in flight after the checkTimeout.
+     * A check that ignores the interrupt keeps its thread, but it isn't executed again until it completes.
+     */
+    private void timeOut(long timedOutExecution) {
+      synchronized (this) {
+        if (!inFlight.get() || execution != timedOutExecution) {
+          return;
+        }
+        if (executingThread != null) {
+          executingThread.interrupt();
+        }
+      }
+      update(HealthCheck.Result.unhealthy("Timed out after " + checkTimeout + " ms"));
+    }
+
+    private synchronized void update(HealthCheck.Result newResult) {
+      if (result.isHealthy() != newResult.isHealthy()) {
+        LOG.info("Health check {} is {}", name,
+                 newResult.isHealthy() ? "healthy" : "unhealthy: " + newResult.getMessage());
+      }
+      result = newResult;
+    }
+  }
+}
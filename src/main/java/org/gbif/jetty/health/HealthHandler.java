@@ -0,0 +1,100 @@
+package org.gbif.jetty.health;
+
+import org.gbif.jetty.WarmUp;
+import org.gbif.ws.app.GracefulDrain;
+
+import java.io.IOException;
+import java.util.Map;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.codehaus.jackson.JsonEncoding;
+import org.codehaus.jackson.JsonFactory;
+import org.codehaus.jackson.JsonGenerator;
+import org.eclipse.jetty.http.HttpStatus;
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.handler.HandlerWrapper;
+
+/**
+ * Admin handler that serves the liveness probe at "/live" and the readiness probe at "/ready".
+ * - live: OK if all the LIVENESS checks are healthy.
+ * - ready: OK if the server is started and warmed up, it's not being drained and all the READINESS checks are healthy.
+ * Failed probes return SERVICE_UNAVAILABLE. The response describes the results of the checks as JSON.
+ * Only the cached results of the HealthCheckRegistry are read, so probes never wait for the checked components.
+ */
+public class HealthHandler extends HandlerWrapper {
+
+  public static final String LIVE_CONTEXT = "/live";
+  public static final String READY_CONTEXT = "/ready";
+
+  private static final String CONTENT_TYPE = "application/json";
+
+  private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+  private final Server server;
+  private final HealthCheckRegistry registry;
+
+  /**
+   * Creates a handler for the probes of the server, using the checks of the registry.
+   */
+  public HealthHandler(Server server, HealthCheckRegistry registry) {
+    this.server = server;
+    this.registry = registry;
+  }
+
+  /**
+   * True if the server can receive traffic: it's started, warmed up, not draining and its READINESS checks are healthy.
+   * The checks are read from the HealthCheckRegistry bean of the server, if it has one, and the warm-up from its WarmUp
+   * bean.
+   */
+  public static boolean isReady(Server server) {
+    final GracefulDrain gracefulDrain = server.getBean(GracefulDrain.class);
+    final HealthCheckRegistry registry = server.getBean(HealthCheckRegistry.class);
+    final WarmUp warmUp = server.getBean(WarmUp.class);
+    return server.isStarted() && (gracefulDrain == null || !gracefulDrain.isDraining())
+           && (warmUp == null || warmUp.isComplete())
+           && (registry == null || registry.isHealthy(HealthCheckRegistry.Probe.READINESS));
+  }
+
+  @Override
+  public void handle(
+    String target, Request baseRequest, HttpServletRequest request, HttpServletResponse response
+  ) throws IOException, ServletException {
+    if (LIVE_CONTEXT.equals(target)) {
+      baseRequest.setHandled(true);
+      writeProbe(response, registry.isHealthy(HealthCheckRegistry.Probe.LIVENESS), HealthCheckRegistry.Probe.LIVENESS);
+    } else if (READY_CONTEXT.equals(target)) {
+      baseRequest.setHandled(true);
+      writeProbe(response, isReady(server), HealthCheckRegistry.Probe.READINESS);
+    } else {
+      super.handle(target, baseRequest, request, response);
+    }
+  }
+
+  /**
+   * Writes the probe status and the results of its checks: {"healthy": true, "checks": {"name": {"healthy": true}}}.
+   */
+  private void writeProbe(HttpServletResponse response, boolean healthy, HealthCheckRegistry.Probe probe)
+    throws IOException {
+    response.setStatus(healthy ? HttpStatus.OK_200 : HttpStatus.SERVICE_UNAVAILABLE_503);
+    response.setContentType(CONTENT_TYPE);
+    response.setHeader("Cache-Control", "no-cache");
+    final JsonGenerator generator = JSON_FACTORY.createJsonGenerator(response.getOutputStream(), JsonEncoding.UTF8);
+    generator.writeStartObject();
+    generator.writeBooleanField("healthy", healthy);
+    generator.writeObjectFieldStart("checks");
+    for (Map.Entry<String, HealthCheck.Result> result : registry.getResults(probe).entrySet()) {
+      generator.writeObjectFieldStart(result.getKey());
+      generator.writeBooleanField("healthy", result.getValue().isHealthy());
+      if (result.getValue().getMessage() != null) {
+        generator.writeStringField("message", result.getValue().getMessage());
+      }
+      generator.writeEndObject();
+    }
+    generator.writeEndObject();
+    generator.writeEndObject();
+    generator.close();
+  }
+}
@@ -0,0 +1,96 @@
+package org.gbif.jetty.limit;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Concurrency and rate counters of a single client, both lock-free.
+ * The rate is enforced with the generic cell rate algorithm: a single theoretical arrival time, in nanoseconds, is
+ * pushed forward one emission interval per accepted request; a request is rejected if that time is further away than
+ * the burst tolerance.
+ * Every request in progress holds the counters, an idle client can be retired so its counters are never used again,
+ * the requests that find it retired must get new counters.
+ */
+class ClientLimit {
+
+  //Number of requests in progress, RETIRED once the counters have been discarded
+  private static final int RETIRED = -1;
+
+  private final AtomicInteger active = new AtomicInteger();
+  private final AtomicLong theoreticalArrival = new AtomicLong(Long.MIN_VALUE);
+  //System.nanoTime of the last request completed
+  private volatile long lastAccess = System.nanoTime();
+  //Remote address that created the counters of a client key header, null for the counters of an address
+  private final String address;
+
+  ClientLimit(String address) {
+    this.address = address;
+  }
+
+  /**
+   * Remote address that created the counters of a client key header, null if the client is identified by its address.
+   */
+  String getAddress() {
+    return address;
+  }
+
+  /**
+   * Takes a concurrency slot if the client has less than maxActive requests in progress and it isn't retired.
+   */
+  boolean tryAcquire(int maxActive) {
+    while (true) {
+      final int current = active.get();
+      if (current == RETIRED || current >= maxActive) {
+        return false;
+      }
+      if (active.compareAndSet(current, current + 1)) {
+        return true;
+      }
+    }
+  }
+
+  /**
+   * Releases a concurrency slot taken by tryAcquire.
+   */
+  void release() {
+    lastAccess = System.nanoTime();
+    active.decrementAndGet();
+  }
+
+  /**
+   * True if the counters have been retired by tryRetire.
+   */
+  boolean isRetired() {
+    return active.get() == RETIRED;
+  }
+
+  /**
+   * Retires the counters if the client doesn't have requests in progress, its last request completed before idleSince
+   * and its theoretical arrival time has passed at now, both in System.nanoTime, so new counters don't give the client
+   * a burst it hasn't earned; returns true if they have been retired.
+   */
+  boolean tryRetire(long idleSince, long now) {
+    final long arrival = theoreticalArrival.get();
+    return lastAccess - idleSince <= 0L && (arrival == Long.MIN_VALUE || arrival - now <= 0L)
+           && active.compareAndSet(0, RETIRED);
+  }
+
+  /**
+   * Accounts a request at the time now, all the values are in nanoseconds.
+   * Returns 0 if the request is within the rate, otherwise the time the client has to wait and the request isn't
+   * accounted.
+   */
+  long tryReserve(long now, long interval, long tolerance) {
+    while (true) {
+      final long current = theoreticalArrival.get();
+      final long next = (current == Long.MIN_VALUE || current - now < 0 ? now : current) + interval;
+      final long wait = next - now - interval - tolerance;
+      if (wait > 0) {
+        return wait;
+      }
+      if (theoreticalArrival.compareAndSet(current, next)) {
+        return 0L;
+      }
+    }
+  }
+}
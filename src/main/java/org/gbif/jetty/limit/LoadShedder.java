@@ -0,0 +1,122 @@
+package org.gbif.jetty.limit;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Decides which requests are rejected to keep the server out of overload.
+ * Every SAMPLE_INTERVAL the server is considered overloaded if:
+ * - the thread pool queue holds more than maxQueue jobs, or
+ * - the thread pool is busy and the average latency of the last interval exceeds latencyGradient times the baseline,
+ *   an average of the latencies measured while the server wasn't overloaded.
+ * The fraction of shed requests grows by RATIO_STEP for every overloaded interval and halves otherwise, so shedding
+ * starts before the threads are exhausted and stops smoothly once the latency recovers.
+ * Samples are taken by the request threads, there's no background thread.
+ */
+class LoadShedder {
+
+  private static final Logger LOG = LoggerFactory.getLogger(LoadShedder.class);
+
+  private static final long SAMPLE_INTERVAL = 100000000L; //100 milliseconds, in nanoseconds
+
+  //Completed requests needed to compare the interval latency
+  private static final int MIN_SAMPLES = 10;
+
+  //Utilisation of the thread pool below which the latency is ignored
+  private static final double MIN_UTILISATION = 0.5;
+
+  private static final double RATIO_STEP = 0.1;
+  private static final double MAX_RATIO = 0.9;
+  private static final double MIN_RATIO = 0.01;
+
+  //Weight of each interval in the latency baseline
+  private static final double BASELINE_WEIGHT = 0.05;
+
+  private final QueuedThreadPool threadPool;
+  private final int maxQueue;
+  private final double latencyGradient;
+
+  private final LongAdder latencySum = new LongAdder();
+  private final LongAdder latencyCount = new LongAdder();
+  private final AtomicLong nextSample = new AtomicLong(System.nanoTime() + SAMPLE_INTERVAL);
+
+  //Updated by the request thread that takes each sample, a different one every time
+  private volatile double baseline;
+  private volatile double shedRatio;
+
+  /**
+   * Creates a shedder, threadPool can be null if the server doesn't use a QueuedThreadPool; maxQueue and
+   * latencyGradient disable their signal if they aren't positive.
+   */
+  LoadShedder(QueuedThreadPool threadPool, int maxQueue, double latencyGradient) {
+    this.threadPool = threadPool;
+    this.maxQueue = maxQueue;
+    this.latencyGradient = latencyGradient;
+  }
+
+  /**
+   * True if the request must be rejected.
+   */
+  boolean shouldShed() {
+    final long now = System.nanoTime();
+    final long next = nextSample.get();
+    if (now - next >= 0 && nextSample.compareAndSet(next, now + SAMPLE_INTERVAL)) {
+      sample((now - next) / SAMPLE_INTERVAL + 1);
+    }
+    final double ratio = shedRatio;
+    return ratio > 0d && ThreadLocalRandom.current().nextDouble() < ratio;
+  }
+
+  /**
+   * Records the latency, in nanoseconds, of an accepted request.
+   */
+  void record(long latency) {
+    latencySum.add(latency);
+    latencyCount.increment();
+  }
+
+  /**
+   * Fraction of the requests being rejected.
+   */
+  double getShedRatio() {
+    return shedRatio;
+  }
+
+  /**
+   * Evaluates the last interval and adjusts the shed ratio, intervals is the number of intervals since the last sample:
+   * samples are only taken when requests arrive, the ratio halves for each interval without overload.
+   */
+  private void sample(long intervals) {
+    final long count = latencyCount.sumThenReset();
+    final long sum = latencySum.sumThenReset();
+    final double latency = count >= MIN_SAMPLES ? (double) sum / count : 0d;
+    boolean overloaded = false;
+    if (threadPool != null) {
+      overloaded = maxQueue > 0 && threadPool.getQueueSize() > maxQueue;
+      if (!overloaded && latencyGradient > 0d && baseline > 0d && latency > 0d
+          && (double) threadPool.getBusyThreads() / threadPool.getMaxThreads() >= MIN_UTILISATION) {
+        overloaded = latency > baseline * latencyGradient;
+      }
+    }
+    final double previousRatio = shedRatio;
+    if (overloaded) {
+      shedRatio = Math.min(MAX_RATIO, previousRatio + RATIO_STEP);
+    } else {
+      final double ratio = previousRatio / Math.pow(2d, Math.min(intervals, 10L));
+      shedRatio = ratio < MIN_RATIO ? 0d : ratio;
+      if (latency > 0d) {
+        baseline = baseline == 0d ? latency : baseline * (1 - BASELINE_WEIGHT) + latency * BASELINE_WEIGHT;
+      }
+    }
+    if (previousRatio == 0d && shedRatio > 0d) {
+      LOG.warn("Server overloaded, shedding requests");
+    } else if (previousRatio > 0d && shedRatio == 0d) {
+      LOG.info("Server recovered, load shedding stopped");
+    }
+  }
+}
@@ -0,0 +1,431 @@
+package org.gbif.jetty.limit;
+
+import org.gbif.jetty.WarmUp;
+import org.gbif.jetty.metrics.MetricsSource;
+import org.gbif.jetty.metrics.MetricsWriter;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.DispatcherType;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.eclipse.jetty.http.HttpHeader;
+import org.eclipse.jetty.http.HttpStatus;
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.handler.HandlerWrapper;
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
+import org.eclipse.jetty.util.thread.ScheduledExecutorScheduler;
+import org.eclipse.jetty.util.thread.Scheduler;
+
+/**
+ * Handler that protects the application from overload, it wraps the application context.
+ * - Client limits: each client, identified by the clientKeyHeader (e.g. an API key) or by its remote address, can have
+ *   at most maxClientConcurrency requests in progress and send maxClientRate requests per second, with bursts of
+ *   clientRateBurst requests. Requests over the limits get a TOO_MANY_REQUESTS response.
+ * - Load shedding: a fraction of the requests gets a SERVICE_UNAVAILABLE response while the thread pool queue or the
+ *   latency show that the server is overloaded, see LoadShedder.
+ * Rejected requests are answered without reaching the application and include a Retry-After header.
+ * The counters are lock-free and the clients are kept in a concurrent map, swept every minute to forget the clients
+ * idle for CLIENT_EXPIRATION, or all the idle clients once there are more than MAX_CLIENTS. Clients with requests in
+ * progress, or whose rate still holds back their next request, are never forgotten, so a long request, e.g.: a
+ * download, keeps its concurrency slot and a client can't earn a burst by being forgotten.
+ * The default values of this instance are:
+ * - maxClientConcurrency: 0, disabled.
+ * - maxClientRate: 0, disabled.
+ * - clientRateBurst: maxClientRate rounded up.
+ * - clientKeyHeader: null, clients are identified by their address.
+ * - loadShedding: false.
+ * - sheddingMaxQueue: DEFAULT_SHEDDING_MAX_QUEUE.
+ * - sheddingLatencyGradient: DEFAULT_SHEDDING_LATENCY_GRADIENT.
+ * - retryAfter: 1 second.
+ */
+public class RequestLimitHandler extends HandlerWrapper implements MetricsSource {
+
+  public static final int DEFAULT_SHEDDING_MAX_QUEUE = 100;
+  public static final double DEFAULT_SHEDDING_LATENCY_GRADIENT = 2d;
+
+  private static final long CLIENT_EXPIRATION = 10L; //minutes
+  private static final long SWEEP_INTERVAL = TimeUnit.MINUTES.toMillis(1L);
+  private static final int MAX_CLIENTS = 100000;
+  //Client key header values tracked per remote address, further values are limited as the address
+  private static final int MAX_KEYS_PER_ADDRESS = 16;
+  private static final String HEADER_KEY_PREFIX = "key:";
+
+  private static final long SECOND_NANOS = TimeUnit.SECONDS.toNanos(1L);
+
+  private int maxClientConcurrency;
+  private double maxClientRate;
+  private int clientRateBurst;
+  private String clientKeyHeader;
+  private boolean loadShedding;
+  private int sheddingMaxQueue = DEFAULT_SHEDDING_MAX_QUEUE;
+  private double sheddingLatencyGradient = DEFAULT_SHEDDING_LATENCY_GRADIENT;
+  private int retryAfter = 1; //seconds
+
+  private final LongAdder shedRequests = new LongAdder();
+  private final LongAdder concurrencyRejections = new LongAdder();
+  private final LongAdder rateRejections = new LongAdder();
+
+  private ConcurrentMap<String, ClientLimit> clients;
+  //Number of client key header values tracked for each remote address
+  private ConcurrentMap<String, AtomicInteger> addressKeys;
+  private final Scheduler sweeper = new ScheduledExecutorScheduler("request-limit-sweeper", true);
+  //True while a sweep triggered by the number of clients is pending
+  private final AtomicBoolean sweepPending = new AtomicBoolean(false);
+  private LoadShedder loadShedder;
+  private long rateInterval;
+  private long rateTolerance;
+
+  /**
+   * Creates a handler without limits.
+   */
+  public RequestLimitHandler() {
+    addBean(sweeper);
+  }
+
+  public int getMaxClientConcurrency() {
+    return maxClientConcurrency;
+  }
+
+  public void setMaxClientConcurrency(int maxClientConcurrency) {
+    this.maxClientConcurrency = maxClientConcurrency;
+  }
+
+  public double getMaxClientRate() {
+    return maxClientRate;
+  }
+
+  public void setMaxClientRate(double maxClientRate) {
+    this.maxClientRate = maxClientRate;
+  }
+
+  public int getClientRateBurst() {
+    return clientRateBurst;
+  }
+
+  public void setClientRateBurst(int clientRateBurst) {
+    this.clientRateBurst = clientRateBurst;
+  }
+
+  public String getClientKeyHeader() {
+    return clientKeyHeader;
+  }
+
+  public void setClientKeyHeader(String clientKeyHeader) {
+    this.clientKeyHeader = clientKeyHeader;
+  }
+
+  public boolean isLoadShedding() {
+    return loadShedding;
+  }
+
+  public void setLoadShedding(boolean loadShedding) {
+    this.loadShedding = loadShedding;
+  }
+
+  public int getSheddingMaxQueue() {
+    return sheddingMaxQueue;
+  }
+
+  public void setSheddingMaxQueue(int sheddingMaxQueue) {
+    this.sheddingMaxQueue = sheddingMaxQueue;
+  }
+
+  public double getSheddingLatencyGradient() {
+    return sheddingLatencyGradient;
+  }
+
+  public void setSheddingLatencyGradient(double sheddingLatencyGradient) {
+    this.sheddingLatencyGradient = sheddingLatencyGradient;
+  }
+
+  public int getRetryAfter() {
+    return retryAfter;
+  }
+
+  public void setRetryAfter(int retryAfter) {
+    this.retryAfter = retryAfter;
+  }
+
+  /**
+   * True if any of the limits is enabled.
+   */
+  public boolean isEnabled() {
+    return maxClientConcurrency > 0 || maxClientRate > 0d || loadShedding;
+  }
+
+  @Override
+  protected void doStart() throws Exception {
+    if (maxClientConcurrency > 0 || maxClientRate > 0d) {
+      clients = new ConcurrentHashMap<String, ClientLimit>();
+      addressKeys = new ConcurrentHashMap<String, AtomicInteger>();
+    }
+    if (maxClientRate > 0d) {
+      rateInterval = (long) (SECOND_NANOS / maxClientRate);
+      final int burst = clientRateBurst > 0 ? clientRateBurst : (int) Math.ceil(maxClientRate);
+      rateTolerance = rateInterval * (burst - 1);
+    }
+    if (loadShedding) {
+      final QueuedThreadPool threadPool =
+        getServer().getThreadPool() instanceof QueuedThreadPool ? (QueuedThreadPool) getServer().getThreadPool() : null;
+      loadShedder = new LoadShedder(threadPool, sheddingMaxQueue, sheddingLatencyGradient);
+    }
+    super.doStart();
+    if (clients != null) {
+      scheduleSweep(SWEEP_INTERVAL, TimeUnit.MINUTES.toNanos(CLIENT_EXPIRATION));
+    }
+  }
+
+  @Override
+  protected void doStop() throws Exception {
+    super.doStop();
+    if (clients != null) {
+      clients.clear();
+      addressKeys.clear();
+    }
+  }
+
+  @Override
+  public void handle(
+    String target, Request baseRequest, HttpServletRequest request, HttpServletResponse response
+  ) throws IOException, ServletException {
+    //asynchronous dispatches were accounted by the initial dispatch, warm-up requests would share the loopback limits
+    if (baseRequest.getDispatcherType() != DispatcherType.REQUEST || WarmUp.isWarmUpRequest(baseRequest)) {
+      super.handle(target, baseRequest, request, response);
+      return;
+    }
+    if (loadShedder != null && loadShedder.shouldShed()) {
+      shedRequests.increment();
+      reject(baseRequest, response, HttpStatus.SERVICE_UNAVAILABLE_503, retryAfter);
+      return;
+    }
+    ClientLimit clientLimit = null;
+    if (clients != null) {
+      //the concurrency is checked first, so a request rejected by it doesn't consume the rate
+      clientLimit = acquireClientLimit(request);
+      if (clientLimit == null) {
+        concurrencyRejections.increment();
+        reject(baseRequest, response, HttpStatus.TOO_MANY_REQUESTS_429, retryAfter);
+        return;
+      }
+      if (rateInterval > 0L) {
+        final long wait = clientLimit.tryReserve(System.nanoTime(), rateInterval, rateTolerance);
+        if (wait > 0L) {
+          clientLimit.release();
+          rateRejections.increment();
+          reject(baseRequest, response, HttpStatus.TOO_MANY_REQUESTS_429, (int) ((wait - 1) / SECOND_NANOS) + 1);
+          return;
+        }
+      }
+    }
+    final long start = System.nanoTime();
+    boolean completed = true;
+    try {
+      super.handle(target, baseRequest, request, response);
+      if (request.isAsyncStarted()) {
+        completed = false;
+        request.getAsyncContext().addListener(new CompletionListener(clientLimit, start));
+      }
+    } finally {
+      if (completed) {
+        complete(clientLimit, start);
+      }
+    }
+  }
+
+  /**
+   * Takes a concurrency slot of the client, null if it has maxClientConcurrency requests in progress.
+   * The slot is taken even if the concurrency isn't limited, so the counters of the client aren't retired while it has
+   * requests in progress. Retired counters are replaced by new ones.
+   * The client key header isn't authenticated: a remote address can only create the counters of MAX_KEYS_PER_ADDRESS
+   * header values, the requests with other values are limited by the counters of the address, so rotating the values
+   * doesn't bypass the limits.
+   */
+  private ClientLimit acquireClientLimit(HttpServletRequest request) {
+    final int maxActive = maxClientConcurrency > 0 ? maxClientConcurrency : Integer.MAX_VALUE;
+    final String address = request.getRemoteAddr();
+    final String headerKey = clientKeyHeader == null ? null : request.getHeader(clientKeyHeader);
+    boolean keyOfAddress = headerKey == null || headerKey.isEmpty();
+    //header values are prefixed so they can't take the counters of an address
+    String key = keyOfAddress ? address : HEADER_KEY_PREFIX + headerKey;
+    while (true) {
+      ClientLimit clientLimit = clients.get(key);
+      if (clientLimit == null) {
+        if (!keyOfAddress && !reserveAddressKey(address)) {
+          keyOfAddress = true;
+          key = address;
+          continue;
+        }
+        final ClientLimit newClientLimit = new ClientLimit(keyOfAddress ? null : address);
+        clientLimit = clients.putIfAbsent(key, newClientLimit);
+        if (clientLimit == null) {
+          clientLimit = newClientLimit;
+          if (clients.size() > MAX_CLIENTS && sweepPending.compareAndSet(false, true)) {
+            scheduleSweep(0L, 0L);
+          }
+        } else if (!keyOfAddress) {
+          releaseAddressKey(address);
+        }
+      }
+      if (clientLimit.tryAcquire(maxActive)) {
+        return clientLimit;
+      }
+      if (!clientLimit.isRetired()) {
+        return null;
+      }
+      clients.remove(key, clientLimit);
+    }
+  }
+
+  /**
+   * Counts a new client key header value of the address, false if it has MAX_KEYS_PER_ADDRESS values already.
+   */
+  private boolean reserveAddressKey(String address) {
+    while (true) {
+      AtomicInteger keys = addressKeys.get(address);
+      if (keys == null) {
+        final AtomicInteger newKeys = new AtomicInteger();
+        keys = addressKeys.putIfAbsent(address, newKeys);
+        if (keys == null) {
+          keys = newKeys;
+        }
+      }
+      final int current = keys.get();
+      if (current >= MAX_KEYS_PER_ADDRESS) {
+        return false;
+      }
+      //a counter at RETIRED has been removed from the map, a new one is created
+      if (current >= 0 && keys.compareAndSet(current, current + 1)) {
+        return true;
+      }
+      if (current < 0) {
+        addressKeys.remove(address, keys);
+      }
+    }
+  }
+
+  /**
+   * Discounts a client key header value of the address, the counter is removed once the address has none.
+   */
+  private void releaseAddressKey(String address) {
+    final AtomicInteger keys = addressKeys.get(address);
+    if (keys != null && keys.decrementAndGet() == 0 && keys.compareAndSet(0, -1)) {
+      addressKeys.remove(address, keys);
+    }
+  }
+
+  /**
+   * Schedules a sweep of the clients idle for idleTime nanoseconds after delay milliseconds, a periodic sweep, with a
+   * positive idleTime, schedules the next one.
+   */
+  private void scheduleSweep(long delay, final long idleTime) {
+    sweeper.schedule(new Runnable() {
+      @Override
+      public void run() {
+        sweep(System.nanoTime() - idleTime);
+        if (idleTime > 0L && isRunning()) {
+          scheduleSweep(SWEEP_INTERVAL, idleTime);
+        }
+      }
+    }, delay, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Forgets the clients without requests in progress whose last request completed before idleSince and whose rate
+   * doesn't hold back their next request.
+   */
+  private void sweep(long idleSince) {
+    sweepPending.set(false);
+    final long now = System.nanoTime();
+    for (Map.Entry<String, ClientLimit> entry : clients.entrySet()) {
+      if (entry.getValue().tryRetire(idleSince, now)) {
+        clients.remove(entry.getKey(), entry.getValue());
+        if (entry.getValue().getAddress() != null) {
+          releaseAddressKey(entry.getValue().getAddress());
+        }
+      }
+    }
+  }
+
+  /**
+   * Releases the resources taken by a request and records its latency.
+   */
+  private void complete(ClientLimit clientLimit, long start) {
+    if (clientLimit != null) {
+      clientLimit.release();
+    }
+    if (loadShedder != null) {
+      loadShedder.record(System.nanoTime() - start);
+    }
+  }
+
+  /**
+   * Responds with an empty response, the request doesn't reach the application.
+   */
+  private static void reject(Request baseRequest, HttpServletResponse response, int status, int retryAfter) {
+    baseRequest.setHandled(true);
+    response.setStatus(status);
+    response.setHeader(HttpHeader.RETRY_AFTER.asString(), Integer.toString(retryAfter));
+    response.setContentLength(0);
+  }
+
+  @Override
+  public void report(MetricsWriter writer) throws IOException {
+    writer.counter("jetty_limit_rejected_total", "Number of requests rejected by the request limits",
+                   shedRequests.sum(), "reason", "shed");
+    writer.counter("jetty_limit_rejected_total", "Number of requests rejected by the request limits",
+                   concurrencyRejections.sum(), "reason", "concurrency");
+    writer.counter("jetty_limit_rejected_total", "Number of requests rejected by the request limits",
+                   rateRejections.sum(), "reason", "rate");
+    if (loadShedder != null) {
+      writer.gauge("jetty_limit_shed_ratio", "Fraction of the requests being shed", loadShedder.getShedRatio());
+    }
+    if (clients != null) {
+      writer.gauge("jetty_limit_clients", "Number of clients tracked by the request limits", clients.size());
+    }
+  }
+
+  /**
+   * Completes an asynchronous request.
+   */
+  private class CompletionListener implements AsyncListener {
+
+    private final ClientLimit clientLimit;
+    private final long start;
+
+    private CompletionListener(ClientLimit clientLimit, long start) {
+      this.clientLimit = clientLimit;
+      this.start = start;
+    }
+
+    @Override
+    public void onComplete(AsyncEvent event) {
+      complete(clientLimit, start);
+    }
+
+    @Override
+    public void onTimeout(AsyncEvent event) {
+      //completed by onComplete
+    }
+
+    @Override
+    public void onError(AsyncEvent event) {
+      //completed by onComplete
+    }
+
+    @Override
+    public void onStartAsync(AsyncEvent event) {
+      event.getAsyncContext().addListener(this);
+    }
+  }
+}
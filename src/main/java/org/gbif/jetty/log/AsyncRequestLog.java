@@ -0,0 +1,296 @@
+package org.gbif.jetty.log;
+
+import org.gbif.jetty.metrics.MetricsSource;
+import org.gbif.jetty.metrics.MetricsWriter;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Paths;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+import org.eclipse.jetty.http.HttpHeader;
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.RequestLog;
+import org.eclipse.jetty.server.Response;
+import org.eclipse.jetty.util.component.AbstractLifeCycle;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Access log that keeps the I/O off the request threads.
+ * The request thread copies the request data into a preallocated event of a lock-free LogEventRing; a single writer
+ * thread formats the events in the NCSA format into a direct buffer and writes them in batches to a RollingLogFile,
+ * whenever the buffer fills up or the ring is empty.
+ * If the ring is full the event is dropped, or with the BLOCK overflow the request thread waits for a free slot.
+ * With a sampleRate lower than 1 only that fraction of the requests is logged, server errors are always logged.
+ * The ServerFactory sets it as the request log of the server, which manages its lifecycle.
+ * The default values of this instance are:
+ * - bufferSize: 8192 events.
+ * - overflow: DROP.
+ * - sampleRate: 1, all the requests are logged.
+ * - maxFileSize: 100 megabytes.
+ * - rotationInterval: 1 day.
+ * - retainedFiles: 7.
+ */
+public class AsyncRequestLog extends AbstractLifeCycle implements RequestLog, MetricsSource {
+
+  private static final Logger LOG = LoggerFactory.getLogger(AsyncRequestLog.class);
+
+  public static final int DEFAULT_BUFFER_SIZE = 8192;
+  public static final long DEFAULT_MAX_FILE_SIZE = 100L * 1024 * 1024;
+  public static final long DEFAULT_ROTATION_INTERVAL = TimeUnit.DAYS.toMillis(1L);
+  public static final int DEFAULT_RETAINED_FILES = 7;
+
+  //Size of the batches written to the file
+  private static final int WRITE_BUFFER_SIZE = 256 * 1024;
+
+  //Wait of the writer when there aren't events, it bounds the time an event waits to be written
+  private static final long IDLE_WAIT = TimeUnit.MILLISECONDS.toNanos(10L);
+
+  //Wait of a request thread for a free slot with the BLOCK overflow
+  private static final long BLOCK_WAIT = TimeUnit.MICROSECONDS.toNanos(100L);
+
+  private static final long STOP_TIMEOUT = 5000L;
+
+  /**
+   * What to do with an event when the ring is full.
+   */
+  public enum Overflow {
+    /**
+     * The event is discarded and counted.
+     */
+    DROP,
+
+    /**
+     * The request thread waits until the event fits.
+     */
+    BLOCK
+  }
+
+  private final String fileName;
+  private int bufferSize = DEFAULT_BUFFER_SIZE;
+  private Overflow overflow = Overflow.DROP;
+  private double sampleRate = 1d;
+  private long maxFileSize = DEFAULT_MAX_FILE_SIZE;
+  private long rotationInterval = DEFAULT_ROTATION_INTERVAL;
+  private int retainedFiles = DEFAULT_RETAINED_FILES;
+
+  private final LongAdder logged = new LongAdder();
+  private final LongAdder dropped = new LongAdder();
+  private final LongAdder blocked = new LongAdder();
+  private final LongAdder writeErrors = new LongAdder();
+
+  private volatile LogEventRing ring;
+  private volatile boolean running;
+  private Thread writer;
+
+  /**
+   * Creates an access log that writes to fileName.
+   */
+  public AsyncRequestLog(String fileName) {
+    this.fileName = fileName;
+  }
+
+  public String getFileName() {
+    return fileName;
+  }
+
+  public int getBufferSize() {
+    return bufferSize;
+  }
+
+  public void setBufferSize(int bufferSize) {
+    this.bufferSize = bufferSize;
+  }
+
+  public Overflow getOverflow() {
+    return overflow;
+  }
+
+  public void setOverflow(Overflow overflow) {
+    this.overflow = overflow;
+  }
+
+  public double getSampleRate() {
+    return sampleRate;
+  }
+
+  public void setSampleRate(double sampleRate) {
+    this.sampleRate = sampleRate;
+  }
+
+  public long getMaxFileSize() {
+    return maxFileSize;
+  }
+
+  public void setMaxFileSize(long maxFileSize) {
+    this.maxFileSize = maxFileSize;
+  }
+
+  public long getRotationInterval() {
+    return rotationInterval;
+  }
+
+  public void setRotationInterval(long rotationInterval) {
+    this.rotationInterval = rotationInterval;
+  }
+
+  public int getRetainedFiles() {
+    return retainedFiles;
+  }
+
+  public void setRetainedFiles(int retainedFiles) {
+    this.retainedFiles = retainedFiles;
+  }
+
+  @Override
+  public void log(Request request, Response response) {
+    final LogEventRing currentRing = ring;
+    if (!running || currentRing == null) {
+      return;
+    }
+    final int status = response.getCommittedMetaData().getStatus();
+    if (sampleRate < 1d && status < 500 && ThreadLocalRandom.current().nextDouble() >= sampleRate) {
+      return;
+    }
+    long position = currentRing.tryClaim();
+    if (position < 0L) {
+      if (overflow == Overflow.DROP) {
+        dropped.increment();
+        return;
+      }
+      blocked.increment();
+      while (position < 0L && running) {
+        LockSupport.parkNanos(BLOCK_WAIT);
+        position = currentRing.tryClaim();
+      }
+      if (position < 0L) {
+        dropped.increment();
+        return;
+      }
+    }
+    final LogEvent event = currentRing.get(position);
+    event.timeStamp = request.getTimeStamp();
+    event.latency = System.currentTimeMillis() - request.getTimeStamp();
+    event.remoteAddr = request.getRemoteAddr();
+    event.method = request.getMethod();
+    event.uri = request.getRequestURI();
+    event.query = request.getQueryString();
+    event.protocol = request.getProtocol();
+    event.status = status;
+    event.bytes = response.getHttpChannel().getBytesWritten();
+    event.referer = request.getHeader(HttpHeader.REFERER.asString());
+    event.userAgent = request.getHeader(HttpHeader.USER_AGENT.asString());
+    currentRing.publish(position);
+  }
+
+  @Override
+  protected void doStart() throws Exception {
+    final RollingLogFile logFile = new RollingLogFile(Paths.get(fileName), maxFileSize, rotationInterval,
+                                                      retainedFiles);
+    logFile.open();
+    ring = new LogEventRing(bufferSize);
+    running = true;
+    writer = new Thread(new Writer(ring, logFile), "access-log-writer");
+    writer.setDaemon(true);
+    writer.start();
+    LOG.info("Access log {} started", fileName);
+    super.doStart();
+  }
+
+  @Override
+  protected void doStop() throws Exception {
+    running = false;
+    LockSupport.unpark(writer);
+    writer.join(STOP_TIMEOUT);
+    super.doStop();
+  }
+
+  @Override
+  public void report(MetricsWriter writer) throws IOException {
+    writer.counter("jetty_access_log_events_total", "Number of requests written to the access log", logged.sum());
+    writer.counter("jetty_access_log_dropped_total", "Number of requests dropped because the access log was full",
+                   dropped.sum());
+    writer.counter("jetty_access_log_blocked_total", "Number of requests that waited for space in the access log",
+                   blocked.sum());
+    writer.counter("jetty_access_log_write_errors_total", "Number of failed writes of the access log",
+                   writeErrors.sum());
+    final LogEventRing currentRing = ring;
+    if (currentRing != null) {
+      writer.gauge("jetty_access_log_pending", "Number of requests waiting to be written", currentRing.size());
+    }
+  }
+
+  /**
+   * Formats the events of the ring and writes them to the log file in batches, until the log is stopped and the ring
+   * is empty.
+   */
+  private class Writer implements Runnable {
+
+    private final LogEventRing ring;
+    private final RollingLogFile logFile;
+    private final NcsaFormatter formatter = new NcsaFormatter();
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(WRITE_BUFFER_SIZE);
+
+    private Writer(LogEventRing ring, RollingLogFile logFile) {
+      this.ring = ring;
+      this.logFile = logFile;
+    }
+
+    @Override
+    public void run() {
+      try {
+        while (true) {
+          final LogEvent event = ring.peek();
+          if (event == null) {
+            flush();
+            if (!running) {
+              break;
+            }
+            LockSupport.parkNanos(IDLE_WAIT);
+            continue;
+          }
+          if (buffer.remaining() < NcsaFormatter.MAX_EVENT_SIZE) {
+            flush();
+          }
+          try {
+            formatter.format(event, buffer);
+            logged.increment();
+          } catch (RuntimeException ex) {
+            writeErrors.increment();
+            LOG.warn("Error formatting an access log event", ex);
+          }
+          event.clear();
+          ring.release();
+        }
+      } finally {
+        try {
+          logFile.close();
+        } catch (IOException ex) {
+          LOG.warn("Error closing the access log {}", fileName, ex);
+        }
+      }
+    }
+
+    /**
+     * Writes the buffered events, they are discarded if the write fails.
+     */
+    private void flush() {
+      if (buffer.position() == 0) {
+        return;
+      }
+      buffer.flip();
+      try {
+        logFile.write(buffer);
+      } catch (IOException ex) {
+        writeErrors.increment();
+        LOG.warn("Error writing the access log {}", fileName, ex);
+      } finally {
+        buffer.clear();
+      }
+    }
+  }
+}
@@ -0,0 +1,34 @@
+package org.gbif.jetty.log;
+
+/**
+ * Request data captured by the AsyncRequestLog.
+ * Instances are preallocated by the LogEventRing and reused, the request thread only copies references and numbers
+ * into them; all the formatting is done by the writer thread.
+ */
+class LogEvent {
+
+  long timeStamp;
+  long latency;
+  String remoteAddr;
+  String method;
+  String uri;
+  String query;
+  String protocol;
+  int status;
+  long bytes;
+  String referer;
+  String userAgent;
+
+  /**
+   * Releases the references held by the event, so the request data can be collected.
+   */
+  void clear() {
+    remoteAddr = null;
+    method = null;
+    uri = null;
+    query = null;
+    protocol = null;
+    referer = null;
+    userAgent = null;
+  }
+}
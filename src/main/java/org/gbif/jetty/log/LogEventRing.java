@@ -0,0 +1,96 @@
+package org.gbif.jetty.log;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Bounded, lock-free ring buffer of LogEvents with many producers and a single consumer.
+ * Each slot has a sequence number that tells whether it's free for the producer of a position or published for the
+ * consumer, so producers only contend on the CAS of the tail position and never allocate:
+ * - tryClaim reserves the next free position; the producer fills the event returned by get and calls publish.
+ * - the consumer reads the events with peek and frees them with release.
+ */
+class LogEventRing {
+
+  private final LogEvent[] events;
+  private final AtomicLongArray sequences;
+  private final int mask;
+
+  private final AtomicLong tail = new AtomicLong();
+  //only updated by the consumer
+  private volatile long head;
+
+  /**
+   * Creates a ring, the capacity is rounded up to a power of two.
+   */
+  LogEventRing(int capacity) {
+    final int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+    events = new LogEvent[size];
+    sequences = new AtomicLongArray(size);
+    for (int i = 0; i < size; i++) {
+      events[i] = new LogEvent();
+      sequences.set(i, i);
+    }
+    mask = size - 1;
+  }
+
+  /**
+   * Reserves the next position, returns -1 if the ring is full.
+   */
+  long tryClaim() {
+    while (true) {
+      final long position = tail.get();
+      final long difference = sequences.get((int) (position & mask)) - position;
+      if (difference == 0L) {
+        if (tail.compareAndSet(position, position + 1)) {
+          return position;
+        }
+      } else if (difference < 0L) {
+        return -1L;
+      }
+    }
+  }
+
+  /**
+   * Event of a claimed position.
+   */
+  LogEvent get(long position) {
+    return events[(int) (position & mask)];
+  }
+
+  /**
+   * Makes the event of a claimed position visible to the consumer.
+   */
+  void publish(long position) {
+    sequences.lazySet((int) (position & mask), position + 1);
+  }
+
+  /**
+   * Next published event, or null if there isn't any. Only called by the consumer.
+   */
+  LogEvent peek() {
+    final long position = head;
+    final int index = (int) (position & mask);
+    return sequences.get(index) == position + 1 ? events[index] : null;
+  }
+
+  /**
+   * Frees the event returned by peek. Only called by the consumer.
+   */
+  void release() {
+    final long position = head;
+    sequences.lazySet((int) (position & mask), position + events.length);
+    head = position + 1;
+  }
+
+  /**
+   * Number of claimed events that haven't been released.
+   */
+  int size() {
+    return (int) Math.max(0L, tail.get() - head);
+  }
+
+  int capacity() {
+    return events.length;
+  }
+}
@@ -0,0 +1,128 @@
+package org.gbif.jetty.log;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.Locale;
+
+/**
+ * Writes LogEvents in the NCSA extended format, followed by the latency in milliseconds:
+ * 127.0.0.1 - - [10/Oct/2016:13:55:36 +0000] "GET /path?q=1 HTTP/1.1" 200 2326 "referer" "user agent" 12
+ * Fields are encoded as UTF-8 straight into the output buffer, without intermediate strings; the date is formatted
+ * once per second. Quotes and backslashes are escaped, control characters are replaced by '?' and the long fields are
+ * truncated to MAX_FIELD_LENGTH characters, so an event never takes more than MAX_EVENT_SIZE bytes.
+ * Instances aren't thread safe, they are only used by the writer thread.
+ */
+class NcsaFormatter {
+
+  static final int MAX_FIELD_LENGTH = 2048;
+
+  //6 truncated fields of up to 3 bytes per char, escaped or not, plus the fixed size fields
+  static final int MAX_EVENT_SIZE = 6 * MAX_FIELD_LENGTH * 3 + 512;
+
+  private static final DateTimeFormatter DATE_FORMAT =
+    DateTimeFormatter.ofPattern("dd/MMM/yyyy:HH:mm:ss Z", Locale.US).withZone(ZoneOffset.UTC);
+
+  private static final byte[] DASH = {'-'};
+
+  private final byte[] digits = new byte[20];
+  private long dateSecond = -1L;
+  private byte[] date;
+
+  /**
+   * Writes the event and a line break, the buffer must have at least MAX_EVENT_SIZE bytes remaining.
+   */
+  void format(LogEvent event, ByteBuffer buffer) {
+    writeField(event.remoteAddr, buffer, MAX_FIELD_LENGTH);
+    buffer.put((byte) ' ').put((byte) '-').put((byte) ' ').put((byte) '-').put((byte) ' ').put((byte) '[');
+    buffer.put(date(event.timeStamp));
+    buffer.put((byte) ']').put((byte) ' ').put((byte) '"');
+    writeField(event.method, buffer, MAX_FIELD_LENGTH);
+    buffer.put((byte) ' ');
+    final int uriLength = writeField(event.uri, buffer, MAX_FIELD_LENGTH);
+    if (event.query != null && !event.query.isEmpty()) {
+      buffer.put((byte) '?');
+      writeField(event.query, buffer, MAX_FIELD_LENGTH - uriLength);
+    }
+    buffer.put((byte) ' ');
+    writeField(event.protocol, buffer, MAX_FIELD_LENGTH);
+    buffer.put((byte) '"').put((byte) ' ');
+    writeNumber(event.status, buffer);
+    buffer.put((byte) ' ');
+    writeNumber(event.bytes, buffer);
+    buffer.put((byte) ' ').put((byte) '"');
+    writeField(event.referer, buffer, MAX_FIELD_LENGTH);
+    buffer.put((byte) '"').put((byte) ' ').put((byte) '"');
+    writeField(event.userAgent, buffer, MAX_FIELD_LENGTH);
+    buffer.put((byte) '"').put((byte) ' ');
+    writeNumber(event.latency, buffer);
+    buffer.put((byte) '\n');
+  }
+
+  /**
+   * Formatted date of a timestamp, cached per second.
+   */
+  private byte[] date(long timeStamp) {
+    final long second = timeStamp / 1000L;
+    if (second != dateSecond) {
+      date = DATE_FORMAT.format(Instant.ofEpochSecond(second)).getBytes(StandardCharsets.US_ASCII);
+      dateSecond = second;
+    }
+    return date;
+  }
+
+  /**
+   * Writes up to maxLength characters of a value, or '-' if it's null or empty. Returns the characters written.
+   */
+  private static int writeField(String value, ByteBuffer buffer, int maxLength) {
+    if (value == null || value.isEmpty()) {
+      buffer.put(DASH);
+      return 0;
+    }
+    final int length = Math.min(value.length(), Math.max(0, maxLength));
+    for (int i = 0; i < length; i++) {
+      final char c = value.charAt(i);
+      if (c == '"' || c == '\\') {
+        buffer.put((byte) '\\').put((byte) c);
+      } else if (c < 0x20 || c == 0x7f) {
+        buffer.put((byte) '?');
+      } else if (c < 0x80) {
+        buffer.put((byte) c);
+      } else if (c < 0x800) {
+        buffer.put((byte) (0xc0 | (c >> 6))).put((byte) (0x80 | (c & 0x3f)));
+      } else if (Character.isSurrogate(c)) {
+        //a pair takes 4 bytes for 2 chars, lone surrogates are replaced
+        if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(value.charAt(i + 1))) {
+          final int codePoint = Character.toCodePoint(c, value.charAt(++i));
+          buffer.put((byte) (0xf0 | (codePoint >> 18))).put((byte) (0x80 | ((codePoint >> 12) & 0x3f)))
+            .put((byte) (0x80 | ((codePoint >> 6) & 0x3f))).put((byte) (0x80 | (codePoint & 0x3f)));
+        } else {
+          buffer.put((byte) '?');
+        }
+      } else {
+        buffer.put((byte) (0xe0 | (c >> 12))).put((byte) (0x80 | ((c >> 6) & 0x3f)))
+          .put((byte) (0x80 | (c & 0x3f)));
+      }
+    }
+    return length;
+  }
+
+  /**
+   * Writes the decimal digits of a number, negative numbers are written as '-'.
+   */
+  private void writeNumber(long value, ByteBuffer buffer) {
+    if (value < 0L) {
+      buffer.put(DASH);
+      return;
+    }
+    int position = digits.length;
+    long remaining = value;
+    do {
+      digits[--position] = (byte) ('0' + remaining % 10);
+      remaining /= 10;
+    } while (remaining > 0L);
+    buffer.put(digits, position, digits.length - position);
+  }
+}
@@ -0,0 +1,120 @@
+package org.gbif.jetty.log;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Log file written through a FileChannel that is rotated when it reaches maxSize bytes or when a rotationInterval
+ * boundary is crossed, intervals are aligned to the epoch in UTC, e.g. a day interval rotates at midnight.
+ * Rotated files are renamed to [file].[yyyyMMdd-HHmmss] and only the newest retainedFiles are kept.
+ * Instances aren't thread safe, they are only used by the writer thread of the AsyncRequestLog.
+ */
+class RollingLogFile implements Closeable {
+
+  private static final Logger LOG = LoggerFactory.getLogger(RollingLogFile.class);
+
+  private static final DateTimeFormatter SUFFIX_FORMAT =
+    DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss").withZone(ZoneOffset.UTC);
+
+  private final Path path;
+  private final long maxSize;
+  private final long rotationInterval;
+  private final int retainedFiles;
+
+  private FileChannel channel;
+  private long size;
+  private long nextRotation;
+
+  /**
+   * Creates a log file, maxSize and rotationInterval, in milliseconds, disable their rotation if they aren't positive.
+   */
+  RollingLogFile(Path path, long maxSize, long rotationInterval, int retainedFiles) {
+    this.path = path.toAbsolutePath();
+    this.maxSize = maxSize;
+    this.rotationInterval = rotationInterval;
+    this.retainedFiles = retainedFiles;
+  }
+
+  /**
+   * Opens the file, appending to it if it exists.
+   */
+  void open() throws IOException {
+    Files.createDirectories(path.getParent());
+    channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    size = channel.size();
+    nextRotation = rotationInterval > 0L ? (System.currentTimeMillis() / rotationInterval + 1) * rotationInterval
+      : Long.MAX_VALUE;
+  }
+
+  /**
+   * Writes all the remaining bytes of the buffer, rotating the file before if needed.
+   */
+  void write(ByteBuffer buffer) throws IOException {
+    if (size > 0L && ((maxSize > 0L && size + buffer.remaining() > maxSize)
+                      || System.currentTimeMillis() >= nextRotation)) {
+      rotate();
+    }
+    while (buffer.hasRemaining()) {
+      size += channel.write(buffer);
+    }
+  }
+
+  /**
+   * Closes the current file, renames it and opens a new one.
+   */
+  private void rotate() throws IOException {
+    channel.close();
+    final String rotatedName = path.getFileName() + "." + SUFFIX_FORMAT.format(Instant.now());
+    Path rotated = path.resolveSibling(rotatedName);
+    for (int i = 1; Files.exists(rotated); i++) {
+      rotated = path.resolveSibling(rotatedName + '-' + i);
+    }
+    Files.move(path, rotated);
+    open();
+    deleteOldFiles();
+  }
+
+  /**
+   * Deletes the oldest rotated files beyond the retainedFiles.
+   */
+  private void deleteOldFiles() {
+    if (retainedFiles < 0) {
+      return;
+    }
+    final List<Path> rotatedFiles = new ArrayList<Path>();
+    try (DirectoryStream<Path> files = Files.newDirectoryStream(path.getParent(), path.getFileName() + ".*")) {
+      for (Path file : files) {
+        rotatedFiles.add(file);
+      }
+      //the timestamp suffix sorts the files by age
+      Collections.sort(rotatedFiles, Collections.reverseOrder());
+      for (Path file : rotatedFiles.subList(Math.min(retainedFiles, rotatedFiles.size()), rotatedFiles.size())) {
+        Files.deleteIfExists(file);
+      }
+    } catch (IOException ex) {
+      LOG.warn("Error deleting old log files of {}", path, ex);
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    if (channel != null) {
+      channel.close();
+    }
+  }
+}
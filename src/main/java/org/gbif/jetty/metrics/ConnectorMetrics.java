@@ -0,0 +1,53 @@
+package org.gbif.jetty.metrics;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.eclipse.jetty.io.ConnectionStatistics;
+import org.eclipse.jetty.server.Connector;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+
+/**
+ * Reports the connection statistics of the server connectors.
+ * Bytes are accounted by Jetty when a connection is closed.
+ */
+public class ConnectorMetrics implements MetricsSource {
+
+  //Statistics by connector name
+  private final Map<String, ConnectionStatistics> statistics = new LinkedHashMap<String, ConnectionStatistics>();
+
+  /**
+   * Adds a ConnectionStatistics bean to each connector of the server, it must be called before starting the server.
+   */
+  public ConnectorMetrics(Server server) {
+    for (Connector connector : server.getConnectors()) {
+      if (connector instanceof ServerConnector) {
+        final ConnectionStatistics connectionStatistics = new ConnectionStatistics();
+        ((ServerConnector) connector).addBean(connectionStatistics);
+        statistics.put(connector.getName(), connectionStatistics);
+      }
+    }
+  }
+
+  @Override
+  public void report(MetricsWriter writer) throws IOException {
+    for (Map.Entry<String, ConnectionStatistics> entry : statistics.entrySet()) {
+      writer.gauge("jetty_connections_open", "Number of open connections", entry.getValue().getConnections(),
+                   "connector", entry.getKey());
+    }
+    for (Map.Entry<String, ConnectionStatistics> entry : statistics.entrySet()) {
+      writer.counter("jetty_connections_total", "Number of accepted connections",
+                     entry.getValue().getConnectionsTotal(), "connector", entry.getKey());
+    }
+    for (Map.Entry<String, ConnectionStatistics> entry : statistics.entrySet()) {
+      writer.counter("jetty_received_bytes_total", "Number of bytes received by closed connections",
+                     entry.getValue().getReceivedBytes(), "connector", entry.getKey());
+    }
+    for (Map.Entry<String, ConnectionStatistics> entry : statistics.entrySet()) {
+      writer.counter("jetty_sent_bytes_total", "Number of bytes sent by closed connections",
+                     entry.getValue().getSentBytes(), "connector", entry.getKey());
+    }
+  }
+}
@@ -0,0 +1,89 @@
+package org.gbif.jetty.metrics;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+import org.codehaus.jackson.JsonEncoding;
+import org.codehaus.jackson.JsonFactory;
+import org.codehaus.jackson.JsonGenerator;
+
+/**
+ * Writes the metrics as a JSON object, each metric is an array of samples:
+ * {"name": [{"labels": {"label": "value"}, "value": 1.0}], ...}.
+ * Summaries have the fields count, sum and quantiles instead of value.
+ */
+public class JsonMetricsWriter implements MetricsWriter {
+
+  public static final String CONTENT_TYPE = "application/json";
+
+  private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+  private final JsonGenerator generator;
+
+  //Name of the metric whose array is open
+  private String currentName;
+
+  /**
+   * Creates a writer that prints the metrics into the 'out' parameter.
+   */
+  public JsonMetricsWriter(OutputStream out) throws IOException {
+    generator = JSON_FACTORY.createJsonGenerator(out, JsonEncoding.UTF8);
+    generator.writeStartObject();
+  }
+
+  @Override
+  public void counter(String name, String help, double value, String... labels) throws IOException {
+    startSample(name, labels);
+    generator.writeNumberField("value", value);
+    generator.writeEndObject();
+  }
+
+  @Override
+  public void gauge(String name, String help, double value, String... labels) throws IOException {
+    counter(name, help, value, labels);
+  }
+
+  @Override
+  public void summary(String name, String help, LatencyHistogram.Snapshot snapshot, double scale, String... labels)
+    throws IOException {
+    startSample(name, labels);
+    generator.writeNumberField("count", snapshot.getCount());
+    generator.writeNumberField("sum", snapshot.getSum() * scale);
+    generator.writeObjectFieldStart("quantiles");
+    for (double quantile : MetricsRegistry.QUANTILES) {
+      generator.writeNumberField(Double.toString(quantile), snapshot.getValue(quantile) * scale);
+    }
+    generator.writeEndObject();
+    generator.writeEndObject();
+  }
+
+  @Override
+  public void close() throws IOException {
+    if (currentName != null) {
+      generator.writeEndArray();
+    }
+    generator.writeEndObject();
+    generator.flush();
+  }
+
+  /**
+   * Opens the array of the metric if it's a new one and starts a sample object with its labels.
+   */
+  private void startSample(String name, String... labels) throws IOException {
+    if (!name.equals(currentName)) {
+      if (currentName != null) {
+        generator.writeEndArray();
+      }
+      currentName = name;
+      generator.writeArrayFieldStart(name);
+    }
+    generator.writeStartObject();
+    if (labels.length > 0) {
+      generator.writeObjectFieldStart("labels");
+      for (int i = 0; i + 1 < labels.length; i += 2) {
+        generator.writeStringField(labels[i], labels[i + 1]);
+      }
+      generator.writeEndObject();
+    }
+  }
+}
@@ -0,0 +1,134 @@
+package org.gbif.jetty.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free histogram of non-negative long values, e.g. latencies in milliseconds.
+ * Values are counted in log-linear buckets: exact buckets for values lower than 32 and 16 buckets per power of two
+ * above it, which bounds the relative error of the percentiles to 1/16.
+ * Recording a value doesn't allocate memory, it only increments an AtomicLongArray element and two LongAdders.
+ */
+public class LatencyHistogram {
+
+  //Values lower than this limit have their own bucket
+  private static final int EXACT_BUCKETS = 32;
+  //Number of buckets in each power of two above EXACT_BUCKETS
+  private static final int SUB_BUCKETS = 16;
+  private static final int SUB_BUCKET_BITS = 4;
+  //Buckets needed to cover all the positive long values
+  private static final int BUCKETS = EXACT_BUCKETS + (63 - SUB_BUCKET_BITS - 1) * SUB_BUCKETS;
+
+  private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+  private final LongAdder count = new LongAdder();
+  private final LongAdder sum = new LongAdder();
+
+  /**
+   * Records a value, negative values are counted as 0.
+   */
+  public void record(long value) {
+    final long v = Math.max(0L, value);
+    counts.incrementAndGet(bucketIndex(v));
+    count.increment();
+    sum.add(v);
+  }
+
+  /**
+   * Takes a point in time copy of the histogram.
+   * The copy isn't atomic, values recorded while the copy is taken might be partially reflected.
+   */
+  public Snapshot snapshot() {
+    final long[] bucketCounts = new long[BUCKETS];
+    long total = 0L;
+    for (int i = 0; i < BUCKETS; i++) {
+      bucketCounts[i] = counts.get(i);
+      total += bucketCounts[i];
+    }
+    return new Snapshot(bucketCounts, total, sum.sum());
+  }
+
+  /**
+   * Number of recorded values.
+   */
+  public long getCount() {
+    return count.sum();
+  }
+
+  /**
+   * Index of the bucket that counts a non-negative value.
+   */
+  static int bucketIndex(long value) {
+    if (value < EXACT_BUCKETS) {
+      return (int) value;
+    }
+    final int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+    return EXACT_BUCKETS + (shift - 1) * SUB_BUCKETS + (int) ((value >>> shift) - SUB_BUCKETS);
+  }
+
+  /**
+   * Highest value counted by a bucket.
+   */
+  static long bucketUpperBound(int index) {
+    if (index < EXACT_BUCKETS) {
+      return index;
+    }
+    final int shift = (index - EXACT_BUCKETS) / SUB_BUCKETS + 1;
+    final long mantissa = (index - EXACT_BUCKETS) % SUB_BUCKETS + SUB_BUCKETS;
+    return ((mantissa + 1) << shift) - 1;
+  }
+
+  /**
+   * Immutable copy of the histogram counts.
+   */
+  public static class Snapshot {
+
+    private final long[] bucketCounts;
+    private final long count;
+    private final long sum;
+
+    private Snapshot(long[] bucketCounts, long count, long sum) {
+      this.bucketCounts = bucketCounts;
+      this.count = count;
+      this.sum = sum;
+    }
+
+    public long getCount() {
+      return count;
+    }
+
+    public long getSum() {
+      return sum;
+    }
+
+    /**
+     * Value below which the given fraction (0..1) of the recorded values fall, 0 if the snapshot is empty.
+     */
+    public long getValue(double quantile) {
+      if (count == 0) {
+        return 0L;
+      }
+      final long rank = Math.max(1L, (long) Math.ceil(quantile * count));
+      long accumulated = 0L;
+      for (int i = 0; i < bucketCounts.length; i++) {
+        accumulated += bucketCounts[i];
+        if (accumulated >= rank) {
+          return bucketUpperBound(i);
+        }
+      }
+      return bucketUpperBound(bucketCounts.length - 1);
+    }
+
+    /**
+     * Values recorded between a previous snapshot and this one.
+     */
+    public Snapshot since(Snapshot previous) {
+      final long[] delta = new long[bucketCounts.length];
+      long total = 0L;
+      for (int i = 0; i < delta.length; i++) {
+        delta[i] = Math.max(0L, bucketCounts[i] - previous.bucketCounts[i]);
+        total += delta[i];
+      }
+      return new Snapshot(delta, total, Math.max(0L, sum - previous.sum));
+    }
+  }
+}
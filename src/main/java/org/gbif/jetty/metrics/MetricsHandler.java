@@ -0,0 +1,48 @@
+package org.gbif.jetty.metrics;
+
+import java.io.IOException;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.eclipse.jetty.http.HttpStatus;
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.handler.HandlerWrapper;
+
+/**
+ * Admin handler that exposes the server metrics in the Prometheus text format at "/metrics" and as JSON at
+ * "/metrics.json".
+ */
+public class MetricsHandler extends HandlerWrapper {
+
+  public static final String METRICS_CONTEXT = "/metrics";
+  public static final String METRICS_JSON_CONTEXT = "/metrics.json";
+
+  private final MetricsRegistry registry;
+
+  /**
+   * Creates a handler that reports the metrics of the registry parameter.
+   */
+  public MetricsHandler(MetricsRegistry registry) {
+    this.registry = registry;
+  }
+
+  @Override
+  public void handle(
+    String target, Request baseRequest, HttpServletRequest request, HttpServletResponse response
+  ) throws IOException, ServletException {
+    if (METRICS_CONTEXT.equals(target)) {
+      baseRequest.setHandled(true);
+      response.setStatus(HttpStatus.OK_200);
+      response.setContentType(PrometheusMetricsWriter.CONTENT_TYPE);
+      registry.report(new PrometheusMetricsWriter(response.getWriter()));
+    } else if (METRICS_JSON_CONTEXT.equals(target)) {
+      baseRequest.setHandled(true);
+      response.setStatus(HttpStatus.OK_200);
+      response.setContentType(JsonMetricsWriter.CONTENT_TYPE);
+      registry.report(new JsonMetricsWriter(response.getOutputStream()));
+    } else {
+      super.handle(target, baseRequest, request, response);
+    }
+  }
+}
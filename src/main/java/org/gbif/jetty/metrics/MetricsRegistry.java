@@ -0,0 +1,35 @@
+package org.gbif.jetty.metrics;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Holds the MetricsSources of a server, components register themselves while the server is built.
+ */
+public class MetricsRegistry {
+
+  /**
+   * Quantiles reported by the summaries.
+   */
+  public static final double[] QUANTILES = {0.5, 0.9, 0.99, 0.999};
+
+  private final List<MetricsSource> sources = new CopyOnWriteArrayList<MetricsSource>();
+
+  /**
+   * Adds a source to the registry.
+   */
+  public void register(MetricsSource source) {
+    sources.add(source);
+  }
+
+  /**
+   * Writes the metrics of all the registered sources and closes the writer.
+   */
+  public void report(MetricsWriter writer) throws IOException {
+    for (MetricsSource source : sources) {
+      source.report(writer);
+    }
+    writer.close();
+  }
+}
@@ -0,0 +1,15 @@
+package org.gbif.jetty.metrics;
+
+import java.io.IOException;
+
+/**
+ * Component that reports its metrics when the server metrics are requested.
+ */
+public interface MetricsSource {
+
+  /**
+   * Writes the current value of the metrics of this source.
+   * The samples of a metric must be written consecutively.
+   */
+  void report(MetricsWriter writer) throws IOException;
+}
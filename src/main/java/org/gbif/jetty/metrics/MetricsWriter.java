@@ -0,0 +1,32 @@
+package org.gbif.jetty.metrics;
+
+import java.io.IOException;
+
+/**
+ * Output format of the metrics reported by the MetricsSources.
+ * Labels are passed as consecutive name and value pairs.
+ */
+public interface MetricsWriter {
+
+  /**
+   * Writes a monotonically increasing value.
+   */
+  void counter(String name, String help, double value, String... labels) throws IOException;
+
+  /**
+   * Writes a value that can go up and down.
+   */
+  void gauge(String name, String help, double value, String... labels) throws IOException;
+
+  /**
+   * Writes the count, sum and percentiles of a histogram snapshot, values are multiplied by the scale factor, e.g. to
+   * convert milliseconds to seconds.
+   */
+  void summary(String name, String help, LatencyHistogram.Snapshot snapshot, double scale, String... labels)
+    throws IOException;
+
+  /**
+   * Completes the output.
+   */
+  void close() throws IOException;
+}
@@ -0,0 +1,95 @@
+package org.gbif.jetty.metrics;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Writes the metrics using the Prometheus text exposition format (version 0.0.4).
+ */
+public class PrometheusMetricsWriter implements MetricsWriter {
+
+  public static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+  private final Writer out;
+
+  //Name of the last metric written, HELP and TYPE lines are written once per metric
+  private String currentName;
+
+  /**
+   * Creates a writer that prints the metrics into the 'out' parameter.
+   */
+  public PrometheusMetricsWriter(Writer out) {
+    this.out = out;
+  }
+
+  @Override
+  public void counter(String name, String help, double value, String... labels) throws IOException {
+    header(name, help, "counter");
+    sample(name, value, labels);
+  }
+
+  @Override
+  public void gauge(String name, String help, double value, String... labels) throws IOException {
+    header(name, help, "gauge");
+    sample(name, value, labels);
+  }
+
+  @Override
+  public void summary(String name, String help, LatencyHistogram.Snapshot snapshot, double scale, String... labels)
+    throws IOException {
+    header(name, help, "summary");
+    final String[] quantileLabels = new String[labels.length + 2];
+    System.arraycopy(labels, 0, quantileLabels, 0, labels.length);
+    quantileLabels[labels.length] = "quantile";
+    for (double quantile : MetricsRegistry.QUANTILES) {
+      quantileLabels[labels.length + 1] = Double.toString(quantile);
+      sample(name, snapshot.getValue(quantile) * scale, quantileLabels);
+    }
+    sample(name + "_sum", snapshot.getSum() * scale, labels);
+    sample(name + "_count", snapshot.getCount(), labels);
+  }
+
+  @Override
+  public void close() throws IOException {
+    out.flush();
+  }
+
+  /**
+   * Writes the HELP and TYPE lines of a metric the first time one of its samples is written.
+   */
+  private void header(String name, String help, String type) throws IOException {
+    if (!name.equals(currentName)) {
+      currentName = name;
+      out.write("# HELP " + name + ' ' + help + '\n');
+      out.write("# TYPE " + name + ' ' + type + '\n');
+    }
+  }
+
+  /**
+   * Writes a sample line: name{label="value",...} value.
+   */
+  private void sample(String name, double value, String... labels) throws IOException {
+    out.write(name);
+    if (labels.length > 0) {
+      out.write('{');
+      for (int i = 0; i + 1 < labels.length; i += 2) {
+        if (i > 0) {
+          out.write(',');
+        }
+        out.write(labels[i] + "=\"" + escape(labels[i + 1]) + '"');
+      }
+      out.write('}');
+    }
+    out.write(' ');
+    out.write(value == Math.rint(value) && !Double.isInfinite(value) ? Long.toString((long) value)
+                : Double.toString(value));
+    out.write('\n');
+  }
+
+  /**
+   * Escapes the characters not allowed in label values.
+   */
+  private static String escape(String labelValue) {
+    return labelValue.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+  }
+}
@@ -0,0 +1,61 @@
+package org.gbif.jetty.metrics;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.handler.StatisticsHandler;
+
+/**
+ * StatisticsHandler that also records the latency distribution of the requests and the number of responses per
+ * status code.
+ * Latencies are measured in milliseconds from the time the request was received until it's completed, for
+ * asynchronous requests as well.
+ */
+public class RequestMetricsHandler extends StatisticsHandler implements MetricsSource {
+
+  private static final int MAX_STATUS = 600;
+
+  private final LatencyHistogram latencies = new LatencyHistogram();
+
+  private final AtomicLongArray statusCounts = new AtomicLongArray(MAX_STATUS);
+
+  /**
+   * Called once per completed request, synchronous or asynchronous.
+   */
+  @Override
+  protected void updateResponse(Request request) {
+    super.updateResponse(request);
+    latencies.record(System.currentTimeMillis() - request.getTimeStamp());
+    final int status = request.isHandled() ? request.getResponse().getStatus() : 404;
+    if (status > 0 && status < MAX_STATUS) {
+      statusCounts.incrementAndGet(status);
+    }
+  }
+
+  /**
+   * Latencies, in milliseconds, of the completed requests.
+   */
+  public LatencyHistogram getLatencies() {
+    return latencies;
+  }
+
+  @Override
+  public void report(MetricsWriter writer) throws IOException {
+    writer.counter("jetty_requests_total", "Number of requests received", getRequests());
+    writer.gauge("jetty_requests_active", "Number of requests being handled", getRequestsActive());
+    writer.gauge("jetty_requests_active_max", "Maximum number of requests handled at the same time",
+                 getRequestsActiveMax());
+    writer.gauge("jetty_async_requests_waiting", "Number of suspended asynchronous requests",
+                 getAsyncRequestsWaiting());
+    for (int status = 0; status < MAX_STATUS; status++) {
+      final long count = statusCounts.get(status);
+      if (count > 0) {
+        writer.counter("jetty_responses_total", "Number of responses by status code", count,
+                       "status", Integer.toString(status));
+      }
+    }
+    writer.counter("jetty_responses_bytes_total", "Number of bytes sent in responses", getResponsesBytesTotal());
+    writer.summary("jetty_request_duration_seconds", "Time to complete the requests", latencies.snapshot(), 0.001);
+  }
+}
@@ -0,0 +1,61 @@
+package org.gbif.jetty.metrics;
+
+import java.io.IOException;
+import java.util.Map;
+
+import com.google.common.collect.ImmutableMap;
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
+import org.eclipse.jetty.util.thread.ThreadPool;
+
+/**
+ * Reports the size, usage and queue depth of the server thread pools.
+ * Only QueuedThreadPools report the queue depth and utilisation.
+ */
+public class ThreadPoolMetrics implements MetricsSource {
+
+  //Thread pools by name
+  private final Map<String, ThreadPool> threadPools;
+
+  /**
+   * Creates a source that reports the thread pools of the map, the keys are used as the 'pool' label.
+   */
+  public ThreadPoolMetrics(Map<String, ThreadPool> threadPools) {
+    this.threadPools = ImmutableMap.copyOf(threadPools);
+  }
+
+  @Override
+  public void report(MetricsWriter writer) throws IOException {
+    for (Map.Entry<String, ThreadPool> entry : threadPools.entrySet()) {
+      writer.gauge("jetty_threads", "Number of threads", entry.getValue().getThreads(), "pool", entry.getKey());
+    }
+    for (Map.Entry<String, ThreadPool> entry : threadPools.entrySet()) {
+      writer.gauge("jetty_threads_idle", "Number of idle threads", entry.getValue().getIdleThreads(),
+                   "pool", entry.getKey());
+    }
+    for (Map.Entry<String, ThreadPool> entry : threadPools.entrySet()) {
+      if (entry.getValue() instanceof QueuedThreadPool) {
+        writer.gauge("jetty_threads_max", "Maximum number of threads",
+                     ((QueuedThreadPool) entry.getValue()).getMaxThreads(), "pool", entry.getKey());
+      }
+    }
+    for (Map.Entry<String, ThreadPool> entry : threadPools.entrySet()) {
+      if (entry.getValue() instanceof QueuedThreadPool) {
+        writer.gauge("jetty_threads_utilisation", "Busy threads divided by the maximum number of threads",
+                     utilisation((QueuedThreadPool) entry.getValue()), "pool", entry.getKey());
+      }
+    }
+    for (Map.Entry<String, ThreadPool> entry : threadPools.entrySet()) {
+      if (entry.getValue() instanceof QueuedThreadPool) {
+        writer.gauge("jetty_threads_queue_size", "Number of jobs waiting for a thread",
+                     ((QueuedThreadPool) entry.getValue()).getQueueSize(), "pool", entry.getKey());
+      }
+    }
+  }
+
+  /**
+   * Busy threads divided by the maximum number of threads of the pool.
+   */
+  public static double utilisation(QueuedThreadPool threadPool) {
+    return threadPool.getMaxThreads() > 0 ? (double) threadPool.getBusyThreads() / threadPool.getMaxThreads() : 0d;
+  }
+}
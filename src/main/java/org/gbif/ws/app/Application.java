@@ -1,7 +1,9 @@
 package org.gbif.ws.app;
 
+import org.gbif.jetty.JettyConfiguration;
 import org.gbif.jetty.ServerFactory;
 import org.gbif.discovery.conf.ServiceConfiguration;
+import org.gbif.ws.discovery.conf.DiscoveryConfiguration;
 
 import com.beust.jcommander.JCommander;
 import com.beust.jcommander.ParameterException;
@@ -35,8 +37,14 @@ public class Application {
   public static void main(String[] args) {
     LOG.info("Starting the Jetty server");
     try {
-      final ServiceConfiguration configuration = parseConfiguration(args);
-      final Server server = new ServerFactory().build(configuration);
+      final ServiceConfiguration configuration = new ServiceConfiguration();
+      final JettyConfiguration jettyConfiguration = new JettyConfiguration();
+      final DiscoveryConfiguration discoveryConfiguration = new DiscoveryConfiguration();
+      parseConfiguration(args, configuration, jettyConfiguration, discoveryConfiguration);
+      final ServerFactory serverFactory = new ServerFactory();
+      serverFactory.setJettyConfiguration(jettyConfiguration);
+      serverFactory.setDiscoveryConfiguration(discoveryConfiguration);
+      final Server server = serverFactory.build(configuration);
       new ShutdownHolder(server);
       registerConfVariable(configuration.getConf());
       server.start();
@@ -49,14 +57,15 @@ public class Application {
   }
 
   /**
-   * Parses the list of arguments into a configuration class.
+   * Parses the list of arguments into the configuration classes.
    */
-  private static ServiceConfiguration parseConfiguration(String[] args) {
-    ServiceConfiguration configuration = new ServiceConfiguration();
-    JCommander jCommander = new JCommander(configuration);
+  private static void parseConfiguration(String[] args, Object... configurations) {
+    JCommander jCommander = new JCommander();
+    for (Object configuration : configurations) {
+      jCommander.addObject(configuration);
+    }
     try {
       jCommander.parse(args);
-      return configuration;
     } catch (ParameterException ex) {
       jCommander.usage();
       throw Throwables.propagate(ex);
@@ -0,0 +1,139 @@
+package org.gbif.ws.app;
+
+import org.gbif.discovery.conf.ServiceStatus;
+import org.gbif.jetty.HttpConnectorFactory;
+import org.gbif.jetty.metrics.RequestMetricsHandler;
+import org.gbif.ws.discovery.lifecycle.DiscoveryLifeCycle;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.eclipse.jetty.server.Connector;
+import org.eclipse.jetty.server.Server;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Drains a Jetty server before it's stopped, so in-flight requests aren't cut off.
+ * The drain sequence is:
+ * - the service is marked as STOPPING in the discovery service, if the server is discoverable.
+ * - waits the propagation delay, so the clients stop sending requests to this instance.
+ * - the application and sidecar connectors stop accepting new connections.
+ * - waits until there are no active requests or the drain timeout expires, reporting the progress periodically.
+ * The instance is registered as a bean of the server by the ServerFactory.
+ */
+public class GracefulDrain {
+
+  private static final Logger LOG = LoggerFactory.getLogger(GracefulDrain.class);
+
+  //Interval between progress reports
+  private static final long PROGRESS_INTERVAL = 1000L;
+
+  //Poll interval of the active requests
+  private static final long POLL_INTERVAL = 100L;
+
+  private final Server server;
+
+  //Time to wait for the STOPPING status to reach the discovery clients
+  private final long propagationDelay;
+
+  //Maximum time to wait for the active requests to complete
+  private final long drainTimeout;
+
+  private final AtomicBoolean draining = new AtomicBoolean(false);
+
+  private final CountDownLatch drained = new CountDownLatch(1);
+
+  /**
+   * Creates a drain process for the server, times are in milliseconds.
+   */
+  public GracefulDrain(Server server, long propagationDelay, long drainTimeout) {
+    this.server = server;
+    this.propagationDelay = propagationDelay;
+    this.drainTimeout = drainTimeout;
+  }
+
+  /**
+   * True once the drain process has started, the instance must not receive new traffic.
+   */
+  public boolean isDraining() {
+    return draining.get();
+  }
+
+  /**
+   * Executes the drain sequence.
+   * If the drain has been started by another thread, this call waits until it finishes.
+   */
+  public void drain() throws InterruptedException {
+    if (!draining.compareAndSet(false, true)) {
+      drained.await();
+      return;
+    }
+    try {
+      LOG.info("Draining Jetty");
+      markStopping();
+      if (propagationDelay > 0) {
+        LOG.info("Waiting {} ms for the STOPPING status to propagate", propagationDelay);
+        Thread.sleep(propagationDelay);
+      }
+      stopAccepting();
+      awaitActiveRequests();
+    } finally {
+      drained.countDown();
+    }
+  }
+
+  /**
+   * Marks the service as STOPPING in the discovery service.
+   */
+  private void markStopping() {
+    final DiscoveryLifeCycle discoveryLifeCycle = server.getBean(DiscoveryLifeCycle.class);
+    if (discoveryLifeCycle != null) {
+      try {
+        discoveryLifeCycle.updateServiceStatus(ServiceStatus.STOPPING);
+      } catch (Exception ex) {
+        LOG.warn("Unable to mark the service as STOPPING", ex);
+      }
+    }
+  }
+
+  /**
+   * Closes the listening sockets of the application and sidecar connectors, established connections are kept open.
+   */
+  private void stopAccepting() {
+    for (Connector connector : server.getConnectors()) {
+      if (HttpConnectorFactory.APP_CONNECTOR_NAME.equals(connector.getName())
+          || HttpConnectorFactory.SIDECAR_CONNECTOR_NAME.equals(connector.getName())) {
+        connector.shutdown();
+        LOG.info("Connector {} doesn't accept new connections", connector.getName());
+      }
+    }
+  }
+
+  /**
+   * Waits until all the active requests complete or the drain timeout expires.
+   */
+  private void awaitActiveRequests() throws InterruptedException {
+    final RequestMetricsHandler requestMetrics = server.getChildHandlerByClass(RequestMetricsHandler.class);
+    if (requestMetrics == null) {
+      return;
+    }
+    final long deadline = System.currentTimeMillis() + drainTimeout;
+    long nextReport = 0L;
+    int active = requestMetrics.getRequestsActive();
+    while (active > 0 && System.currentTimeMillis() < deadline) {
+      if (System.currentTimeMillis() >= nextReport) {
+        LOG.info("Waiting for {} active requests, {} ms left", active, deadline - System.currentTimeMillis());
+        nextReport = System.currentTimeMillis() + PROGRESS_INTERVAL;
+      }
+      TimeUnit.MILLISECONDS.sleep(POLL_INTERVAL);
+      active = requestMetrics.getRequestsActive();
+    }
+    if (active > 0) {
+      LOG.warn("Drain timeout expired, {} requests will be interrupted", active);
+    } else {
+      LOG.info("All the active requests have completed");
+    }
+  }
+}
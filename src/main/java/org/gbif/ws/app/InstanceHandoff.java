@@ -0,0 +1,140 @@
+package org.gbif.ws.app;
+
+import org.gbif.jetty.ContextFactory;
+import org.gbif.jetty.WarmUp;
+import org.gbif.ws.discovery.lifecycle.DiscoveryLifeCycle;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+
+import com.google.common.base.Preconditions;
+import com.google.common.net.HostAndPort;
+import org.eclipse.jetty.http.HttpStatus;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.util.component.AbstractLifeCycle;
+import org.eclipse.jetty.util.component.LifeCycle;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Takes over the traffic of the instance that this one replaces, the predecessor, during a rolling restart.
+ * Both instances listen on the same application port at the same time, with SO_REUSEPORT or a listening socket
+ * inherited from the process supervisor, so connections are never refused. Once this instance is ready the
+ * predecessor is asked to stop through its admin /stop endpoint, and it drains its requests before exiting.
+ * This instance is ready when the server has started and warmed up or, if it's discoverable, once it's published as
+ * RUNNING by the DiscoveryLifeCycle, so the service capacity never drops during the rollout.
+ * The stop request runs in a separate thread and a predecessor that isn't running is ignored.
+ */
+public class InstanceHandoff extends AbstractLifeCycle.AbstractLifeCycleListener {
+
+  private static final Logger LOG = LoggerFactory.getLogger(InstanceHandoff.class);
+
+  //Connect and read timeout of the stop request
+  private static final int STOP_REQUEST_TIMEOUT = 5000;
+
+  //Admin address of the predecessor
+  private final HostAndPort predecessor;
+
+  //Stop secret shared by both instances
+  private final String secret;
+
+  //True if the predecessor must be stopped once the service is RUNNING
+  private boolean discoverable;
+
+  /**
+   * Creates a handoff from the instance with the admin address predecessor, in the format host:port, that is stopped
+   * using the stop secret. Both instances run in the same host, so the predecessor can't use this instance adminPort.
+   */
+  public InstanceHandoff(String predecessor, int adminPort, String secret) {
+    this.predecessor = HostAndPort.fromString(predecessor);
+    Preconditions.checkArgument(this.predecessor.hasPort(), "The predecessor address must have a port: %s",
+                                predecessor);
+    Preconditions.checkArgument(this.predecessor.getPort() != adminPort,
+                                "The predecessor must use a different admin port: %s", predecessor);
+    this.secret = Preconditions.checkNotNull(secret, "A stop secret is required to stop the predecessor");
+  }
+
+  /**
+   * If the server is discoverable, the predecessor is stopped once the service is published as RUNNING.
+   */
+  @Override
+  public void lifeCycleStarting(LifeCycle event) {
+    if (event instanceof Server) {
+      final DiscoveryLifeCycle discoveryLifeCycle = ((Server) event).getBean(DiscoveryLifeCycle.class);
+      if (discoveryLifeCycle != null) {
+        discoverable = true;
+        discoveryLifeCycle.addRunningListener(new Runnable() {
+          @Override
+          public void run() {
+            stopPredecessor();
+          }
+        });
+      }
+    }
+  }
+
+  /**
+   * If the server isn't discoverable, the predecessor is stopped once the server has started and, if it has a WarmUp,
+   * warmed up.
+   */
+  @Override
+  public void lifeCycleStarted(LifeCycle event) {
+    if (!discoverable) {
+      final WarmUp warmUp = ((Server) event).getBean(WarmUp.class);
+      if (warmUp == null) {
+        stopPredecessor();
+      } else {
+        warmUp.addCompletionListener(new Runnable() {
+          @Override
+          public void run() {
+            stopPredecessor();
+          }
+        });
+      }
+    }
+  }
+
+  /**
+   * Sends the stop request to the predecessor in a new thread.
+   */
+  private void stopPredecessor() {
+    final Thread stopThread = new Thread("predecessor-stop") {
+      @Override
+      public void run() {
+        sendStopRequest();
+      }
+    };
+    stopThread.setDaemon(true);
+    stopThread.start();
+  }
+
+  /**
+   * Calls the /stop endpoint of the predecessor, failures are logged: the predecessor may have already stopped.
+   */
+  private void sendStopRequest() {
+    try {
+      final URL stopUrl = new URL("http", predecessor.getHostText(), predecessor.getPort(),
+                                  ContextFactory.STOP_CONTEXT + "?secret="
+                                  + URLEncoder.encode(secret, StandardCharsets.UTF_8.name()));
+      LOG.info("Asking the predecessor instance {} to stop", predecessor);
+      final HttpURLConnection connection = (HttpURLConnection) stopUrl.openConnection();
+      connection.setConnectTimeout(STOP_REQUEST_TIMEOUT);
+      connection.setReadTimeout(STOP_REQUEST_TIMEOUT);
+      try {
+        final int status = connection.getResponseCode();
+        if (status == HttpStatus.ACCEPTED_202) {
+          LOG.info("The predecessor instance {} is draining", predecessor);
+        } else {
+          LOG.warn("The predecessor instance {} refused to stop, status {}", predecessor, status);
+        }
+      } finally {
+        connection.disconnect();
+      }
+    } catch (IOException ex) {
+      LOG.warn("Unable to stop the predecessor instance {}, it may not be running: {}", predecessor, ex.getMessage());
+    }
+  }
+}
@@ -16,11 +16,16 @@ public class ShutdownHolder {
 
   /**
    * Utility method that stops a Jetty server.
+   * If the server has a GracefulDrain bean, the server is drained before stopping it.
    */
   public static void stopServer(Server server) {
     if (server.isStarted() || server.isRunning()) {
       try {
         server.setStopAtShutdown(true);
+        final GracefulDrain gracefulDrain = server.getBean(GracefulDrain.class);
+        if (gracefulDrain != null) {
+          gracefulDrain.drain();
+        }
         LOG.info("Shutting down Jetty...");
         server.stop();
         LOG.info("Jetty has stopped.");
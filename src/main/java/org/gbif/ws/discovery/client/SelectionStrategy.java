@@ -0,0 +1,31 @@
+package org.gbif.ws.discovery.client;
+
+/**
+ * Strategies used by the ServiceLocator to choose one of the RUNNING instances of a service.
+ */
+public enum SelectionStrategy {
+
+  /**
+   * Instances are chosen in turns.
+   */
+  ROUND_ROBIN,
+
+  /**
+   * Instances are chosen randomly.
+   */
+  RANDOM,
+
+  /**
+   * The instance with less requests in progress is chosen, only requests acquired through ServiceLocator.acquire are
+   * counted.
+   */
+  LEAST_OUTSTANDING,
+
+  /**
+   * The less loaded of two random instances is chosen, the load is the one published by the LoadPublisher of the
+   * instance, its requests in progress, plus the requests acquired through ServiceLocator.acquire; an instance that
+   * published it isn't ready loses against any ready one. Comparing two random instances keeps a stale load from
+   * sending all the requests to the same instance.
+   */
+  LEAST_LOADED
+}
@@ -0,0 +1,340 @@
+package org.gbif.ws.discovery.client;
+
+import org.gbif.discovery.conf.ServiceDetails;
+import org.gbif.discovery.conf.ServiceStatus;
+import org.gbif.ws.discovery.conf.ServiceLoad;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.google.common.base.Throwables;
+import com.google.common.io.Closer;
+import org.apache.curator.framework.CuratorFramework;
+import org.apache.curator.framework.recipes.cache.ChildData;
+import org.apache.curator.framework.recipes.cache.PathChildrenCache;
+import org.apache.curator.framework.recipes.cache.PathChildrenCacheEvent;
+import org.apache.curator.framework.recipes.cache.PathChildrenCacheListener;
+import org.apache.curator.framework.state.ConnectionState;
+import org.apache.curator.utils.ZKPaths;
+import org.apache.curator.x.discovery.ServiceCache;
+import org.apache.curator.x.discovery.ServiceDiscovery;
+import org.apache.curator.x.discovery.ServiceDiscoveryBuilder;
+import org.apache.curator.x.discovery.ServiceInstance;
+import org.apache.curator.x.discovery.details.JsonInstanceSerializer;
+import org.apache.curator.x.discovery.details.ServiceCacheListener;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Client side of the discovery service: finds the RUNNING instances of the services registered by the
+ * DiscoveryLifeCycle.
+ * For each service name a Curator ServiceCache watches the Zookeeper nodes of its instances, on every change an
+ * immutable snapshot of the RUNNING instances is rebuilt. Lookups only read the current snapshot: they don't lock and
+ * don't access Zookeeper.
+ * With the LEAST_LOADED strategy the load nodes published by the instances, see ServiceLoad, are watched too, by a
+ * Curator PathChildrenCache per service name.
+ * The CuratorFramework client must use the same namespace (zkPath) as the registered services and it must be started.
+ */
+public class ServiceLocator implements Closeable {
+
+  private static final Logger LOG = LoggerFactory.getLogger(ServiceLocator.class);
+
+  private final SelectionStrategy strategy;
+  private final ServiceDiscovery<ServiceDetails> discovery;
+  //Client of the load namespace, only used by the LEAST_LOADED strategy
+  private final CuratorFramework loadClient;
+  private final ConcurrentMap<String, ServiceView> views = new ConcurrentHashMap<String, ServiceView>();
+  // Keeps references to the closable elements: discovery and service caches.
+  private final Closer closer = Closer.create();
+
+  /**
+   * Creates a locator that uses the strategy parameter to choose the instances.
+   */
+  public ServiceLocator(CuratorFramework curator, SelectionStrategy strategy) {
+    this.strategy = strategy;
+    discovery = closer.register(ServiceDiscoveryBuilder.builder(ServiceDetails.class)
+                                  .client(curator)
+                                  .basePath("/")
+                                  .serializer(new JsonInstanceSerializer<ServiceDetails>(ServiceDetails.class))
+                                  .build());
+    loadClient = strategy == SelectionStrategy.LEAST_LOADED
+      ? curator.usingNamespace(ServiceLoad.namespace(curator.getNamespace())) : null;
+  }
+
+  /**
+   * Starts the discovery service, must be called before any lookup.
+   */
+  public void start() {
+    try {
+      discovery.start();
+    } catch (Exception ex) {
+      throw Throwables.propagate(ex);
+    }
+  }
+
+  /**
+   * RUNNING instances of a service, empty if there are none.
+   * The first lookup of a service name loads its instances from Zookeeper and starts watching them.
+   */
+  public List<ServiceInstance<ServiceDetails>> getInstances(String name) {
+    return view(name).instances;
+  }
+
+  /**
+   * Chooses a RUNNING instance of a service using the selection strategy, null if there are none.
+   */
+  public ServiceInstance<ServiceDetails> select(String name) {
+    final Entry entry = view(name).select(strategy);
+    return entry == null ? null : entry.instance;
+  }
+
+  /**
+   * Chooses a RUNNING instance of a service and counts a request in progress on it until the returned Lease is closed,
+   * null if there are no instances.
+   * The requests in progress are used by the LEAST_OUTSTANDING strategy.
+   */
+  public Lease acquire(String name) {
+    final Entry entry = view(name).select(strategy);
+    if (entry == null) {
+      return null;
+    }
+    entry.outstanding.incrementAndGet();
+    return new Lease(entry);
+  }
+
+  /**
+   * Stops watching the services and closes the discovery service.
+   */
+  @Override
+  public void close() throws IOException {
+    closer.close();
+  }
+
+  /**
+   * Gets the view of a service, creating and starting it if it doesn't exist.
+   */
+  private ServiceView view(String name) {
+    final ServiceView view = views.get(name);
+    return view == null ? createView(name) : view;
+  }
+
+  /**
+   * Creates the view of a service, the creation is synchronized to start only one ServiceCache per name.
+   */
+  private synchronized ServiceView createView(String name) {
+    ServiceView view = views.get(name);
+    if (view == null) {
+      try {
+        final ServiceCache<ServiceDetails> cache = closer.register(discovery.serviceCacheBuilder().name(name).build());
+        view = new ServiceView(name, cache);
+        cache.addListener(view);
+        cache.start();
+        view.refresh();
+        if (loadClient != null) {
+          final PathChildrenCache loadCache =
+            closer.register(new PathChildrenCache(loadClient, ServiceLoad.path(name), true));
+          view.loadCache = loadCache;
+          loadCache.getListenable().addListener(view.loadListener);
+          loadCache.start(PathChildrenCache.StartMode.BUILD_INITIAL_CACHE);
+          view.refreshLoads();
+        }
+        views.put(name, view);
+        LOG.info("Watching the instances of service {}", name);
+      } catch (Exception ex) {
+        throw Throwables.propagate(ex);
+      }
+    }
+    return view;
+  }
+
+  /**
+   * Instance chosen by ServiceLocator.acquire, closing it marks the request as completed.
+   */
+  public static class Lease implements Closeable {
+
+    private final Entry entry;
+    private final AtomicBoolean released = new AtomicBoolean();
+
+    private Lease(Entry entry) {
+      this.entry = entry;
+    }
+
+    public ServiceInstance<ServiceDetails> getInstance() {
+      return entry.instance;
+    }
+
+    /**
+     * Marks the request as completed, subsequent calls do nothing.
+     */
+    @Override
+    public void close() {
+      if (released.compareAndSet(false, true)) {
+        entry.outstanding.decrementAndGet();
+      }
+    }
+  }
+
+  /**
+   * Service instance and its requests in progress.
+   */
+  private static class Entry {
+
+    private final ServiceInstance<ServiceDetails> instance;
+    private final AtomicInteger outstanding;
+
+    private Entry(ServiceInstance<ServiceDetails> instance, AtomicInteger outstanding) {
+      this.instance = instance;
+      this.outstanding = outstanding;
+    }
+  }
+
+  /**
+   * Snapshot of the RUNNING instances of a service, rebuilt every time its ServiceCache changes, and of their loads,
+   * rebuilt every time the load cache changes.
+   */
+  private static class ServiceView implements ServiceCacheListener {
+
+    private final String name;
+    private final ServiceCache<ServiceDetails> cache;
+    private final AtomicInteger nextIndex = new AtomicInteger();
+    private volatile Entry[] entries = new Entry[0];
+    private volatile List<ServiceInstance<ServiceDetails>> instances = Collections.emptyList();
+    //Published loads by instance id, only watched with the LEAST_LOADED strategy
+    private volatile Map<String, ServiceLoad> loads = Collections.emptyMap();
+    private PathChildrenCache loadCache;
+    private final PathChildrenCacheListener loadListener = new PathChildrenCacheListener() {
+      @Override
+      public void childEvent(CuratorFramework client, PathChildrenCacheEvent event) {
+        refreshLoads();
+      }
+    };
+
+    private ServiceView(String name, ServiceCache<ServiceDetails> cache) {
+      this.name = name;
+      this.cache = cache;
+    }
+
+    /**
+     * Chooses an entry of the current snapshot, null if it's empty.
+     */
+    private Entry select(SelectionStrategy strategy) {
+      final Entry[] current = entries;
+      if (current.length == 0) {
+        return null;
+      }
+      switch (strategy) {
+        case RANDOM:
+          return current[ThreadLocalRandom.current().nextInt(current.length)];
+        case LEAST_OUTSTANDING:
+          return leastOutstanding(current);
+        case LEAST_LOADED:
+          return leastLoaded(current, loads);
+        default:
+          return current[(nextIndex.getAndIncrement() & Integer.MAX_VALUE) % current.length];
+      }
+    }
+
+    /**
+     * Entry with less requests in progress, the scan starts at a random position so ties are spread.
+     */
+    private static Entry leastOutstanding(Entry[] current) {
+      final int start = ThreadLocalRandom.current().nextInt(current.length);
+      Entry selected = current[start];
+      for (int i = 1; i < current.length && selected.outstanding.get() > 0; i++) {
+        final Entry entry = current[(start + i) % current.length];
+        if (entry.outstanding.get() < selected.outstanding.get()) {
+          selected = entry;
+        }
+      }
+      return selected;
+    }
+
+    /**
+     * Less loaded of two different random entries, see SelectionStrategy.LEAST_LOADED.
+     */
+    private static Entry leastLoaded(Entry[] current, Map<String, ServiceLoad> currentLoads) {
+      final ThreadLocalRandom random = ThreadLocalRandom.current();
+      final int first = random.nextInt(current.length);
+      if (current.length == 1) {
+        return current[first];
+      }
+      final int second = (first + 1 + random.nextInt(current.length - 1)) % current.length;
+      return load(current[second], currentLoads) < load(current[first], currentLoads) ? current[second]
+        : current[first];
+    }
+
+    /**
+     * Load of an entry: its published requests in progress plus the acquired ones; Long.MAX_VALUE if it published it
+     * isn't ready. Instances without a published load only count the acquired requests.
+     */
+    private static long load(Entry entry, Map<String, ServiceLoad> currentLoads) {
+      final ServiceLoad load = currentLoads.get(entry.instance.getId());
+      if (load == null) {
+        return entry.outstanding.get();
+      }
+      return load.isReady() ? (long) load.getInFlightRequests() + entry.outstanding.get() : Long.MAX_VALUE;
+    }
+
+    /**
+     * Rebuilds the loads from the load cache, the nodes that can't be parsed are ignored.
+     */
+    private synchronized void refreshLoads() {
+      final Map<String, ServiceLoad> currentLoads = new HashMap<String, ServiceLoad>();
+      for (ChildData child : loadCache.getCurrentData()) {
+        if (child.getData() != null) {
+          try {
+            currentLoads.put(ZKPaths.getNodeFromPath(child.getPath()), ServiceLoad.fromJson(child.getData()));
+          } catch (IOException ex) {
+            LOG.debug("Invalid load of service {} in {}", name, child.getPath(), ex);
+          }
+        }
+      }
+      loads = Collections.unmodifiableMap(currentLoads);
+      LOG.debug("Service {} has {} instances with a published load", name, currentLoads.size());
+    }
+
+    /**
+     * Rebuilds the snapshot from the ServiceCache, the counters of the requests in progress are kept for the
+     * instances that remain.
+     */
+    private synchronized void refresh() {
+      final Map<String, AtomicInteger> counters = new HashMap<String, AtomicInteger>();
+      for (Entry entry : entries) {
+        counters.put(entry.instance.getId(), entry.outstanding);
+      }
+      final List<Entry> running = new ArrayList<Entry>();
+      final List<ServiceInstance<ServiceDetails>> runningInstances = new ArrayList<ServiceInstance<ServiceDetails>>();
+      for (ServiceInstance<ServiceDetails> instance : cache.getInstances()) {
+        if (instance.getPayload() != null && instance.getPayload().getStatus() == ServiceStatus.RUNNING) {
+          final AtomicInteger counter = counters.get(instance.getId());
+          running.add(new Entry(instance, counter == null ? new AtomicInteger() : counter));
+          runningInstances.add(instance);
+        }
+      }
+      instances = Collections.unmodifiableList(runningInstances);
+      entries = running.toArray(new Entry[running.size()]);
+      LOG.debug("Service {} has {} running instances", name, running.size());
+    }
+
+    @Override
+    public void cacheChanged() {
+      refresh();
+    }
+
+    @Override
+    public void stateChanged(CuratorFramework client, ConnectionState newState) {
+      //the snapshot is kept while the connection is lost, the cache notifies the changes once it's reconnected
+      LOG.debug("Service {} cache connection state {}", name, newState);
+    }
+  }
+}
@@ -0,0 +1,142 @@
+package org.gbif.ws.discovery.conf;
+
+import org.gbif.discovery.utils.MavenUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.util.Properties;
+
+import com.google.common.base.MoreObjects;
+import com.google.common.base.Strings;
+import com.google.common.base.Supplier;
+import com.google.common.base.Suppliers;
+import com.google.common.base.Throwables;
+import org.apache.maven.project.MavenProject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Maven coordinates (groupId, artifactId and version) of the running application, used to describe the service in the
+ * discovery service.
+ * The coordinates are resolved only once, from the first of these sources that provides all of them:
+ * - the classpath resource service-info.properties, with the keys groupId, artifactId and version, usually generated
+ *   at build time using Maven resource filtering.
+ * - the pom.xml file parsed by the MavenUtils class, the Maven model classes are only loaded in this case.
+ */
+public class ArtifactInfo {
+
+  private static final Logger LOG = LoggerFactory.getLogger(ArtifactInfo.class);
+
+  public static final String RESOURCE = "service-info.properties";
+
+  private static final String GROUP_ID = "groupId";
+  private static final String ARTIFACT_ID = "artifactId";
+  private static final String VERSION = "version";
+
+  private static final Supplier<ArtifactInfo> INSTANCE = Suppliers.memoize(new Supplier<ArtifactInfo>() {
+    @Override
+    public ArtifactInfo get() {
+      return resolve();
+    }
+  });
+
+  private final String groupId;
+  private final String artifactId;
+  private final String version;
+
+  public ArtifactInfo(String groupId, String artifactId, String version) {
+    this.groupId = groupId;
+    this.artifactId = artifactId;
+    this.version = version;
+  }
+
+  /**
+   * Coordinates of the running application, resolved on the first call and cached.
+   */
+  public static ArtifactInfo get() {
+    return INSTANCE.get();
+  }
+
+  public String getGroupId() {
+    return groupId;
+  }
+
+  public String getArtifactId() {
+    return artifactId;
+  }
+
+  public String getVersion() {
+    return version;
+  }
+
+  @Override
+  public String toString() {
+    return MoreObjects.toStringHelper(this)
+      .add(GROUP_ID, groupId)
+      .add(ARTIFACT_ID, artifactId)
+      .add(VERSION, version)
+      .toString();
+  }
+
+  /**
+   * Resolves the coordinates from the first source that provides them.
+   */
+  private static ArtifactInfo resolve() {
+    ArtifactInfo artifactInfo = fromResource();
+    if (artifactInfo == null) {
+      LOG.info("{} not found, reading the Maven pom.xml", RESOURCE);
+      try {
+        artifactInfo = MavenModel.fromPom();
+      } catch (NoClassDefFoundError ex) {
+        throw new IllegalStateException(RESOURCE + " not found and maven-core isn't in the classpath", ex);
+      }
+    }
+    LOG.info("Service artifact {}", artifactInfo);
+    return artifactInfo;
+  }
+
+  /**
+   * Reads the service-info.properties classpath resource, returns null if it doesn't exist or is incomplete.
+   */
+  private static ArtifactInfo fromResource() {
+    final URL resource = ArtifactInfo.class.getClassLoader().getResource(RESOURCE);
+    if (resource == null) {
+      return null;
+    }
+    try (InputStream inputStream = resource.openStream()) {
+      final Properties properties = new Properties();
+      properties.load(inputStream);
+      return complete(properties.getProperty(GROUP_ID), properties.getProperty(ARTIFACT_ID),
+                      properties.getProperty(VERSION));
+    } catch (IOException ex) {
+      LOG.warn("Error reading {}", resource, ex);
+      return null;
+    }
+  }
+
+  /**
+   * Returns an instance if all the coordinates are present, null otherwise.
+   */
+  private static ArtifactInfo complete(String groupId, String artifactId, String version) {
+    if (Strings.isNullOrEmpty(groupId) || Strings.isNullOrEmpty(artifactId) || Strings.isNullOrEmpty(version)) {
+      return null;
+    }
+    return new ArtifactInfo(groupId.trim(), artifactId.trim(), version.trim());
+  }
+
+  /**
+   * Isolates the references to the Maven model so its classes are only loaded when the pom.xml is parsed.
+   */
+  private static class MavenModel {
+
+    private static ArtifactInfo fromPom() {
+      try {
+        final MavenProject mavenProject = MavenUtils.getMavenProject();
+        return new ArtifactInfo(mavenProject.getGroupId(), mavenProject.getArtifactId(), mavenProject.getVersion());
+      } catch (Exception ex) {
+        throw Throwables.propagate(ex);
+      }
+    }
+  }
+}
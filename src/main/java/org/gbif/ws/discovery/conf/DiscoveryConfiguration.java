@@ -0,0 +1,116 @@
+package org.gbif.ws.discovery.conf;
+
+import com.beust.jcommander.Parameter;
+
+/**
+ * Command line configuration of the discovery registration process.
+ * It complements the Zookeeper settings of the ServiceConfiguration class, all the values are optional.
+ */
+public class DiscoveryConfiguration {
+
+  @Parameter(names = "-discoveryOptional",
+    description = "Serves traffic even if the service can't be registered in Zookeeper, registration is retried in "
+                  + "the background")
+  private boolean discoveryOptional;
+
+  @Parameter(names = "-registrationTimeout",
+    description = "Time in milliseconds the server start waits for the Zookeeper registration")
+  private long registrationTimeout = 30000L;
+
+  @Parameter(names = "-registrationRetryInterval",
+    description = "Time in milliseconds between Zookeeper registration attempts")
+  private long registrationRetryInterval = 5000L;
+
+  @Parameter(names = "-loadPublishInterval",
+    description = "Time in milliseconds between measures of the load published in Zookeeper, 0 disables it")
+  private long loadPublishInterval = 5000L;
+
+  @Parameter(names = "-zkSessionTimeout", description = "Zookeeper session timeout in milliseconds")
+  private int zkSessionTimeout = 60000;
+
+  @Parameter(names = "-zkConnectionTimeout", description = "Zookeeper connection timeout in milliseconds")
+  private int zkConnectionTimeout = 15000;
+
+  @Parameter(names = "-zkRetryBaseSleep",
+    description = "Initial time in milliseconds between retries of the Zookeeper operations, it grows exponentially")
+  private int zkRetryBaseSleep = 1000;
+
+  @Parameter(names = "-zkRetryMaxSleep",
+    description = "Maximum time in milliseconds between retries of the Zookeeper operations")
+  private int zkRetryMaxSleep = 30000;
+
+  @Parameter(names = "-zkRetryMaxRetries", description = "Maximum number of retries of the Zookeeper operations")
+  private int zkRetryMaxRetries = 3;
+
+  public boolean isDiscoveryOptional() {
+    return discoveryOptional;
+  }
+
+  public void setDiscoveryOptional(boolean discoveryOptional) {
+    this.discoveryOptional = discoveryOptional;
+  }
+
+  public long getRegistrationTimeout() {
+    return registrationTimeout;
+  }
+
+  public void setRegistrationTimeout(long registrationTimeout) {
+    this.registrationTimeout = registrationTimeout;
+  }
+
+  public long getRegistrationRetryInterval() {
+    return registrationRetryInterval;
+  }
+
+  public void setRegistrationRetryInterval(long registrationRetryInterval) {
+    this.registrationRetryInterval = registrationRetryInterval;
+  }
+
+  public long getLoadPublishInterval() {
+    return loadPublishInterval;
+  }
+
+  public void setLoadPublishInterval(long loadPublishInterval) {
+    this.loadPublishInterval = loadPublishInterval;
+  }
+
+  public int getZkSessionTimeout() {
+    return zkSessionTimeout;
+  }
+
+  public void setZkSessionTimeout(int zkSessionTimeout) {
+    this.zkSessionTimeout = zkSessionTimeout;
+  }
+
+  public int getZkConnectionTimeout() {
+    return zkConnectionTimeout;
+  }
+
+  public void setZkConnectionTimeout(int zkConnectionTimeout) {
+    this.zkConnectionTimeout = zkConnectionTimeout;
+  }
+
+  public int getZkRetryBaseSleep() {
+    return zkRetryBaseSleep;
+  }
+
+  public void setZkRetryBaseSleep(int zkRetryBaseSleep) {
+    this.zkRetryBaseSleep = zkRetryBaseSleep;
+  }
+
+  public int getZkRetryMaxSleep() {
+    return zkRetryMaxSleep;
+  }
+
+  public void setZkRetryMaxSleep(int zkRetryMaxSleep) {
+    this.zkRetryMaxSleep = zkRetryMaxSleep;
+  }
+
+  public int getZkRetryMaxRetries() {
+    return zkRetryMaxRetries;
+  }
+
+  public void setZkRetryMaxRetries(int zkRetryMaxRetries) {
+    this.zkRetryMaxRetries = zkRetryMaxRetries;
+  }
+}
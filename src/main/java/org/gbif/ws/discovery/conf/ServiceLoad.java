@@ -0,0 +1,132 @@
+package org.gbif.ws.discovery.conf;
+
+import java.io.IOException;
+
+import com.google.common.base.MoreObjects;
+import org.codehaus.jackson.annotate.JsonIgnoreProperties;
+import org.codehaus.jackson.map.ObjectMapper;
+
+/**
+ * Live load of a service instance, published by the DiscoveryLifeCycle next to the service registration.
+ * The ServiceDetails payload only changes on lifecycle transitions, the load is stored as JSON in an ephemeral node of
+ * a separate namespace: [zkPath]-load/[service name]/[instance id], so the registered services are not affected.
+ * The ServiceLocator reads it to choose the instances with the LEAST_LOADED strategy.
+ */
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class ServiceLoad {
+
+  //Suffix added to the discovery namespace to build the namespace of the load nodes
+  public static final String NAMESPACE_SUFFIX = "-load";
+  //Namespace of the load nodes if the discovery doesn't use a namespace
+  public static final String DEFAULT_NAMESPACE = "service-load";
+
+  private static final ObjectMapper MAPPER = new ObjectMapper();
+
+  private int inFlightRequests;
+  private double utilisation;
+  private long p99Latency;
+  private boolean ready;
+  private long timestamp;
+
+  /**
+   * Namespace of the load nodes of the services registered in the discovery namespace, which can be null or empty.
+   */
+  public static String namespace(String discoveryNamespace) {
+    return discoveryNamespace == null || discoveryNamespace.isEmpty() ? DEFAULT_NAMESPACE
+      : discoveryNamespace + NAMESPACE_SUFFIX;
+  }
+
+  /**
+   * Path of the parent node of the load nodes of a service, relative to the load namespace.
+   */
+  public static String path(String serviceName) {
+    return '/' + serviceName;
+  }
+
+  /**
+   * Path of the load node of a service instance, relative to the load namespace.
+   */
+  public static String path(String serviceName, String instanceId) {
+    return path(serviceName) + '/' + instanceId;
+  }
+
+  /**
+   * Parses the JSON content of a load node.
+   */
+  public static ServiceLoad fromJson(byte[] json) throws IOException {
+    return MAPPER.readValue(json, ServiceLoad.class);
+  }
+
+  /**
+   * JSON content of the load node.
+   */
+  public byte[] toJson() throws IOException {
+    return MAPPER.writeValueAsBytes(this);
+  }
+
+  /**
+   * Requests being processed by the instance.
+   */
+  public int getInFlightRequests() {
+    return inFlightRequests;
+  }
+
+  public void setInFlightRequests(int inFlightRequests) {
+    this.inFlightRequests = inFlightRequests;
+  }
+
+  /**
+   * Busy threads divided by the maximum number of threads of the server thread pool.
+   */
+  public double getUtilisation() {
+    return utilisation;
+  }
+
+  public void setUtilisation(double utilisation) {
+    this.utilisation = utilisation;
+  }
+
+  /**
+   * 99th percentile latency, in milliseconds, of the requests completed since the previous publication.
+   */
+  public long getP99Latency() {
+    return p99Latency;
+  }
+
+  public void setP99Latency(long p99Latency) {
+    this.p99Latency = p99Latency;
+  }
+
+  /**
+   * True if the instance accepts traffic: it's started and not draining.
+   */
+  public boolean isReady() {
+    return ready;
+  }
+
+  public void setReady(boolean ready) {
+    this.ready = ready;
+  }
+
+  /**
+   * Time in milliseconds when the load was measured.
+   */
+  public long getTimestamp() {
+    return timestamp;
+  }
+
+  public void setTimestamp(long timestamp) {
+    this.timestamp = timestamp;
+  }
+
+  @Override
+  public String toString() {
+    return MoreObjects.toStringHelper(this)
+      .add("inFlightRequests", inFlightRequests)
+      .add("utilisation", utilisation)
+      .add("p99Latency", p99Latency)
+      .add("ready", ready)
+      .add("timestamp", timestamp)
+      .toString();
+  }
+}
@@ -3,66 +3,173 @@ package org.gbif.ws.discovery.lifecycle;
 import org.gbif.discovery.conf.ServiceConfiguration;
 import org.gbif.discovery.conf.ServiceDetails;
 import org.gbif.discovery.conf.ServiceStatus;
-import org.gbif.discovery.utils.MavenUtils;
+import org.gbif.jetty.StartupReport;
+import org.gbif.jetty.WarmUp;
+import org.gbif.jetty.metrics.MetricsRegistry;
+import org.gbif.ws.discovery.conf.ArtifactInfo;
+import org.gbif.ws.discovery.conf.DiscoveryConfiguration;
 
-import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 import com.google.common.base.Throwables;
 import com.google.common.io.Closer;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import org.apache.curator.framework.CuratorFramework;
 import org.apache.curator.framework.CuratorFrameworkFactory;
+import org.apache.curator.framework.state.ConnectionState;
+import org.apache.curator.framework.state.ConnectionStateListener;
 import org.apache.curator.retry.ExponentialBackoffRetry;
+import org.apache.curator.utils.ZKPaths;
 import org.apache.curator.x.discovery.ServiceDiscovery;
 import org.apache.curator.x.discovery.ServiceDiscoveryBuilder;
 import org.apache.curator.x.discovery.ServiceInstance;
 import org.apache.curator.x.discovery.UriSpec;
 import org.apache.curator.x.discovery.details.JsonInstanceSerializer;
-import org.apache.maven.project.MavenProject;
+import org.eclipse.jetty.server.Server;
+import org.apache.zookeeper.data.Stat;
 import org.eclipse.jetty.util.component.LifeCycle;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
  * Listener that handles the registration process of the executing application into the Zookeeper discoveryService service.
+ * The registration runs in a background thread while Jetty starts, failed attempts are retried until the service is
+ * registered or stopped. The status RUNNING is published once both the server and the registration are ready.
+ * Unless the discovery is optional, the server start fails if the service isn't registered within the registration
+ * timeout.
+ * Once registered, the load of the server is published periodically by a LoadPublisher.
+ * If the Zookeeper session is lost the ServiceDiscovery registers the instance again once the connection is
+ * re-established, then the registration is verified and the load published again; the connection events and
+ * registration gaps are reported by the DiscoveryMetrics.
  */
 public class DiscoveryLifeCycle implements LifeCycle.Listener {
 
   private static final Logger LOG = LoggerFactory.getLogger(DiscoveryLifeCycle.class);
+  //Maximum time between the attempts to publish the RUNNING status
+  private static final long MAX_RUNNING_RETRY_DELAY = TimeUnit.MINUTES.toMillis(1L);
+  //Path of the services in the namespace of the Curator client
+  private static final String BASE_PATH = "/";
+  //First delay between the verifications of the registration after a reconnection, doubled on every attempt
+  private static final long VERIFICATION_RETRY_DELAY = 250L;
+  //Verifications before the instance is registered explicitly if the discovery service hasn't restored it
+  private static final int MAX_VERIFICATION_ATTEMPTS = 6;
   private final ServiceConfiguration configuration;
+  private final DiscoveryConfiguration discoveryConfiguration;
   private ServiceDiscovery<ServiceDetails> discoveryService;
   private CuratorFramework curatorClient;
-  private ServiceInstance<ServiceDetails> serviceInstance;
+  private volatile ServiceInstance<ServiceDetails> serviceInstance;
   // Keeps references to the closable elements: curatorClient and discoveryService.
   private final Closer closer = Closer.create();
 
+  //Runs the registration attempts and the load publisher
+  private ScheduledExecutorService registrationExecutor;
+  //Released when the service has been registered
+  private final CountDownLatch registeredLatch = new CountDownLatch(1);
+  private volatile boolean registered;
+  private volatile boolean serverStarted;
+  private volatile boolean runningPublished;
+  //Zookeeper session that owns the service instance node; only used by the registration thread
+  private long registeredSession;
+  //Reconnections verified so far, a verification retry stops once a newer reconnection starts its own; only used by
+  //the registration thread
+  private int verificationRound;
+  //Startup report of the server, if it has one
+  private StartupReport startupReport;
+  //Server whose load is published
+  private Server server;
+  private LoadPublisher loadPublisher;
+  private final DiscoveryMetrics metrics = new DiscoveryMetrics();
+  //Notified once the RUNNING status is published
+  private final List<Runnable> runningListeners = new ArrayList<Runnable>();
+
   /**
    * Creates an instance using the fields zkPath and zkHost of the configuration class.
    */
   public DiscoveryLifeCycle(ServiceConfiguration configuration) {
+    this(configuration, new DiscoveryConfiguration());
+  }
+
+  /**
+   * Creates an instance using the fields zkPath and zkHost of the configuration class and the registration settings of
+   * the discoveryConfiguration.
+   */
+  public DiscoveryLifeCycle(ServiceConfiguration configuration, DiscoveryConfiguration discoveryConfiguration) {
     this.configuration = configuration;
+    this.discoveryConfiguration = discoveryConfiguration;
   }
 
   /**
-   * Required services, curator client and discoveryService services, are instantiated while  the application is starting.
+   * Required services, curator client and discoveryService services, are instantiated and the service registration
+   * starts in background while the application is starting.
+   * The registration time is recorded in the StartupReport of the server, if it has one.
    */
   @Override
   public void lifeCycleStarting(LifeCycle event) {
+    if (event instanceof Server) {
+      server = (Server) event;
+      startupReport = server.getBean(StartupReport.class);
+      final MetricsRegistry metricsRegistry = server.getBean(MetricsRegistry.class);
+      if (metricsRegistry != null) {
+        metricsRegistry.register(metrics);
+      }
+    }
+    registrationExecutor = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+                                                                        .setNameFormat("discovery-registration")
+                                                                        .setDaemon(true)
+                                                                        .build());
     curatorClient = curator(configuration);
     LOG.info("Curator client started");
     discoveryService = discovery();
-    LOG.info("Discovery service created");
-    LOG.info("Registering service");
-    registerService(configuration);
-    LOG.info("Service registered {}", serviceInstance.toString());
+    try {
+      //the discovery service registers its services again on RECONNECTED
+      discoveryService.start();
+    } catch (Exception ex) {
+      throw Throwables.propagate(ex);
+    }
+    LOG.info("Discovery service started");
+    curatorClient.getConnectionStateListenable().addListener(new ConnectionStateListener() {
+      @Override
+      public void stateChanged(CuratorFramework client, ConnectionState newState) {
+        connectionStateChanged(newState);
+      }
+    });
+    registrationExecutor.submit(new Runnable() {
+      @Override
+      public void run() {
+        registerUntilSucceeded();
+      }
+    });
   }
 
   /**
-   * Once the application is started the service is registered in the discoveryService services.
+   * Once the application is started, and warmed up if the server has a WarmUp, the service is published as RUNNING,
+   * as soon as it's registered.
+   * If the discovery isn't optional, waits for the registration up to the registration timeout.
    */
   @Override
   public void lifeCycleStarted(LifeCycle event) {
-    updateServiceStatus(ServiceStatus.RUNNING);
-    LOG.info("Service registered");
+    final WarmUp warmUp = server == null ? null : server.getBean(WarmUp.class);
+    if (warmUp == null) {
+      serverStarted = true;
+    } else {
+      warmUp.addCompletionListener(new Runnable() {
+        @Override
+        public void run() {
+          serverStarted = true;
+          publishRunningIfReady();
+        }
+      });
+    }
+    if (!registered) {
+      awaitRegistration();
+    }
+    publishRunningIfReady();
   }
 
   /**
@@ -70,7 +177,8 @@ public class DiscoveryLifeCycle implements LifeCycle.Listener {
    */
   @Override
   public void lifeCycleFailure(LifeCycle event, Throwable cause) {
-    updateServiceStatus(ServiceStatus.FAILED);
+    stopRegistration();
+    publishStatusWhileStopping(ServiceStatus.FAILED);
     unRegisterService();
   }
 
@@ -79,7 +187,7 @@ public class DiscoveryLifeCycle implements LifeCycle.Listener {
    */
   @Override
   public void lifeCycleStopping(LifeCycle event) {
-    updateServiceStatus(ServiceStatus.STOPPING);
+    publishStatusWhileStopping(ServiceStatus.STOPPING);
   }
 
   /**
@@ -88,14 +196,295 @@ public class DiscoveryLifeCycle implements LifeCycle.Listener {
    */
   @Override
   public void lifeCycleStopped(LifeCycle event) {
-    updateServiceStatus(ServiceStatus.STOPPED);
+    stopRegistration();
+    publishStatusWhileStopping(ServiceStatus.STOPPED);
     unRegisterService();
     LOG.info("Discovery services have been stopped");
   }
 
+  /**
+   * True if the service instance is registered in Zookeeper.
+   */
+  public boolean isRegistered() {
+    return registered;
+  }
+
+  /**
+   * Runs the listener once the service is published as RUNNING, immediately if it's already published.
+   * Listeners run in the thread that publishes the status, so they must not block.
+   */
+  public synchronized void addRunningListener(Runnable listener) {
+    if (runningPublished) {
+      listener.run();
+    } else {
+      runningListeners.add(listener);
+    }
+  }
+
+  /**
+   * Zookeeper connection and registration metrics.
+   */
+  public DiscoveryMetrics getMetrics() {
+    return metrics;
+  }
+
+  /**
+   * Handles the changes of the Zookeeper connection, runs in the Curator event thread.
+   * Once the connection is suspended or lost the registration may disappear with the session: a registration gap
+   * starts. On RECONNECTED the discovery service registers the instance again, then the registration is verified.
+   */
+  private void connectionStateChanged(ConnectionState newState) {
+    LOG.info("Zookeeper connection state changed to {}", newState);
+    switch (newState) {
+      case SUSPENDED:
+        metrics.gapStarted();
+        break;
+      case LOST:
+        metrics.sessionLost();
+        metrics.gapStarted();
+        break;
+      case RECONNECTED:
+        metrics.reconnected();
+        scheduleVerification();
+        break;
+      default:
+        break;
+    }
+  }
+
+  /**
+   * Verifies the registration in the registration thread, so the Curator event thread isn't blocked.
+   * The discovery service restores the node in its own connection listener, whose order relative to this one isn't
+   * specified, so the verification is retried until the node is found.
+   */
+  private void scheduleVerification() {
+    if (registered && !registrationExecutor.isShutdown()) {
+      registrationExecutor.submit(new Runnable() {
+        @Override
+        public void run() {
+          verifyRegistration(++verificationRound, 0);
+        }
+      });
+    }
+  }
+
+  /**
+   * Verifies that the discovery service has restored the service instance node, in the current session, and publishes
+   * the load again.
+   * While the node is missing, or it belongs to an expired session, the verification is retried with an exponential
+   * backoff; the instance is only registered from here if it isn't restored after MAX_VERIFICATION_ATTEMPTS: an
+   * earlier registration could race the one of the discovery service, which deletes and creates the node again, and
+   * remove the live node for a while.
+   * If the node can't be read, e.g.: the connection is lost again, the verification is retried until a newer
+   * reconnection starts its own or the gap is closed.
+   */
+  private void verifyRegistration(int round, int attempt) {
+    if (round != verificationRound || !metrics.isInGap()) {
+      return;
+    }
+    try {
+      final long session = currentSession();
+      if (!isOwnedBy(session)) {
+        if (attempt + 1 < MAX_VERIFICATION_ATTEMPTS) {
+          scheduleVerificationRetry(round, attempt + 1);
+          return;
+        }
+        LOG.warn("Service instance not restored after reconnection, registering it {}", serviceInstance);
+        discoveryService.registerService(serviceInstance);
+      }
+      if (session != registeredSession) {
+        registeredSession = session;
+        metrics.reRegistered();
+        LOG.info("Service registered again {}", serviceInstance);
+      }
+      metrics.registered();
+      if (loadPublisher != null) {
+        loadPublisher.republish();
+      }
+    } catch (Exception ex) {
+      LOG.warn("Unable to verify the service registration, retrying", ex);
+      scheduleVerificationRetry(round, attempt + 1);
+    }
+  }
+
+  /**
+   * True if the service instance node exists and belongs to the session.
+   * After a session expiration the node of the old session can still exist for a while, until Zookeeper deletes it.
+   */
+  private boolean isOwnedBy(long session) throws Exception {
+    final Stat stat = curatorClient.checkExists()
+      .forPath(ZKPaths.makePath(ZKPaths.makePath(BASE_PATH, serviceInstance.getName()), serviceInstance.getId()));
+    return stat != null && stat.getEphemeralOwner() == session;
+  }
+
+  /**
+   * Id of the current Zookeeper session.
+   */
+  private long currentSession() throws Exception {
+    return curatorClient.getZookeeperClient().getZooKeeper().getSessionId();
+  }
+
+  /**
+   * Schedules a new verification of the registration, unless the registration has been stopped.
+   */
+  private void scheduleVerificationRetry(final int round, final int attempt) {
+    final long delay = Math.min(VERIFICATION_RETRY_DELAY << Math.min(attempt, 16), MAX_RUNNING_RETRY_DELAY);
+    try {
+      registrationExecutor.schedule(new Runnable() {
+        @Override
+        public void run() {
+          verifyRegistration(round, attempt);
+        }
+      }, delay, TimeUnit.MILLISECONDS);
+    } catch (RejectedExecutionException ex) {
+      LOG.debug("Registration stopped, the registration won't be verified", ex);
+    }
+  }
+
+  /**
+   * Tries to register the service until it succeeds or the registration thread is interrupted.
+   * Once registered, the load publisher starts and the RUNNING status is published if the server is ready, the
+   * RUNNING publication is retried on its own if it fails.
+   */
+  private void registerUntilSucceeded() {
+    final long start = System.nanoTime();
+    while (!registered && !Thread.currentThread().isInterrupted()) {
+      try {
+        LOG.info("Registering service");
+        registerService(configuration);
+        registeredSession = currentSession();
+        registered = true;
+      } catch (Exception ex) {
+        LOG.warn("Service registration failed, retrying in {} ms",
+                 discoveryConfiguration.getRegistrationRetryInterval(), ex);
+        try {
+          TimeUnit.MILLISECONDS.sleep(discoveryConfiguration.getRegistrationRetryInterval());
+        } catch (InterruptedException iex) {
+          Thread.currentThread().interrupt();
+        }
+      }
+    }
+    if (registered) {
+      metrics.registered();
+      registeredLatch.countDown();
+      LOG.info("Service registered {}", serviceInstance);
+      if (startupReport != null) {
+        startupReport.record("discovery registration", start);
+      }
+      scheduleLoadPublisher();
+      publishRunningIfReady();
+    }
+  }
+
+  /**
+   * Waits for the registration up to the registration timeout.
+   * Fails if the service couldn't be registered and the discovery isn't optional.
+   */
+  private void awaitRegistration() {
+    try {
+      if (!registeredLatch.await(discoveryConfiguration.getRegistrationTimeout(), TimeUnit.MILLISECONDS)) {
+        if (!discoveryConfiguration.isDiscoveryOptional()) {
+          throw new IllegalStateException("Service not registered in Zookeeper after "
+                                          + discoveryConfiguration.getRegistrationTimeout() + " ms");
+        }
+        LOG.warn("Service not registered yet, serving traffic while the registration is retried");
+      }
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+      throw Throwables.propagate(ex);
+    }
+  }
+
+  /**
+   * Publishes the RUNNING status once the server is started and the service is registered.
+   */
+  private void publishRunningIfReady() {
+    publishRunningIfReady(0);
+  }
+
+  /**
+   * Publishes the RUNNING status if ready, a failed publication is retried in the registration thread with an
+   * exponential backoff, so a transient Zookeeper error doesn't leave the instance STARTING.
+   */
+  private synchronized void publishRunningIfReady(int attempt) {
+    if (serverStarted && registered && !runningPublished) {
+      try {
+        updateServiceStatus(ServiceStatus.RUNNING);
+      } catch (Exception ex) {
+        scheduleRunningRetry(attempt + 1, ex);
+        return;
+      }
+      runningPublished = true;
+      LOG.info("Service published as RUNNING");
+      for (Runnable listener : runningListeners) {
+        listener.run();
+      }
+      runningListeners.clear();
+    }
+  }
+
+  /**
+   * Schedules a new attempt to publish the RUNNING status, unless the registration has been stopped.
+   */
+  private void scheduleRunningRetry(final int attempt, Exception cause) {
+    final long delay = Math.min(discoveryConfiguration.getRegistrationRetryInterval() << Math.min(attempt, 16),
+                                MAX_RUNNING_RETRY_DELAY);
+    LOG.warn("Unable to publish the RUNNING status, retrying in {} ms", delay, cause);
+    try {
+      registrationExecutor.schedule(new Runnable() {
+        @Override
+        public void run() {
+          publishRunningIfReady(attempt);
+        }
+      }, delay, TimeUnit.MILLISECONDS);
+    } catch (RejectedExecutionException ex) {
+      LOG.debug("Registration stopped, the RUNNING status won't be published", ex);
+    }
+  }
+
+  /**
+   * Publishes a status while the server is stopping or failing, a Zookeeper error is logged and doesn't interrupt the
+   * stop sequence of the server.
+   */
+  private void publishStatusWhileStopping(ServiceStatus serviceStatus) {
+    try {
+      updateServiceStatus(serviceStatus);
+    } catch (Exception ex) {
+      LOG.warn("Unable to publish the {} status", serviceStatus, ex);
+    }
+  }
+
+  /**
+   * Publishes the server load periodically, if the load publish interval is greater than 0.
+   */
+  private void scheduleLoadPublisher() {
+    if (server != null && discoveryConfiguration.getLoadPublishInterval() > 0) {
+      loadPublisher = new LoadPublisher(server, curatorClient, serviceInstance.getName(), serviceInstance.getId());
+      registrationExecutor.scheduleWithFixedDelay(loadPublisher, 0L, discoveryConfiguration.getLoadPublishInterval(),
+                                                  TimeUnit.MILLISECONDS);
+    }
+  }
+
+  /**
+   * Stops the registration attempts in progress and the load publisher.
+   */
+  private void stopRegistration() {
+    if (registrationExecutor != null) {
+      registrationExecutor.shutdownNow();
+      try {
+        registrationExecutor.awaitTermination(1, TimeUnit.SECONDS);
+      } catch (InterruptedException ex) {
+        Thread.currentThread().interrupt();
+      }
+    }
+    if (loadPublisher != null) {
+      loadPublisher.delete();
+    }
+  }
+
   public void unRegisterService() {
     try {
-      if (discoveryService != null && serviceInstance != null) {
+      if (discoveryService != null && serviceInstance != null && registered) {
         discoveryService.unregisterService(serviceInstance);
         LOG.info("Service instance has been unregistered");
       }
@@ -121,11 +510,11 @@ public class DiscoveryLifeCycle implements LifeCycle.Listener {
   }
 
   /**
-   * Updates the service instance status in Zookeeper.
+   * Updates the service instance status in Zookeeper, if the service has been registered.
    */
   public void updateServiceStatus(ServiceStatus serviceStatus) {
     try {
-      if(serviceInstance != null) {
+      if(serviceInstance != null && registered) {
         serviceInstance.getPayload().setStatus(serviceStatus);
         discoveryService.updateService(serviceInstance);
       }
@@ -137,26 +526,31 @@ public class DiscoveryLifeCycle implements LifeCycle.Listener {
 
   /**
    * Builds a new instance of a ServiceDetails class.
-   * Populates the artifact attributes using the Maven pom.xml file.
+   * Populates the artifact attributes using the cached ArtifactInfo of the application.
    */
-  public static ServiceDetails serviceDetails(ServiceConfiguration configuration) throws IOException {
-    MavenProject mavenProject = MavenUtils.getMavenProject();
+  public static ServiceDetails serviceDetails(ServiceConfiguration configuration) {
+    ArtifactInfo artifactInfo = ArtifactInfo.get();
     ServiceDetails serviceDetails = new ServiceDetails();
     serviceDetails.setServiceConfiguration(configuration);
-    serviceDetails.setArtifactId(mavenProject.getArtifactId());
-    serviceDetails.setGroupId(mavenProject.getGroupId());
-    serviceDetails.setVersion(mavenProject.getVersion());
+    serviceDetails.setArtifactId(artifactInfo.getArtifactId());
+    serviceDetails.setGroupId(artifactInfo.getGroupId());
+    serviceDetails.setVersion(artifactInfo.getVersion());
     return serviceDetails;
   }
 
   /**
-   * Builds a new instance of a CuratorFramework client.
+   * Builds a new instance of a CuratorFramework client, using the timeouts and retry policy of the
+   * discoveryConfiguration.
    */
   public CuratorFramework curator(ServiceConfiguration configuration) {
     CuratorFramework curator = CuratorFrameworkFactory.builder()
       .connectString(configuration.getZkHost())
       .namespace(configuration.getZkPath())
-      .retryPolicy(new ExponentialBackoffRetry(1000, 3))
+      .sessionTimeoutMs(discoveryConfiguration.getZkSessionTimeout())
+      .connectionTimeoutMs(discoveryConfiguration.getZkConnectionTimeout())
+      .retryPolicy(new ExponentialBackoffRetry(discoveryConfiguration.getZkRetryBaseSleep(),
+                                               discoveryConfiguration.getZkRetryMaxRetries(),
+                                               discoveryConfiguration.getZkRetryMaxSleep()))
       .build();
     curator.start();
     return closer.register(curator);
@@ -170,7 +564,7 @@ public class DiscoveryLifeCycle implements LifeCycle.Listener {
       new JsonInstanceSerializer<ServiceDetails>(ServiceDetails.class);
     return closer.register(ServiceDiscoveryBuilder.builder(ServiceDetails.class)
                              .client(curatorClient)
-                             .basePath("/")
+                             .basePath(BASE_PATH)
                              .serializer(serializer)
                              .build());
   }
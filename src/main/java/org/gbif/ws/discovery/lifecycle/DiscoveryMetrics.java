@@ -0,0 +1,90 @@
+package org.gbif.ws.discovery.lifecycle;
+
+import org.gbif.jetty.metrics.MetricsSource;
+import org.gbif.jetty.metrics.MetricsWriter;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Metrics of the Zookeeper connection and service registration of the DiscoveryLifeCycle.
+ * A registration gap starts when the connection is suspended or lost and ends once the registration has been
+ * verified or restored.
+ */
+public class DiscoveryMetrics implements MetricsSource {
+
+  private static final double MILLIS_TO_SECONDS = 0.001;
+
+  private final LongAdder reconnects = new LongAdder();
+  private final LongAdder sessionLosses = new LongAdder();
+  private final LongAdder reRegistrations = new LongAdder();
+  private final LongAdder gapsMillis = new LongAdder();
+  private final AtomicLong gapStart = new AtomicLong();
+  private volatile long lastGapMillis;
+  private volatile boolean registered;
+
+  /**
+   * The connection has been re-established.
+   */
+  public void reconnected() {
+    reconnects.increment();
+  }
+
+  /**
+   * The Zookeeper session has been lost, the ephemeral nodes may have been deleted.
+   */
+  public void sessionLost() {
+    sessionLosses.increment();
+  }
+
+  /**
+   * The service instance had to be registered again.
+   */
+  public void reRegistered() {
+    reRegistrations.increment();
+  }
+
+  /**
+   * The service is registered: the first registration has completed or a registration gap has ended.
+   */
+  public void registered() {
+    registered = true;
+    final long start = gapStart.getAndSet(0L);
+    if (start > 0L) {
+      lastGapMillis = System.currentTimeMillis() - start;
+      gapsMillis.add(lastGapMillis);
+    }
+  }
+
+  /**
+   * Starts a registration gap, if there isn't one already.
+   */
+  public void gapStarted() {
+    if (registered && gapStart.compareAndSet(0L, System.currentTimeMillis())) {
+      registered = false;
+    }
+  }
+
+  /**
+   * True while a registration gap is open.
+   */
+  public boolean isInGap() {
+    return gapStart.get() > 0L;
+  }
+
+  @Override
+  public void report(MetricsWriter writer) throws IOException {
+    writer.gauge("discovery_registered", "1 if the service registration in Zookeeper is verified", registered ? 1 : 0);
+    writer.counter("discovery_reconnects_total", "Number of Zookeeper reconnections", reconnects.sum());
+    writer.counter("discovery_session_losses_total", "Number of Zookeeper connections lost", sessionLosses.sum());
+    writer.counter("discovery_reregistrations_total", "Number of times the service has been registered again",
+                   reRegistrations.sum());
+    final long start = gapStart.get();
+    final long openGap = start > 0L ? System.currentTimeMillis() - start : 0L;
+    writer.counter("discovery_registration_gap_seconds_total", "Time the registration has been unverified or missing",
+                   (gapsMillis.sum() + openGap) * MILLIS_TO_SECONDS);
+    writer.gauge("discovery_registration_last_gap_seconds", "Duration of the last registration gap",
+                 lastGapMillis * MILLIS_TO_SECONDS);
+  }
+}
@@ -0,0 +1,153 @@
+package org.gbif.ws.discovery.lifecycle;
+
+import org.gbif.jetty.health.HealthHandler;
+import org.gbif.jetty.metrics.LatencyHistogram;
+import org.gbif.jetty.metrics.RequestMetricsHandler;
+import org.gbif.jetty.metrics.ThreadPoolMetrics;
+import org.gbif.ws.discovery.conf.ServiceLoad;
+
+import org.apache.curator.framework.CuratorFramework;
+import org.apache.zookeeper.CreateMode;
+import org.apache.zookeeper.KeeperException;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Periodically measures the load of the server and publishes it as a ServiceLoad in Zookeeper.
+ * To avoid flooding the ensemble a measure is only written if it differs meaningfully from the last published one:
+ * the readiness changed, the in-flight requests changed by more than 1 and 10%, the utilisation by more than 0.05 or
+ * the p99 latency by more than 10%. Otherwise it's written only once every MAX_SKIPPED_PUBLICATIONS runs.
+ * The DiscoveryLifeCycle schedules it once the service is registered.
+ */
+public class LoadPublisher implements Runnable {
+
+  private static final Logger LOG = LoggerFactory.getLogger(LoadPublisher.class);
+
+  //Unchanged measures skipped before the load is written anyway
+  private static final int MAX_SKIPPED_PUBLICATIONS = 12;
+
+  private static final double RELATIVE_CHANGE = 0.1;
+  private static final double UTILISATION_CHANGE = 0.05;
+
+  private final Server server;
+  private final CuratorFramework loadClient;
+  private final String path;
+
+  private LatencyHistogram.Snapshot previousLatencies;
+  private volatile ServiceLoad published;
+  private int skipped;
+  private boolean created;
+
+  /**
+   * Creates a publisher of the server load, curator must use the discovery namespace and the node is created in the
+   * load namespace, see ServiceLoad.namespace.
+   */
+  public LoadPublisher(Server server, CuratorFramework curator, String serviceName, String instanceId) {
+    this.server = server;
+    loadClient = curator.usingNamespace(ServiceLoad.namespace(curator.getNamespace()));
+    path = ServiceLoad.path(serviceName, instanceId);
+  }
+
+  @Override
+  public void run() {
+    try {
+      final ServiceLoad load = measure();
+      if (published == null || changed(published, load) || skipped >= MAX_SKIPPED_PUBLICATIONS) {
+        write(load);
+        published = load;
+        skipped = 0;
+      } else {
+        skipped++;
+      }
+    } catch (Exception ex) {
+      //the next run retries, exceptions would cancel the scheduled executions
+      LOG.warn("Error publishing the service load", ex);
+    }
+  }
+
+  /**
+   * Forces the next run to write the load, e.g.: the node may have been deleted with an expired session.
+   */
+  public void republish() {
+    published = null;
+  }
+
+  /**
+   * Deletes the load node, it's also removed by Zookeeper once the session is closed.
+   */
+  public void delete() {
+    try {
+      if (created) {
+        loadClient.delete().forPath(path);
+        created = false;
+      }
+    } catch (Exception ex) {
+      LOG.debug("Error deleting the service load", ex);
+    }
+  }
+
+  /**
+   * Measures the current load of the server.
+   */
+  private ServiceLoad measure() {
+    final ServiceLoad load = new ServiceLoad();
+    final RequestMetricsHandler requestMetrics = server.getChildHandlerByClass(RequestMetricsHandler.class);
+    if (requestMetrics != null) {
+      load.setInFlightRequests(requestMetrics.getRequestsActive());
+      final LatencyHistogram.Snapshot latencies = requestMetrics.getLatencies().snapshot();
+      final LatencyHistogram.Snapshot recent =
+        previousLatencies == null ? latencies : latencies.since(previousLatencies);
+      load.setP99Latency(recent.getValue(0.99));
+      previousLatencies = latencies;
+    }
+    if (server.getThreadPool() instanceof QueuedThreadPool) {
+      load.setUtilisation(ThreadPoolMetrics.utilisation((QueuedThreadPool) server.getThreadPool()));
+    }
+    load.setReady(HealthHandler.isReady(server));
+    load.setTimestamp(System.currentTimeMillis());
+    return load;
+  }
+
+  /**
+   * True if the current load differs meaningfully from the published one.
+   */
+  private static boolean changed(ServiceLoad previous, ServiceLoad current) {
+    return previous.isReady() != current.isReady()
+           || relativeChange(previous.getInFlightRequests(), current.getInFlightRequests(), 1)
+           || Math.abs(previous.getUtilisation() - current.getUtilisation()) > UTILISATION_CHANGE
+           || relativeChange(previous.getP99Latency(), current.getP99Latency(), 1);
+  }
+
+  /**
+   * True if the values differ by more than the absolute minimum and the RELATIVE_CHANGE.
+   */
+  private static boolean relativeChange(long previous, long current, long minimum) {
+    final long difference = Math.abs(current - previous);
+    return difference > minimum && difference > RELATIVE_CHANGE * Math.max(previous, current);
+  }
+
+  /**
+   * Writes the load node, creating it if it doesn't exist, e.g.: the Zookeeper session has expired.
+   */
+  private void write(ServiceLoad load) throws Exception {
+    final byte[] data = load.toJson();
+    if (created) {
+      try {
+        loadClient.setData().forPath(path, data);
+        LOG.debug("Service load published {}", load);
+        return;
+      } catch (KeeperException.NoNodeException ex) {
+        created = false;
+      }
+    }
+    try {
+      loadClient.create().creatingParentsIfNeeded().withMode(CreateMode.EPHEMERAL).forPath(path, data);
+    } catch (KeeperException.NodeExistsException ex) {
+      loadClient.setData().forPath(path, data);
+    }
+    created = true;
+    LOG.debug("Service load published {}", load);
+  }
+}